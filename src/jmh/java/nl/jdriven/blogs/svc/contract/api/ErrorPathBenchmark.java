@@ -0,0 +1,125 @@
+package nl.jdriven.blogs.svc.contract.api;
+
+import io.grpc.CallOptions;
+import io.grpc.ClientCall;
+import io.grpc.ManagedChannel;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Server;
+import io.grpc.Status;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import nl.jdriven.blogs.svc.contract.model.main.Amount;
+import nl.jdriven.blogs.svc.contract.proto.*;
+import nl.jdriven.blogs.svc.contract.service.ContractService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Failing calls next to their succeeding counterparts, over an in-process gRPC channel.
+ * The calls are made with a bare ClientCall that only returns the status code, so the cost of
+ * the client creating an exception for the error is not part of the measurement.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ErrorPathBenchmark {
+    private static final NewQuoteRequest VALID_QUOTE = NewQuoteRequest.newBuilder()
+            .setFullNameOfCustomer("Man on the moon")
+            .setDescriptionOfWorkRequested("Install a kitchen")
+            .setQuotedPrice(Transformer.transform(Amount.ofUnits(2500)))
+            .build();
+    private static final NewQuoteRequest INVALID_QUOTE = NewQuoteRequest.newBuilder()
+            .setQuotedPrice(Transformer.transform(Amount.ofUnits(2500)))
+            .build();
+    private static final FindContractRequest UNKNOWN_ID = FindContractRequest.newBuilder()
+            .setContractId("00000000-0000-0000-0000-000000000000")
+            .build();
+
+    private Server server;
+    private ManagedChannel channel;
+    private FindContractRequest knownId;
+    private PromoteQuoteRequest promoteAtWork;
+
+    @Setup(Level.Iteration)
+    public void start() throws IOException {
+        var name = InProcessServerBuilder.generateName();
+        var service = new ContractService();
+        server = InProcessServerBuilder.forName(name)
+                .addService(new ContractServiceApi(new ContractServiceApiHandler(service)))
+                .build()
+                .start();
+        channel = InProcessChannelBuilder.forName(name).build();
+        var atWork = service.addQuote("Man on the moon", Amount.ofUnits(2500), "Install a kitchen");
+        service.promoteQuote(atWork);
+        knownId = FindContractRequest.newBuilder().setContractId(atWork.toString()).build();
+        promoteAtWork = PromoteQuoteRequest.newBuilder().setContractId(atWork.toString()).build();
+    }
+
+    @TearDown(Level.Iteration)
+    public void stop() {
+        channel.shutdownNow();
+        server.shutdownNow();
+    }
+
+    @Benchmark
+    public Status.Code findKnown() throws Exception {
+        return call(ContractServiceGrpc.getFindContractMethod(), knownId);
+    }
+
+    @Benchmark
+    public Status.Code findUnknown() throws Exception {
+        return call(ContractServiceGrpc.getFindContractMethod(), UNKNOWN_ID);
+    }
+
+    @Benchmark
+    public Status.Code newQuoteValid() throws Exception {
+        return call(ContractServiceGrpc.getNewQuoteMethod(), VALID_QUOTE);
+    }
+
+    @Benchmark
+    public Status.Code newQuoteInvalid() throws Exception {
+        return call(ContractServiceGrpc.getNewQuoteMethod(), INVALID_QUOTE);
+    }
+
+    /**
+     * Fails after the state check: the contract is not a quote anymore.
+     */
+    @Benchmark
+    public Status.Code promoteWrongState() throws Exception {
+        return call(ContractServiceGrpc.getPromoteQuoteMethod(), promoteAtWork);
+    }
+
+    private <Q, R> Status.Code call(MethodDescriptor<Q, R> method, Q request) throws InterruptedException, ExecutionException {
+        var done = new CompletableFuture<Status.Code>();
+        ClientCall<Q, R> call = channel.newCall(method, CallOptions.DEFAULT);
+        call.start(new ClientCall.Listener<>() {
+            @Override
+            public void onClose(Status status, Metadata trailers) {
+                done.complete(status.getCode());
+            }
+        }, new Metadata());
+        call.sendMessage(request);
+        call.halfClose();
+        call.request(1);
+        return done.get();
+    }
+}
@@ -0,0 +1,200 @@
+package nl.jdriven.blogs.svc.contract.api;
+
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+import nl.jdriven.blogs.svc.contract.model.main.Amount;
+import nl.jdriven.blogs.svc.contract.proto.*;
+import nl.jdriven.blogs.svc.contract.service.ContractService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Calls through the whole gRPC stack, with an in-process transport so the network is left out:
+ * the unary calls, a page of ListContracts and the bulk streams.
+ * A new server with a filled in-memory store is started for every iteration.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class GrpcEndToEndBenchmark {
+    private static final int CONTRACTS = 1_000;
+    private static final int BULK = 256;
+    private static final int WORK_PER_CONTRACT = 32;
+    private static final int PAGE_SIZE = 100;
+
+    private Server server;
+    private ManagedChannel channel;
+    private ContractServiceGrpc.ContractServiceBlockingStub blocking;
+    private ContractServiceGrpc.ContractServiceStub async;
+    private String[] ids;
+
+    @State(Scope.Thread)
+    public static class Worker {
+        String contractId;
+        int workAdded;
+    }
+
+    @Setup(Level.Iteration)
+    public void start() throws IOException {
+        var name = InProcessServerBuilder.generateName();
+        server = InProcessServerBuilder.forName(name)
+                .addService(new ContractServiceApi(new ContractServiceApiHandler(new ContractService())))
+                .build()
+                .start();
+        channel = InProcessChannelBuilder.forName(name).build();
+        blocking = ContractServiceGrpc.newBlockingStub(channel);
+        async = ContractServiceGrpc.newStub(channel);
+        ids = new String[CONTRACTS];
+        for (int i = 0; i < CONTRACTS; i++) {
+            ids[i] = startContract("Customer " + i);
+            blocking.addWorkDone(addWorkDoneRequest(ids[i]));
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void stop() {
+        channel.shutdownNow();
+        server.shutdownNow();
+    }
+
+    @Benchmark
+    public NewQuoteResponse newQuote() {
+        return blocking.newQuote(newQuoteRequest("Man on the moon"));
+    }
+
+    @Benchmark
+    public FindContractResponse findContract() {
+        var id = ids[ThreadLocalRandom.current().nextInt(CONTRACTS)];
+        return blocking.findContract(FindContractRequest.newBuilder().setContractId(id).build());
+    }
+
+    @Benchmark
+    public AddWorkDoneResponse addWorkDone(Worker worker) {
+        if (worker.contractId == null || worker.workAdded == WORK_PER_CONTRACT) {
+            worker.contractId = startContract("Man on the moon");
+            worker.workAdded = 0;
+        }
+        worker.workAdded++;
+        return blocking.addWorkDone(addWorkDoneRequest(worker.contractId));
+    }
+
+    @Benchmark
+    public GetContractFinancialsResponse getContractFinancials() {
+        var id = ids[ThreadLocalRandom.current().nextInt(CONTRACTS)];
+        return blocking.getContractFinancials(GetContractFinancialsRequest.newBuilder().setContractId(id).build());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PAGE_SIZE)
+    public int listContractsPage() {
+        var request = ListContractsRequest.newBuilder()
+                .addStatus(ContractStatus.ATWORK)
+                .setPageSize(PAGE_SIZE)
+                .build();
+        int received = 0;
+        for (var it = blocking.listContracts(request); it.hasNext(); it.next()) {
+            received++;
+        }
+        return received;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BULK)
+    public void bulkNewQuote() throws InterruptedException {
+        var done = new Completion<BulkNewQuoteResponse>();
+        var requests = async.bulkNewQuote(done);
+        for (int i = 0; i < BULK; i++) {
+            requests.onNext(newQuoteRequest("Customer " + i));
+        }
+        requests.onCompleted();
+        done.await();
+    }
+
+    /**
+     * Every call adds its work items to a contract of its own, which is included in the measurement.
+     */
+    @Benchmark
+    @OperationsPerInvocation(BULK)
+    public void bulkAddWorkDone() throws InterruptedException {
+        var id = startContract("Man on the moon");
+        var done = new Completion<BulkAddWorkDoneResponse>();
+        var requests = async.bulkAddWorkDone(done);
+        for (int i = 0; i < BULK; i++) {
+            requests.onNext(addWorkDoneRequest(id));
+        }
+        requests.onCompleted();
+        done.await();
+    }
+
+    private String startContract(String customer) {
+        var id = blocking.newQuote(newQuoteRequest(customer)).getContractId();
+        blocking.promoteQuote(PromoteQuoteRequest.newBuilder().setContractId(id).build());
+        return id;
+    }
+
+    private static NewQuoteRequest newQuoteRequest(String customer) {
+        return NewQuoteRequest.newBuilder()
+                .setFullNameOfCustomer(customer)
+                .setDescriptionOfWorkRequested("Install a kitchen")
+                .setQuotedPrice(Transformer.transform(Amount.ofUnits(2500)))
+                .build();
+    }
+
+    private static AddWorkDoneRequest addWorkDoneRequest(String id) {
+        return AddWorkDoneRequest.newBuilder()
+                .setContractId(id)
+                .setWork(WorkDone.newBuilder()
+                        .setCostOfWork(Transformer.transform(Amount.ofMinorUnits(12_550)))
+                        .setDescriptionOfWorkDone("Cabinets"))
+                .build();
+    }
+
+    private static class Completion<T> implements StreamObserver<T> {
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile Throwable failure;
+
+        @Override
+        public void onNext(T value) {
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            failure = t;
+            done.countDown();
+        }
+
+        @Override
+        public void onCompleted() {
+            done.countDown();
+        }
+
+        void await() throws InterruptedException {
+            done.await();
+            if (failure != null) {
+                throw new IllegalStateException("Stream failed", failure);
+            }
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package nl.jdriven.blogs.svc.contract.api;
+
+import com.google.type.Money;
+import nl.jdriven.blogs.svc.contract.model.main.Amount;
+import nl.jdriven.blogs.svc.contract.model.main.Contract;
+import nl.jdriven.blogs.svc.contract.model.main.ContractId;
+import nl.jdriven.blogs.svc.contract.model.main.WorkDone;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Conversions between the gRPC messages and the model, done for every request and response.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TransformerBenchmark {
+    private final Money money = Money.newBuilder().setCurrencyCode("EUR").setUnits(1234).setNanos(560_000_000).build();
+    private final Amount amount = Amount.ofMinorUnits(123456);
+
+    @State(Scope.Benchmark)
+    public static class ContractState {
+        @Param({"0", "10", "100"})
+        public int workItems;
+
+        Contract contract;
+
+        @Setup
+        public void create() {
+            contract = new Contract(ContractId.next(), Amount.ofUnits(2500),
+                    "Please give me a quote for installing a kitchen", "Man on the moon");
+            contract.setStatus(Contract.Status.ATWORK);
+            for (int i = 0; i < workItems; i++) {
+                contract.addWorkDone(new WorkDone(Amount.ofMinorUnits(10_000 + i), "Work item " + i));
+            }
+        }
+    }
+
+    @Benchmark
+    public Optional<Amount> moneyToAmount() {
+        return Transformer.transform(money);
+    }
+
+    @Benchmark
+    public Money amountToMoney() {
+        return Transformer.transform(amount);
+    }
+
+    @Benchmark
+    public nl.jdriven.blogs.svc.contract.proto.Contract contractToProto(ContractState state) {
+        return Transformer.transform(state.contract);
+    }
+}
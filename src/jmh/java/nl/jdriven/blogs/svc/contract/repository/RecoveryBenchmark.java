@@ -0,0 +1,85 @@
+package nl.jdriven.blogs.svc.contract.repository;
+
+import nl.jdriven.blogs.svc.contract.model.event.ContractEvent;
+import nl.jdriven.blogs.svc.contract.model.main.Amount;
+import nl.jdriven.blogs.svc.contract.model.main.Contract;
+import nl.jdriven.blogs.svc.contract.model.main.ContractId;
+import nl.jdriven.blogs.svc.contract.model.main.WorkDone;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Startup time of the persistent repository: load the latest snapshot and replay the log after it.
+ * The store is filled once per trial; 10% of the contracts get their changes after the snapshot.
+ * For the 10M contract target run the jmh jar with {@code -p contracts=10000000} and enough heap.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class RecoveryBenchmark {
+    @Param({"100000", "1000000"})
+    public int contracts;
+
+    private Path dir;
+
+    @Setup(Level.Trial)
+    public void fill() throws IOException {
+        dir = Files.createTempDirectory("contract-recovery");
+        int tail = contracts / 10;
+        try (var repository = new EventLogContractRepository(dir, false, Duration.ZERO)) {
+            for (int i = 0; i < contracts - tail; i++) {
+                addContract(repository, i);
+            }
+            repository.snapshot();
+            for (int i = contracts - tail; i < contracts; i++) {
+                addContract(repository, i);
+            }
+        }
+    }
+
+    @Benchmark
+    public int recover() {
+        try (var repository = new EventLogContractRepository(dir, false, Duration.ZERO)) {
+            return repository.size();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() throws IOException {
+        try (var files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    private static void addContract(ContractRepository repository, int i) {
+        var id = ContractId.next();
+        repository.add(new Contract(id, Amount.ofUnits(2500), "Install a kitchen", "Customer " + i));
+        repository.update(id, c -> ContractEvent.promoted(id));
+        repository.update(id, c -> ContractEvent.workAdded(id, new WorkDone(Amount.ofUnits(1200), "Cabinets")));
+        repository.update(id, c -> ContractEvent.workAdded(id, new WorkDone(Amount.ofUnits(1000), "Appliances")));
+        if (i % 2 == 0) {
+            repository.update(id, c -> ContractEvent.finalized(id));
+        }
+    }
+}
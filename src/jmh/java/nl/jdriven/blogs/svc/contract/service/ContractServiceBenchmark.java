@@ -0,0 +1,119 @@
+package nl.jdriven.blogs.svc.contract.service;
+
+import nl.jdriven.blogs.svc.contract.model.main.Amount;
+import nl.jdriven.blogs.svc.contract.model.main.Contract;
+import nl.jdriven.blogs.svc.contract.model.main.ContractId;
+import nl.jdriven.blogs.svc.contract.model.main.WorkDone;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The service operations on the in-memory store, run by the nested classes with 1, 4 and 16 threads.
+ * The store is filled again for every iteration, so adding quotes does not grow it without bound.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public abstract class ContractServiceBenchmark {
+    static final int CONTRACTS = 10_000;
+    // a new contract is started after this many work items, long work lists are not what is measured here
+    static final int WORK_PER_CONTRACT = 32;
+    static final Amount PRICE = Amount.ofUnits(2500);
+    static final Amount COST = Amount.ofMinorUnits(12_550);
+
+    private ContractService service;
+    private ContractId[] ids;
+
+    @Threads(1)
+    public static class OneThread extends ContractServiceBenchmark {
+    }
+
+    @Threads(4)
+    public static class FourThreads extends ContractServiceBenchmark {
+    }
+
+    @Threads(16)
+    public static class SixteenThreads extends ContractServiceBenchmark {
+    }
+
+    @State(Scope.Thread)
+    public static class Worker {
+        ContractId contractId;
+        int workAdded;
+        long requests;
+    }
+
+    @Setup(Level.Iteration)
+    public void fill() {
+        service = new ContractService();
+        ids = new ContractId[CONTRACTS];
+        for (int i = 0; i < CONTRACTS; i++) {
+            ids[i] = service.addQuote("Customer " + i, PRICE, "Install a kitchen");
+            service.promoteQuote(ids[i]);
+            service.addWorkDone(ids[i], new WorkDone(COST, "Cabinets"));
+        }
+    }
+
+    @Benchmark
+    public Contract find() {
+        return service.find(ids[ThreadLocalRandom.current().nextInt(CONTRACTS)]);
+    }
+
+    @Benchmark
+    public ContractId addQuote() {
+        return service.addQuote("Man on the moon", PRICE, "Install a kitchen");
+    }
+
+    /**
+     * With a new idempotency key every call, the cost of remembering it compared to {@link #addQuote()}.
+     */
+    @Benchmark
+    public ContractId addQuoteIdempotent(Worker worker) {
+        var key = Thread.currentThread().getId() + "-" + worker.requests++;
+        return service.addQuote("Man on the moon", PRICE, "Install a kitchen", key);
+    }
+
+    @Benchmark
+    public void addWorkDone(Worker worker) {
+        if (worker.contractId == null || worker.workAdded == WORK_PER_CONTRACT) {
+            worker.contractId = service.addQuote("Man on the moon", PRICE, "Install a kitchen");
+            service.promoteQuote(worker.contractId);
+            worker.workAdded = 0;
+        }
+        service.addWorkDone(worker.contractId, new WorkDone(COST, "Cabinets"));
+        worker.workAdded++;
+    }
+
+    @Benchmark
+    public ContractFinancials financials() {
+        return service.financials(ids[ThreadLocalRandom.current().nextInt(CONTRACTS)]);
+    }
+
+    /**
+     * A contract from quote to finalized, with two work items.
+     */
+    @Benchmark
+    public Amount lifecycle() {
+        var id = service.addQuote("Man on the moon", PRICE, "Install a kitchen");
+        service.promoteQuote(id);
+        service.addWorkDone(id, new WorkDone(COST, "Cabinets"));
+        service.addWorkDone(id, new WorkDone(COST, "Appliances"));
+        return service.finalizeContract(id);
+    }
+}
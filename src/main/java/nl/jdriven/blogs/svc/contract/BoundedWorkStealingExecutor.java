@@ -0,0 +1,96 @@
+package nl.jdriven.blogs.svc.contract;
+
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.Status;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs tasks on a fixed number of work-stealing threads, with a limit on the number of tasks waiting.
+ * A task is never run on the submitting thread, for the server the network thread of the connection, which must not
+ * block. Tasks of calls that already started are always taken, they finish those calls; above the limit new calls
+ * are refused with RESOURCE_EXHAUSTED by the {@link #interceptor()}, which is quick, so the queue drains fast.
+ */
+public class BoundedWorkStealingExecutor implements Executor, AutoCloseable {
+    private static final ServerCall.Listener<Object> NOOP_LISTENER = new ServerCall.Listener<>() {
+    };
+
+    private final ForkJoinPool pool;
+    private final int limit;
+    private final AtomicInteger queued = new AtomicInteger();
+    private final LongAdder rejected = new LongAdder();
+
+    public BoundedWorkStealingExecutor(int threads, int queueLimit) {
+        var counter = new AtomicInteger();
+        // FIFO (async mode): tasks are independent calls, not forked subtasks
+        pool = new ForkJoinPool(threads, p -> {
+            ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+            t.setName("grpc-call-" + counter.incrementAndGet());
+            return t;
+        }, null, true);
+        limit = threads + queueLimit;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        queued.incrementAndGet();
+        try {
+            pool.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    queued.decrementAndGet();
+                }
+            });
+        } catch (RuntimeException e) {
+            queued.decrementAndGet();
+            throw e;
+        }
+    }
+
+    /**
+     * @return calls refused because too many tasks were waiting.
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * @return refuses a new call while more tasks than the limit are running or waiting.
+     */
+    public ServerInterceptor interceptor() {
+        return new ServerInterceptor() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers,
+                                                                         ServerCallHandler<ReqT, RespT> next) {
+                // this task is one of them
+                if (queued.get() <= limit) {
+                    return next.startCall(call, headers);
+                }
+                rejected.increment();
+                call.close(Status.RESOURCE_EXHAUSTED.withDescription("The server has too many calls waiting, limit " + limit),
+                        new Metadata());
+                return (ServerCall.Listener<ReqT>) NOOP_LISTENER;
+            }
+        };
+    }
+
+    @Override
+    public void close() {
+        pool.shutdown();
+        try {
+            pool.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
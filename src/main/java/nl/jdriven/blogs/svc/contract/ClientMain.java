@@ -1,21 +1,17 @@
 package nl.jdriven.blogs.svc.contract;
 
-import io.grpc.ManagedChannel;
-import io.grpc.ManagedChannelBuilder;
-import io.grpc.StatusRuntimeException;
+import io.grpc.Status;
 import nl.jdriven.blogs.svc.contract.api.Transformer;
+import nl.jdriven.blogs.svc.contract.client.ContractClient;
+import nl.jdriven.blogs.svc.contract.model.main.Amount;
 import nl.jdriven.blogs.svc.contract.proto.*;
 
-import java.math.BigDecimal;
-import java.math.MathContext;
+import java.util.concurrent.CompletionException;
 
 public class ClientMain {
     public static void main(String[] args) {
-        var channel = ManagedChannelBuilder
-                .forAddress("localhost", 53000)
-                .usePlaintext() // disable TLS which is enabled by default and requires certificates
-                .build();
-        var client = ContractServiceGrpc.newBlockingStub(channel);
+        // the server is set with -Dcontract.client.target, see ClientConfig
+        var client = new ContractClient();
 
         // Start with a quote
         var pqresp = prepareQuote(client);
@@ -41,48 +37,49 @@ public class ClientMain {
 
         findContract(client, cid);
 
-        // avoid nastiness on the serverside due to the sudden death of the connection
-        ((ManagedChannel) client.getChannel()).shutdownNow();
+        // let the calls complete, to avoid nastiness on the serverside due to the sudden death of the connection
+        client.close();
     }
 
-    private static void findContract(ContractServiceGrpc.ContractServiceBlockingStub client, String cid) {
+    private static void findContract(ContractClient client, String cid) {
         var fcr = FindContractRequest.newBuilder().setContractId(cid).build();
-        var found = client.findContract(fcr);
+        var found = client.findContract(fcr).join();
         System.out.println("Find contract gave: " + found);
     }
 
-    private static void finalizeContract(ContractServiceGrpc.ContractServiceBlockingStub client, String cid) {
+    private static void finalizeContract(ContractClient client, String cid) {
         var fcr = FinalizeContractRequest.newBuilder().setContractId(cid).build();
-        var fcResp = client.finalizeContract(fcr);
+        var fcResp = client.finalizeContract(fcr).join();
         System.out.println("Finalize contract gave: " + fcResp);
     }
 
-    private static void promoteQuoteToContract(ContractServiceGrpc.ContractServiceBlockingStub client, String cid, String desc) {
+    private static void promoteQuoteToContract(ContractClient client, String cid, String desc) {
         var quoteRequest = PromoteQuoteRequest.newBuilder().setContractId(cid).build();
 
         try {
-            var pqrespWrong = client.promoteQuote(quoteRequest);
+            var pqrespWrong = client.promoteQuote(quoteRequest).join();
             System.out.println("Promote " + desc + " gave: " + pqrespWrong);
-        } catch (StatusRuntimeException sre) {
-            System.out.println("Promote failed with: " + sre.getStatus().getCode() + " because: " + sre.getStatus().getDescription());
+        } catch (CompletionException e) {
+            var status = Status.fromThrowable(e);
+            System.out.println("Promote failed with: " + status.getCode() + " because: " + status.getDescription());
         }
     }
 
-    private static NewQuoteResponse prepareQuote(ContractServiceGrpc.ContractServiceBlockingStub client) {
-        var price = new BigDecimal(2500L, new MathContext(2));
+    private static NewQuoteResponse prepareQuote(ContractClient client) {
+        var price = Amount.ofUnits(2500L);
         var quotedPrice = Transformer.transform(price);
         NewQuoteRequest request = NewQuoteRequest.newBuilder()
                 .setFullNameOfCustomer("Man on the moon")
                 .setDescriptionOfWorkRequested("Please give me a quote for installing a kitchen, everything is already delivered @ the house, including all appliances.")
                 .setQuotedPrice(quotedPrice)
                 .build();
-        var aqresp = client.newQuote(request);
+        var aqresp = client.newQuote(request).join();
         System.out.println("Prepare quote gave: " + aqresp);
         return aqresp;
     }
 
-    private static void AddSomeWork(ContractServiceGrpc.ContractServiceBlockingStub client, String cid, String desc, long amountInEur) {
-        var cost = Transformer.transform(new BigDecimal(amountInEur, new MathContext(2)));
+    private static void AddSomeWork(ContractClient client, String cid, String desc, long amountInEur) {
+        var cost = Transformer.transform(Amount.ofUnits(amountInEur));
         var workdone = WorkDone.newBuilder()
                 .setCostOfWork(cost)
                 .setDescriptionOfWorkDone(desc);
@@ -92,15 +89,16 @@ public class ClientMain {
                 .build();
 
         try {
-            var wdresp = client.addWorkDone(adr);
+            var wdresp = client.addWorkDone(adr).join();
             System.out.println("Add work gave: " + wdresp);
-        } catch (StatusRuntimeException sre) {
-            System.out.println("Add work failed with: " + sre.getStatus().getCode() + " because: " + sre.getStatus().getDescription());
+        } catch (CompletionException e) {
+            var status = Status.fromThrowable(e);
+            System.out.println("Add work failed with: " + status.getCode() + " because: " + status.getDescription());
         }
     }
 
-    private static void tryEmptyWork(ContractServiceGrpc.ContractServiceBlockingStub client) {
-        var cost = Transformer.transform(new BigDecimal(0L, new MathContext(2)));
+    private static void tryEmptyWork(ContractClient client) {
+        var cost = Transformer.transform(Amount.ZERO);
         var workdone = WorkDone.newBuilder()
                 .setCostOfWork(cost)
                 .setDescriptionOfWorkDone("");
@@ -110,9 +108,10 @@ public class ClientMain {
                 .build();
 
         try {
-            var wdresp = client.addWorkDone(adr);
-        } catch (StatusRuntimeException sre) {
-            System.out.println("Add work failed with: " + sre.getStatus().getCode() + " because: " + sre.getStatus().getDescription());
+            var wdresp = client.addWorkDone(adr).join();
+        } catch (CompletionException e) {
+            var status = Status.fromThrowable(e);
+            System.out.println("Add work failed with: " + status.getCode() + " because: " + status.getDescription());
         }
     }
 }
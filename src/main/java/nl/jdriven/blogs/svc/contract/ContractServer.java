@@ -0,0 +1,134 @@
+package nl.jdriven.blogs.svc.contract;
+
+import io.grpc.Server;
+import io.grpc.ServerInterceptors;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.netty.shaded.io.grpc.netty.NettyServerBuilder;
+import io.grpc.netty.shaded.io.netty.channel.EventLoopGroup;
+import io.grpc.netty.shaded.io.netty.channel.nio.NioEventLoopGroup;
+import io.grpc.netty.shaded.io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.grpc.netty.shaded.io.netty.util.concurrent.DefaultThreadFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A gRPC server on Netty, with the execution model and transport settings of a {@link ServerConfig}.
+ * Owns the executor and event loops it creates or is given and shuts them down on close.
+ */
+public class ContractServer implements Closeable {
+    private final ServerConfig config;
+    private final Server server;
+    private final Executor executor;
+    private final EventLoopGroup bossGroup;
+    private final EventLoopGroup workerGroup;
+
+    public ContractServer(ServerConfig config, ServerServiceDefinition... services) {
+        this(config, createExecutor(config), services);
+    }
+
+    /**
+     * @param executor for the calls, from {@link #createExecutor(ServerConfig)} so the services can use it as well
+     */
+    public ContractServer(ServerConfig config, Executor executor, ServerServiceDefinition... services) {
+        this.config = config;
+        var builder = NettyServerBuilder.forPort(config.getPort())
+                .flowControlWindow(config.getFlowControlWindow());
+        if (config.getMaxConcurrentCallsPerConnection() > 0) {
+            builder.maxConcurrentCallsPerConnection(config.getMaxConcurrentCallsPerConnection());
+        }
+        if (config.getBossThreads() > 0 || config.getWorkerThreads() > 0) {
+            // own event loops must come with a matching channel type; NIO works everywhere
+            bossGroup = new NioEventLoopGroup(Math.max(1, config.getBossThreads()), new DefaultThreadFactory("grpc-boss", true));
+            workerGroup = new NioEventLoopGroup(config.getWorkerThreads(), new DefaultThreadFactory("grpc-worker", true));
+            builder.bossEventLoopGroup(bossGroup)
+                    .workerEventLoopGroup(workerGroup)
+                    .channelType(NioServerSocketChannel.class);
+        } else {
+            bossGroup = null;
+            workerGroup = null;
+        }
+        this.executor = executor;
+        switch (config.getExecutorMode()) {
+            case CACHED:
+                break;
+            case DIRECT:
+                builder.directExecutor();
+                break;
+            default:
+                builder.executor(executor);
+        }
+        for (var service : services) {
+            // outermost, a call that is refused for a full queue costs as little as possible
+            builder.addService(executor instanceof BoundedWorkStealingExecutor
+                    ? ServerInterceptors.intercept(service, ((BoundedWorkStealingExecutor) executor).interceptor())
+                    : service);
+        }
+        server = builder.build();
+    }
+
+    public ContractServer start() throws IOException {
+        server.start();
+        return this;
+    }
+
+    public int getPort() {
+        return server.getPort();
+    }
+
+    public ServerConfig getConfig() {
+        return config;
+    }
+
+    public void awaitTermination() throws InterruptedException {
+        server.awaitTermination();
+    }
+
+    @Override
+    public void close() {
+        server.shutdownNow();
+        try {
+            server.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (executor instanceof ExecutorService) {
+            ((ExecutorService) executor).shutdown();
+        } else if (executor instanceof BoundedWorkStealingExecutor) {
+            ((BoundedWorkStealingExecutor) executor).close();
+        }
+        if (bossGroup != null) {
+            bossGroup.shutdownGracefully(0, 0, TimeUnit.SECONDS);
+            workerGroup.shutdownGracefully(0, 0, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * @return the executor for calls of the execution model of the config, null when gRPC's own is used or none
+     */
+    public static Executor createExecutor(ServerConfig config) {
+        switch (config.getExecutorMode()) {
+            case BOUNDED:
+                return new BoundedWorkStealingExecutor(config.getThreads(), config.getQueue());
+            case VIRTUAL:
+                return virtualThreadPerTask();
+            default:
+                return null;
+        }
+    }
+
+    // the code is built for Java 11, virtual threads are looked up in the runtime
+    private static ExecutorService virtualThreadPerTask() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException("Virtual threads need Java 21 or later, this is " + Runtime.version(), e);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Virtual threads are not available", e);
+        }
+    }
+}
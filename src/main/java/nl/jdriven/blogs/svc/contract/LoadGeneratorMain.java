@@ -0,0 +1,58 @@
+package nl.jdriven.blogs.svc.contract;
+
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.Server;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import nl.jdriven.blogs.svc.contract.api.ContractServiceApi;
+import nl.jdriven.blogs.svc.contract.api.ContractServiceApiHandler;
+import nl.jdriven.blogs.svc.contract.load.LoadConfig;
+import nl.jdriven.blogs.svc.contract.load.LoadGenerator;
+import nl.jdriven.blogs.svc.contract.service.ContractService;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Puts load on a server and reports its latencies, for capacity planning and to compare releases.
+ * What to call, how often and how is set with system properties, see {@link LoadConfig}; e.g.
+ * -Dcontract.load.mode=open -Dcontract.load.rate=5000 for 5000 calls per second,
+ * or -Dcontract.load.target=inprocess to test a server with an in-memory store in this JVM, without the network.
+ */
+public class LoadGeneratorMain {
+    public static void main(String[] args) throws IOException, InterruptedException {
+        var config = LoadConfig.fromSystemProperties();
+        Server server = null;
+        List<ManagedChannel> channels = new ArrayList<>();
+        if (config.isInProcess()) {
+            var name = InProcessServerBuilder.generateName();
+            server = InProcessServerBuilder.forName(name)
+                    .addService(new ContractServiceApi(new ContractServiceApiHandler(new ContractService())))
+                    .build()
+                    .start();
+            for (int i = 0; i < config.getChannels(); i++) {
+                channels.add(InProcessChannelBuilder.forName(name).build());
+            }
+        } else {
+            for (int i = 0; i < config.getChannels(); i++) {
+                channels.add(ManagedChannelBuilder.forTarget(config.getTarget())
+                        .usePlaintext() // disable TLS which is enabled by default and requires certificates
+                        .build());
+            }
+        }
+        try {
+            new LoadGenerator(config, channels, System.out).run();
+        } finally {
+            for (var channel : channels) {
+                channel.shutdown();
+                channel.awaitTermination(5, TimeUnit.SECONDS);
+            }
+            if (server != null) {
+                server.shutdownNow();
+            }
+        }
+    }
+}
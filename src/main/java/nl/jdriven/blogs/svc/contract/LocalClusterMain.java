@@ -0,0 +1,62 @@
+package nl.jdriven.blogs.svc.contract;
+
+import io.grpc.ServerInterceptors;
+import nl.jdriven.blogs.svc.contract.admission.AdmissionConfig;
+import nl.jdriven.blogs.svc.contract.admission.AdmissionInterceptor;
+import nl.jdriven.blogs.svc.contract.api.ContractServiceApi;
+import nl.jdriven.blogs.svc.contract.api.ContractServiceApiHandler;
+import nl.jdriven.blogs.svc.contract.api.ShardRouter;
+import nl.jdriven.blogs.svc.contract.cluster.ShardMap;
+import nl.jdriven.blogs.svc.contract.logging.LifecycleLog;
+import nl.jdriven.blogs.svc.contract.repository.InMemoryContractRepository;
+import nl.jdriven.blogs.svc.contract.service.ContractService;
+import nl.jdriven.blogs.svc.contract.service.IdempotencyTable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Starts a cluster of servers in this JVM, to try out sharding: -Dcontract.cluster.nodes=3 servers on the
+ * ports from the server port on (53000, 53001, ...), each with its own in-memory store and the shards
+ * divided evenly over them (-Dcontract.shards.count=64). A client can call any of them.
+ * The other server settings are in {@link ServerConfig} and {@link AdmissionConfig}, and are the same for every node.
+ */
+public class LocalClusterMain {
+    public static void main(String[] args) throws IOException, InterruptedException {
+        // the nodes forward calls to each other
+        var config = ServerConfig.fromSystemProperties(true);
+        var admissionConfig = AdmissionConfig.fromSystemProperties();
+        int nodeCount = Integer.getInteger("contract.cluster.nodes", 3);
+        int shardCount = Integer.getInteger("contract.shards.count", 64);
+        var nodes = new ArrayList<String>();
+        for (int i = 0; i < nodeCount; i++) {
+            nodes.add("localhost:" + (config.getPort() + i));
+        }
+
+        var routers = new ArrayList<ShardRouter>();
+        var servers = new ArrayList<ContractServer>();
+        for (int i = 0; i < nodeCount; i++) {
+            var shards = ShardMap.evenlyDivided(nodes, shardCount, nodes.get(i));
+            var router = new ShardRouter(shards);
+            var service = new ContractService(new InMemoryContractRepository(), LifecycleLog.OFF, new IdempotencyTable(), shards);
+            var executor = ContractServer.createExecutor(config);
+            var api = new ContractServiceApi(new ContractServiceApiHandler(service), router, executor);
+            routers.add(router);
+            var intercepted = ServerInterceptors.intercept(api, router.interceptor(), new AdmissionInterceptor(admissionConfig));
+            servers.add(new ContractServer(config.withPort(config.getPort() + i), executor, intercepted).start());
+            System.out.println("Started node " + nodes.get(i) + " with " + shards);
+        }
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> close(servers, routers)));
+        System.out.println("Started a cluster of " + nodeCount + " nodes with " + config + "...");
+        for (var server : servers) {
+            server.awaitTermination();
+        }
+    }
+
+    private static void close(List<ContractServer> servers, List<ShardRouter> routers) {
+        servers.forEach(ContractServer::close);
+        routers.forEach(ShardRouter::close);
+    }
+}
@@ -0,0 +1,126 @@
+package nl.jdriven.blogs.svc.contract;
+
+/**
+ * Settings of the gRPC server, read from system properties (prefix contract.server.):
+ * <ul>
+ * <li>port: 53000</li>
+ * <li>executor: how calls are run, see {@link ExecutorMode}; bounded by default, cached when calls block</li>
+ * <li>threads: size of the bounded pool, the number of cores by default</li>
+ * <li>queue: tasks waiting for the bounded pool before new calls are refused, 10000</li>
+ * <li>bossThreads, workerThreads: Netty event loop threads accepting connections and doing the I/O,
+ * Netty's own defaults when 0</li>
+ * <li>flowControlWindow: initial HTTP/2 flow control window in bytes, 1 MiB</li>
+ * <li>maxConcurrentCallsPerConnection: unlimited when 0</li>
+ * </ul>
+ */
+public class ServerConfig {
+    public enum ExecutorMode {
+        /** gRPC's default: an unbounded cached thread pool. */
+        CACHED,
+        /** A bounded work-stealing pool with a limited queue; for calls that do not block. */
+        BOUNDED,
+        /** A new virtual thread for every task; needs a Java runtime that has them (21+). */
+        VIRTUAL,
+        /**
+         * Calls run on the Netty event loop threads. Only for the in-memory store, where nothing blocks;
+         * the event log store waits for the disk, and a sharded server waits for the other nodes.
+         */
+        DIRECT
+    }
+
+    private static final String PREFIX = "contract.server.";
+    private static final int DEFAULT_PORT = 53000;
+
+    private final int port;
+    private final ExecutorMode executorMode;
+    private final int threads;
+    private final int queue;
+    private final int bossThreads;
+    private final int workerThreads;
+    private final int flowControlWindow;
+    private final int maxConcurrentCallsPerConnection;
+
+    public ServerConfig(int port, ExecutorMode executorMode, int threads, int queue, int bossThreads, int workerThreads,
+                        int flowControlWindow, int maxConcurrentCallsPerConnection) {
+        this.port = port;
+        this.executorMode = executorMode;
+        this.threads = threads;
+        this.queue = queue;
+        this.bossThreads = bossThreads;
+        this.workerThreads = workerThreads;
+        this.flowControlWindow = flowControlWindow;
+        this.maxConcurrentCallsPerConnection = maxConcurrentCallsPerConnection;
+    }
+
+    public static ServerConfig fromSystemProperties() {
+        return fromSystemProperties(false);
+    }
+
+    /**
+     * @param blockingCalls calls wait for the disk or for other nodes; a pool with a thread per core would be
+     *                      stuck waiting, so the executor is gRPC's cached pool unless set otherwise
+     */
+    public static ServerConfig fromSystemProperties(boolean blockingCalls) {
+        var defaultMode = blockingCalls ? ExecutorMode.CACHED : ExecutorMode.BOUNDED;
+        return new ServerConfig(
+                portFromSystemProperties(),
+                ExecutorMode.valueOf(System.getProperty(PREFIX + "executor", defaultMode.name()).toUpperCase()),
+                Integer.getInteger(PREFIX + "threads", Runtime.getRuntime().availableProcessors()),
+                Integer.getInteger(PREFIX + "queue", 10_000),
+                Integer.getInteger(PREFIX + "bossThreads", 0),
+                Integer.getInteger(PREFIX + "workerThreads", 0),
+                Integer.getInteger(PREFIX + "flowControlWindow", 1024 * 1024),
+                Integer.getInteger(PREFIX + "maxConcurrentCallsPerConnection", 0));
+    }
+
+    public static int portFromSystemProperties() {
+        return Integer.getInteger(PREFIX + "port", DEFAULT_PORT);
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * @return these settings with another port.
+     */
+    public ServerConfig withPort(int port) {
+        return new ServerConfig(port, executorMode, threads, queue, bossThreads, workerThreads,
+                flowControlWindow, maxConcurrentCallsPerConnection);
+    }
+
+    public ExecutorMode getExecutorMode() {
+        return executorMode;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public int getQueue() {
+        return queue;
+    }
+
+    public int getBossThreads() {
+        return bossThreads;
+    }
+
+    public int getWorkerThreads() {
+        return workerThreads;
+    }
+
+    public int getFlowControlWindow() {
+        return flowControlWindow;
+    }
+
+    public int getMaxConcurrentCallsPerConnection() {
+        return maxConcurrentCallsPerConnection;
+    }
+
+    @Override
+    public String toString() {
+        return "port=" + port + ", executor=" + executorMode + ", threads=" + threads + ", queue=" + queue
+                + ", bossThreads=" + bossThreads + ", workerThreads=" + workerThreads
+                + ", flowControlWindow=" + flowControlWindow + ", maxConcurrentCallsPerConnection=" + maxConcurrentCallsPerConnection;
+    }
+}
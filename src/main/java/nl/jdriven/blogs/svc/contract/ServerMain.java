@@ -1,20 +1,139 @@
 package nl.jdriven.blogs.svc.contract;
 
-import io.grpc.Server;
-import io.grpc.ServerBuilder;
+import io.grpc.ServerInterceptors;
+import nl.jdriven.blogs.svc.contract.admission.AdmissionConfig;
+import nl.jdriven.blogs.svc.contract.admission.AdmissionInterceptor;
 import nl.jdriven.blogs.svc.contract.api.ContractServiceApi;
+import nl.jdriven.blogs.svc.contract.api.ContractServiceApiHandler;
+import nl.jdriven.blogs.svc.contract.api.FindResponseCache;
+import nl.jdriven.blogs.svc.contract.api.ShardRouter;
+import nl.jdriven.blogs.svc.contract.cluster.ShardMap;
+import nl.jdriven.blogs.svc.contract.logging.LifecycleLog;
+import nl.jdriven.blogs.svc.contract.metrics.MetricsInterceptor;
+import nl.jdriven.blogs.svc.contract.metrics.MetricsRegistry;
+import nl.jdriven.blogs.svc.contract.metrics.PrometheusEndpoint;
+import nl.jdriven.blogs.svc.contract.repository.ContractRepositoryFactory;
+import nl.jdriven.blogs.svc.contract.service.ContractFeed;
+import nl.jdriven.blogs.svc.contract.service.ContractService;
+import nl.jdriven.blogs.svc.contract.service.IdempotencyTable;
+import nl.jdriven.blogs.svc.contract.service.QuoteExpiry;
 
+import javax.management.JMException;
+import javax.management.ObjectName;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.time.Duration;
 
+/**
+ * Starts the server; the contract storage is chosen with system properties:
+ * -Dcontract.repository=memory|eventlog (default memory), -Dcontract.repository.dir=data
+ * -Dcontract.repository.fsync=true|false (default true) and -Dcontract.repository.snapshot.minutes=10.
+ * The number of findContract responses kept is set with -Dcontract.cache.size=10000.
+ * Idempotency keys of changes are remembered with -Dcontract.idempotency.size=65536 and
+ * -Dcontract.idempotency.ttl.seconds=600, a size of 0 turns deduplication off.
+ * The last -Dcontract.feed.size=65536 changes are kept for the clients that watch contracts.
+ * Quotes not promoted within -Dcontract.quote.ttl.minutes=43200 (30 days) are abandoned, and removed
+ * -Dcontract.quote.retention.minutes=43200 later; a time to live of 0 keeps quotes, a retention of 0 abandoned quotes.
+ * The port, execution model and transport settings are in {@link ServerConfig}.
+ * Calls are refused when the server has too many, as set in {@link AdmissionConfig}.
+ * Contracts are divided over several servers as set in {@link ShardMap#fromSystemProperties(int)}.
+ * Contract lifecycle events are logged to standard out as set in {@link LifecycleLog#fromSystemProperties()}.
+ * Metrics are served for Prometheus on http://localhost:9464/metrics, -Dcontract.metrics.port=0 turns that off.
+ */
 public class ServerMain {
-    public static void main(String[] args) throws IOException, InterruptedException {
-        Server service = ServerBuilder.forPort(53000)
-                .addService(new ContractServiceApi())
-                .build()
-                .start();
+    public static void main(String[] args) throws IOException, InterruptedException, JMException {
+        var log = LifecycleLog.fromSystemProperties();
+        var engine = System.getProperty("contract.repository", ContractRepositoryFactory.MEMORY);
+        var shards = ShardMap.fromSystemProperties(ServerConfig.portFromSystemProperties());
+        boolean inMemory = engine.equals(ContractRepositoryFactory.MEMORY);
+        var config = ServerConfig.fromSystemProperties(!inMemory || shards.isSharded());
+        if (config.getExecutorMode() == ServerConfig.ExecutorMode.DIRECT) {
+            if (shards.isSharded()) {
+                throw new IllegalArgumentException("A sharded server waits for the other nodes, it cannot run calls on the event loop");
+            }
+            if (!inMemory) {
+                throw new IllegalArgumentException("The " + engine + " store waits for the disk, it cannot run calls on the event loop");
+            }
+        }
+        var repository = ContractRepositoryFactory.create(
+                engine,
+                Path.of(System.getProperty("contract.repository.dir", "data")),
+                Boolean.parseBoolean(System.getProperty("contract.repository.fsync", "true")),
+                Duration.ofMinutes(Long.getLong("contract.repository.snapshot.minutes", 10L)),
+                log);
+        ManagementFactory.getPlatformMBeanServer().registerMBean(repository.indexStatistics(),
+                new ObjectName("nl.jdriven.blogs.svc.contract:type=ContractIndex"));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(repository.archiveStatistics(),
+                new ObjectName("nl.jdriven.blogs.svc.contract:type=ContractArchive"));
+        var findResponses = new FindResponseCache(Long.getLong("contract.cache.size", FindResponseCache.DEFAULT_MAXIMUM_SIZE));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(findResponses,
+                new ObjectName("nl.jdriven.blogs.svc.contract:type=FindResponseCache"));
+        var idempotency = new IdempotencyTable(Integer.getInteger("contract.idempotency.size", IdempotencyTable.DEFAULT_CAPACITY),
+                Duration.ofSeconds(Long.getLong("contract.idempotency.ttl.seconds", IdempotencyTable.DEFAULT_TIME_TO_LIVE.toSeconds())));
+        var router = new ShardRouter(shards);
+        var feed = new ContractFeed(Integer.getInteger("contract.feed.size", ContractFeed.DEFAULT_CAPACITY));
+        var expiry = new QuoteExpiry(
+                Duration.ofMinutes(Long.getLong("contract.quote.ttl.minutes", QuoteExpiry.DEFAULT_TIME_TO_LIVE.toMinutes())),
+                Duration.ofMinutes(Long.getLong("contract.quote.retention.minutes", QuoteExpiry.DEFAULT_RETENTION.toMinutes())),
+                log);
+        var service = new ContractService(repository, log, idempotency, shards, feed, expiry);
+        var executor = ContractServer.createExecutor(config);
+        var api = new ContractServiceApi(new ContractServiceApiHandler(service, findResponses), router, executor);
+        var admissionConfig = AdmissionConfig.fromSystemProperties();
+        var admission = new AdmissionInterceptor(admissionConfig);
 
-        Runtime.getRuntime().addShutdownHook(new Thread(service::shutdownNow));
-        System.out.println("Started listening for rpc calls on 53000...");
-        service.awaitTermination();
+        var metrics = new MetricsRegistry();
+        metrics.gauge("contract_store_contracts", "Contracts in the store.", repository::size);
+        metrics.gauge("contract_store_work_items", "Work items of all contracts in the store.", repository::workItemCount);
+        metrics.gauge("contract_archive_contracts", "Finalized contracts stored off the heap.",
+                repository.archiveStatistics()::getContractCount);
+        metrics.gauge("contract_archive_offheap_bytes", "Direct memory used for finalized contracts.",
+                repository.archiveStatistics()::getOffHeapBytes);
+        metrics.gauge("contract_idempotent_replays_total", "Changes answered with the result of an earlier request with the same key.",
+                idempotency::getReplayed);
+        metrics.gauge("contract_idempotency_undeduplicated_total", "Changes with an idempotency key executed without remembering it, "
+                + "because all slots for it were taken by running changes.", idempotency::getUndeduplicated);
+        metrics.gauge("contract_log_dropped_total", "Lifecycle events not logged because the log could not keep up.", log::getDropped);
+        metrics.gauge("contract_watches", "WatchContracts calls receiving changes.", api.getWatchers()::getActive);
+        metrics.gauge("contract_watch_gaps_total", "Times a watch missed changes because it was too far behind.",
+                api.getWatchers()::getMissed);
+        metrics.gauge("contract_admission_rejected_total", "Calls refused because there were too many.", admission::getRejected);
+        metrics.gauge("contract_admission_expired_total", "Calls dropped because their deadline passed before they were handled.",
+                admission::getExpired);
+        metrics.gauge("contract_admission_limit", "Calls the server takes on at the same time, as adapted to their latency.",
+                admission::getServerLimit);
+        metrics.gauge("contract_quotes_abandoned_total", "Quotes abandoned because they were not promoted in time.",
+                expiry::getAbandoned);
+        metrics.gauge("contract_quotes_evicted_total", "Abandoned quotes removed from the store.", expiry::getEvicted);
+        metrics.gauge("contract_quote_expiry_waiting", "Quotes and abandoned quotes waiting for their deadline.",
+                expiry::getWaiting);
+        if (executor instanceof BoundedWorkStealingExecutor) {
+            metrics.gauge("contract_executor_rejected_total", "Calls refused because too many tasks waited for a thread.",
+                    ((BoundedWorkStealingExecutor) executor)::getRejected);
+        }
+        metrics.gauge("contract_forwarded_calls_total", "Calls sent to the node that owns the contract.", router::getForwarded);
+        int metricsPort = Integer.getInteger("contract.metrics.port", 9464);
+        var endpoint = metricsPort == 0 ? null
+                : new PrometheusEndpoint(metrics, new InetSocketAddress(InetAddress.getLoopbackAddress(), metricsPort));
+
+        var server = new ContractServer(config, executor, ServerInterceptors.intercept(api, router.interceptor(), admission,
+                new MetricsInterceptor(metrics))).start();
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.close();
+            router.close();
+            expiry.close();
+            if (endpoint != null) {
+                endpoint.close();
+            }
+            repository.close();
+            log.close();
+        }));
+        System.out.println("Started listening for rpc calls on " + server.getPort() + " with " + config + ", " + shards + ", "
+                + admissionConfig + "...");
+        server.awaitTermination();
     }
 }
@@ -0,0 +1,97 @@
+package nl.jdriven.blogs.svc.contract.admission;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Settings of the admission control, read from system properties (prefix contract.admission.):
+ * <ul>
+ * <li>enabled: true</li>
+ * <li>initialLimit: calls of one method at the same time to start with, 64</li>
+ * <li>minLimit, maxLimit: the range the limits adapt in, 4 and 2000</li>
+ * <li>serverLimit: calls of all methods at the same time to start with, 256; adapts in minLimit to maxLimit too</li>
+ * <li>targetMillis: a call that takes longer means there is too much to do, 100</li>
+ * <li>backoffRatio: what is left of a limit after a call was too slow, 0.9</li>
+ * <li>streamLimit: calls of one streaming method at the same time, fixed, 16</li>
+ * </ul>
+ */
+public class AdmissionConfig {
+    private static final String PREFIX = "contract.admission.";
+
+    private final boolean enabled;
+    private final int initialLimit;
+    private final int minLimit;
+    private final int maxLimit;
+    private final int serverLimit;
+    private final long targetNanos;
+    private final double backoffRatio;
+    private final int streamLimit;
+
+    public AdmissionConfig(boolean enabled, int initialLimit, int minLimit, int maxLimit, int serverLimit,
+                           long targetMillis, double backoffRatio, int streamLimit) {
+        if (minLimit < 1 || minLimit > maxLimit) {
+            throw new IllegalArgumentException("Expected 1 <= minLimit <= maxLimit, got " + minLimit + " and " + maxLimit);
+        }
+        if (backoffRatio <= 0 || backoffRatio >= 1) {
+            throw new IllegalArgumentException("The backoff ratio must be between 0 and 1, got " + backoffRatio);
+        }
+        this.enabled = enabled;
+        this.initialLimit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.serverLimit = serverLimit;
+        this.targetNanos = TimeUnit.MILLISECONDS.toNanos(targetMillis);
+        this.backoffRatio = backoffRatio;
+        this.streamLimit = streamLimit;
+    }
+
+    public static AdmissionConfig fromSystemProperties() {
+        return new AdmissionConfig(
+                Boolean.parseBoolean(System.getProperty(PREFIX + "enabled", "true")),
+                Integer.getInteger(PREFIX + "initialLimit", 64),
+                Integer.getInteger(PREFIX + "minLimit", 4),
+                Integer.getInteger(PREFIX + "maxLimit", 2000),
+                Integer.getInteger(PREFIX + "serverLimit", 256),
+                Long.getLong(PREFIX + "targetMillis", 100L),
+                Double.parseDouble(System.getProperty(PREFIX + "backoffRatio", "0.9")),
+                Integer.getInteger(PREFIX + "streamLimit", 16));
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getInitialLimit() {
+        return initialLimit;
+    }
+
+    public int getMinLimit() {
+        return minLimit;
+    }
+
+    public int getMaxLimit() {
+        return maxLimit;
+    }
+
+    public int getServerLimit() {
+        return serverLimit;
+    }
+
+    public long getTargetNanos() {
+        return targetNanos;
+    }
+
+    public double getBackoffRatio() {
+        return backoffRatio;
+    }
+
+    public int getStreamLimit() {
+        return streamLimit;
+    }
+
+    @Override
+    public String toString() {
+        return enabled ? "admission limits from " + initialLimit + " per method and " + serverLimit + " in all, between "
+                + minLimit + " and " + maxLimit + ", target " + TimeUnit.NANOSECONDS.toMillis(targetNanos)
+                + " ms, backoff " + backoffRatio + ", " + streamLimit + " per streaming method" : "no admission control";
+    }
+}
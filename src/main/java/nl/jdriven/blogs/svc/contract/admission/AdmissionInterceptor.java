@@ -0,0 +1,239 @@
+package nl.jdriven.blogs.svc.contract.admission;
+
+import io.grpc.Context;
+import io.grpc.ForwardingServerCall;
+import io.grpc.ForwardingServerCallListener;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.Status;
+import nl.jdriven.blogs.svc.contract.proto.ContractServiceGrpc;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Admission control in front of the service: a call only starts when both its method and the server as a whole
+ * are below their limit, otherwise it is refused right away with RESOURCE_EXHAUSTED. Under overload it is better
+ * to refuse some calls quickly than to let all of them wait in the queue until their deadline has passed.
+ * <p>
+ * Every unary method has its own {@link AimdLimit}, and so does the server. Calls may only use part of the server
+ * limit depending on their priority: reads all of it, changes 80%, and bulk calls, listings and statistics half of it;
+ * so when the server gets busy, bulk work is refused first and the cheap reads last. Only unary calls adapt the limits,
+ * the duration of a stream says nothing about the load; every streaming method has a fixed limit instead.
+ * WatchContracts is not limited here, it mostly waits for changes.
+ * <p>
+ * A call whose deadline passed, or that the client cancelled, while it waited for a thread is dropped instead
+ * of being handled for nobody.
+ */
+public class AdmissionInterceptor implements ServerInterceptor {
+    enum Priority {
+        READ(1.0), WRITE(0.8), BULK(0.5);
+
+        // of the server limit
+        private final double share;
+
+        Priority(double share) {
+            this.share = share;
+        }
+    }
+
+    private static final class MethodLimit {
+        final String name;
+        final AimdLimit limit;
+        final Priority priority;
+        final boolean unary;
+
+        MethodLimit(String name, AimdLimit limit, Priority priority, boolean unary) {
+            this.name = name;
+            this.limit = limit;
+            this.priority = priority;
+            this.unary = unary;
+        }
+    }
+
+    private static final ServerCall.Listener<Object> NOOP_LISTENER = new ServerCall.Listener<>() {
+    };
+
+    private final boolean enabled;
+    private final Map<String, MethodLimit> methods = new HashMap<>();
+    private final AimdLimit server;
+    private final long targetNanos;
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+
+    public AdmissionInterceptor(AdmissionConfig config) {
+        enabled = config.isEnabled();
+        targetNanos = config.getTargetNanos();
+        server = new AimdLimit(config.getServerLimit(), config.getMinLimit(), config.getMaxLimit(), config.getBackoffRatio(), true);
+        add(config, ContractServiceGrpc.getFindContractMethod(), Priority.READ);
+        add(config, ContractServiceGrpc.getGetContractFinancialsMethod(), Priority.READ);
+        add(config, ContractServiceGrpc.getNewQuoteMethod(), Priority.WRITE);
+        add(config, ContractServiceGrpc.getPromoteQuoteMethod(), Priority.WRITE);
+        add(config, ContractServiceGrpc.getAddWorkDoneMethod(), Priority.WRITE);
+        add(config, ContractServiceGrpc.getFinalizeContractMethod(), Priority.WRITE);
+        add(config, ContractServiceGrpc.getBulkNewQuoteMethod(), Priority.BULK);
+        add(config, ContractServiceGrpc.getBulkAddWorkDoneMethod(), Priority.BULK);
+        add(config, ContractServiceGrpc.getListContractsMethod(), Priority.BULK);
+        add(config, ContractServiceGrpc.getGetContractStatisticsMethod(), Priority.BULK);
+    }
+
+    private void add(AdmissionConfig config, MethodDescriptor<?, ?> method, Priority priority) {
+        boolean unary = method.getType() == MethodDescriptor.MethodType.UNARY;
+        var limit = unary
+                ? new AimdLimit(config.getInitialLimit(), config.getMinLimit(), config.getMaxLimit(), config.getBackoffRatio(), true)
+                : new AimdLimit(config.getStreamLimit(), 1, config.getStreamLimit(), config.getBackoffRatio(), false);
+        var name = method.getFullMethodName().substring(method.getFullMethodName().lastIndexOf('/') + 1);
+        methods.put(method.getFullMethodName(), new MethodLimit(name, limit, priority, unary));
+    }
+
+    /**
+     * @return calls refused because a limit was reached.
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * @return calls dropped because they were cancelled or past their deadline before they were handled.
+     */
+    public long getExpired() {
+        return expired.sum();
+    }
+
+    public int getServerLimit() {
+        return server.getLimit();
+    }
+
+    public int getServerInFlight() {
+        return server.getInFlight();
+    }
+
+    /**
+     * @return the current limit of a method, by its name in the proto.
+     */
+    public int getLimit(String bareMethodName) {
+        for (var method : methods.values()) {
+            if (method.name.equals(bareMethodName)) {
+                return method.limit.getLimit();
+            }
+        }
+        throw new IllegalArgumentException("No limit on " + bareMethodName);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers,
+                                                                 ServerCallHandler<ReqT, RespT> next) {
+        var method = enabled ? methods.get(call.getMethodDescriptor().getFullMethodName()) : null;
+        if (method == null) {
+            return next.startCall(call, headers);
+        }
+        if (Context.current().isCancelled()) {
+            // gRPC has cancelled the call already
+            expired.increment();
+            return (ServerCall.Listener<ReqT>) NOOP_LISTENER;
+        }
+        if (!method.limit.tryAcquire(1.0)) {
+            return reject(call, method.name + " has too many calls, limit " + method.limit.getLimit());
+        }
+        if (!server.tryAcquire(method.priority.share)) {
+            method.limit.release();
+            return reject(call, "The server has too many calls for " + method.name + ", limit "
+                    + (int) (server.getLimit() * method.priority.share));
+        }
+        var admitted = new AdmittedCall<>(call, method, this);
+        ServerCall.Listener<ReqT> listener;
+        try {
+            listener = next.startCall(admitted, headers);
+        } catch (RuntimeException e) {
+            admitted.finish(false);
+            throw e;
+        }
+        return new ForwardingServerCallListener.SimpleForwardingServerCallListener<>(listener) {
+            @Override
+            public void onMessage(ReqT message) {
+                if (!admitted.expired()) {
+                    super.onMessage(message);
+                }
+            }
+
+            @Override
+            public void onHalfClose() {
+                // a unary call is handled here, the request may have waited for a thread since it was admitted
+                if (!admitted.expired()) {
+                    super.onHalfClose();
+                }
+            }
+
+            @Override
+            public void onCancel() {
+                // a hedge that lost is cancelled too, only a deadline that passed says the server is too slow
+                var deadline = Context.current().getDeadline();
+                admitted.finish(deadline != null && deadline.isExpired());
+                super.onCancel();
+            }
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    private <ReqT, RespT> ServerCall.Listener<ReqT> reject(ServerCall<ReqT, RespT> call, String description) {
+        rejected.increment();
+        call.close(Status.RESOURCE_EXHAUSTED.withDescription(description), new Metadata());
+        return (ServerCall.Listener<ReqT>) NOOP_LISTENER;
+    }
+
+    private static final class AdmittedCall<ReqT, RespT> extends ForwardingServerCall.SimpleForwardingServerCall<ReqT, RespT> {
+        @SuppressWarnings("rawtypes")
+        private static final AtomicIntegerFieldUpdater<AdmittedCall> FINISHED =
+                AtomicIntegerFieldUpdater.newUpdater(AdmittedCall.class, "finished");
+
+        private final MethodLimit method;
+        private final AdmissionInterceptor admission;
+        private final long startNanos = System.nanoTime();
+        private volatile int finished;
+        private boolean expired;
+
+        AdmittedCall(ServerCall<ReqT, RespT> call, MethodLimit method, AdmissionInterceptor admission) {
+            super(call);
+            this.method = method;
+            this.admission = admission;
+        }
+
+        @Override
+        public void close(Status status, Metadata trailers) {
+            finish(status.getCode() == Status.Code.DEADLINE_EXCEEDED);
+            super.close(status, trailers);
+        }
+
+        boolean expired() {
+            if (!expired && Context.current().isCancelled()) {
+                expired = true;
+                admission.expired.increment();
+            }
+            return expired;
+        }
+
+        /**
+         * @param givenUp the client stopped waiting for the answer
+         */
+        void finish(boolean givenUp) {
+            // close and cancel can both happen, the first one counts
+            if (!FINISHED.compareAndSet(this, 0, 1)) {
+                return;
+            }
+            if (!method.unary) {
+                method.limit.release();
+                admission.server.release();
+                return;
+            }
+            boolean overloaded = givenUp || System.nanoTime() - startNanos > admission.targetNanos;
+            method.limit.release(overloaded);
+            admission.server.release(overloaded);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package nl.jdriven.blogs.svc.contract.admission;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A limit on the number of calls at the same time that adapts to how long they take: additive increase,
+ * multiplicative decrease. Every call that is quick enough while the limit is at least half used raises it by one;
+ * every call that is too slow, or that the client gave up on, multiplies it by the backoff ratio.
+ * So the limit settles around the concurrency the server can handle within the target latency, and drops fast
+ * when calls start to queue. Updates of the limit from different threads can overwrite each other,
+ * which only makes it adapt a little slower.
+ */
+final class AimdLimit {
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private final boolean adaptive;
+    private volatile double limit;
+
+    /**
+     * @param adaptive false for a fixed limit
+     */
+    AimdLimit(int initialLimit, int minLimit, int maxLimit, double backoffRatio, boolean adaptive) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.backoffRatio = backoffRatio;
+        this.adaptive = adaptive;
+        limit = adaptive ? Math.max(minLimit, Math.min(initialLimit, maxLimit)) : initialLimit;
+    }
+
+    /**
+     * @param share of the limit this call may use
+     * @return true when the call may start, it must be released when done.
+     */
+    boolean tryAcquire(double share) {
+        int allowed = Math.max(1, (int) (limit * share));
+        while (true) {
+            int current = inFlight.get();
+            if (current >= allowed) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * A call is done without saying anything about the load, or did not start after all.
+     */
+    void release() {
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * A call is done, and its latency adapts the limit.
+     * @param overloaded true when the call took too long or was given up on
+     */
+    void release(boolean overloaded) {
+        int current = inFlight.getAndDecrement();
+        if (!adaptive) {
+            return;
+        }
+        double now = limit;
+        if (overloaded) {
+            limit = Math.max(minLimit, now * backoffRatio);
+        } else if (current * 2 >= now) {
+            limit = Math.min(maxLimit, now + 1);
+        }
+    }
+
+    int getLimit() {
+        return (int) limit;
+    }
+
+    int getInFlight() {
+        return inFlight.get();
+    }
+}
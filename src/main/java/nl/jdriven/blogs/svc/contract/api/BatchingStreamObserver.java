@@ -0,0 +1,168 @@
+package nl.jdriven.blogs.svc.contract.api;
+
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Receives a stream of requests and hands them to a processor in batches.
+ * Inbound flow control is done by hand: no more than a batch is requested from the client, and the next
+ * batch only after the previous one was processed and the client is ready to receive the responses,
+ * so a fast client is slowed down to the pace of the server instead of filling its memory.
+ * A batch that does not fill up is processed after a short linger, so a client that waits for
+ * responses before sending more is never stuck. The linger timer is shared by all streams, it only hands the
+ * flush to the executor of the calls; a flush that fails there ends the call with an error.
+ */
+class BatchingStreamObserver<T> implements StreamObserver<T> {
+    static final int BATCH_SIZE = 256;
+    private static final long LINGER_MILLIS = 5;
+    private static final ScheduledExecutorService lingerTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+        var t = new Thread(r, "bulk-linger");
+        t.setDaemon(true);
+        return t;
+    });
+
+    interface BatchProcessor<T> {
+        /**
+         * @param firstIndex position of the first request of the batch in the stream
+         */
+        void process(List<T> batch, long firstIndex);
+    }
+
+    private final ServerCallStreamObserver<?> responseObserver;
+    private final BatchProcessor<T> processor;
+    private final Runnable completion;
+    private final Executor executor;
+
+    private List<T> batch = new ArrayList<>(BATCH_SIZE);
+    private long nextIndex;
+    private int outstanding;
+    private boolean waitingForReady;
+    private boolean done;
+    private ScheduledFuture<?> linger;
+
+    /**
+     * Must be created in the service method, before the request observer is returned to gRPC.
+     * @param completion called after the last batch when the client completed the stream
+     * @param executor runs the flush of a batch that lingered
+     */
+    BatchingStreamObserver(StreamObserver<?> responseObserver, BatchProcessor<T> processor, Runnable completion,
+                           Executor executor) {
+        this.responseObserver = (ServerCallStreamObserver<?>) responseObserver;
+        this.processor = processor;
+        this.completion = completion;
+        this.executor = executor;
+        this.responseObserver.disableAutoInboundFlowControl();
+        this.responseObserver.setOnReadyHandler(this::onReady);
+        this.responseObserver.setOnCancelHandler(this::cancel);
+        requestMore();
+    }
+
+    @Override
+    public synchronized void onNext(T request) {
+        if (done) {
+            return;
+        }
+        outstanding--;
+        batch.add(request);
+        if (batch.size() >= BATCH_SIZE) {
+            flush();
+        } else if (linger == null) {
+            linger = lingerTimer.schedule(this::handOff, LINGER_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public synchronized void onError(Throwable t) {
+        // the client gave up, nobody is listening for the rest
+        cancel();
+    }
+
+    @Override
+    public synchronized void onCompleted() {
+        if (done) {
+            return;
+        }
+        flush();
+        done = true;
+        completion.run();
+    }
+
+    // on the timer thread, which must never run a batch: it would hold up the linger of every other stream
+    private void handOff() {
+        try {
+            executor.execute(this::lingered);
+        } catch (RuntimeException e) {
+            fail(e);
+        }
+    }
+
+    private synchronized void lingered() {
+        linger = null;
+        if (done) {
+            return;
+        }
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            fail(e);
+        }
+    }
+
+    private synchronized void fail(RuntimeException e) {
+        if (done) {
+            return;
+        }
+        cancel();
+        responseObserver.onError(ErrorStatuses.toStatusException(e));
+    }
+
+    private synchronized void onReady() {
+        if (waitingForReady && !done) {
+            requestMore();
+        }
+    }
+
+    private synchronized void cancel() {
+        done = true;
+        batch.clear();
+        if (linger != null) {
+            linger.cancel(false);
+        }
+    }
+
+    private void flush() {
+        if (linger != null) {
+            linger.cancel(false);
+            linger = null;
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        var toProcess = batch;
+        batch = new ArrayList<>(BATCH_SIZE);
+        processor.process(toProcess, nextIndex);
+        nextIndex += toProcess.size();
+        requestMore();
+    }
+
+    private void requestMore() {
+        if (!responseObserver.isReady()) {
+            waitingForReady = true;
+            return;
+        }
+        waitingForReady = false;
+        int more = BATCH_SIZE - outstanding;
+        if (more > 0) {
+            outstanding += more;
+            responseObserver.request(more);
+        }
+    }
+}
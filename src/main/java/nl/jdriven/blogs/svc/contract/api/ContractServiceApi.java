@@ -1,19 +1,55 @@
 package nl.jdriven.blogs.svc.contract.api;
 
-import io.grpc.Status;
 import io.grpc.stub.StreamObserver;
-import nl.jdriven.blogs.svc.contract.model.exception.NotFoundException;
-import nl.jdriven.blogs.svc.contract.model.exception.PreConditionNotMetException;
 import nl.jdriven.blogs.svc.contract.proto.*;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * This class Implements the gRPC API calls by handling the communication and
- * relaying the call to the ContractServiceApiHandler.
+ * relaying the call to the ContractServiceApiHandler, or to the node of the contract when it is on another node.
  * @see ContractServiceApiHandler
+ * @see ShardRouter
  */
 public class ContractServiceApi extends ContractServiceGrpc.ContractServiceImplBase {
 
-    private static final ContractServiceApiHandler handler = new ContractServiceApiHandler();
+    private final ContractServiceApiHandler handler;
+    private final ShardRouter router;
+    private final Executor callExecutor;
+    private final ContractWatchers watchers = new ContractWatchers();
+
+    public ContractServiceApi() {
+        this(new ContractServiceApiHandler());
+    }
+
+    public ContractServiceApi(ContractServiceApiHandler handler) {
+        this(handler, ShardRouter.LOCAL);
+    }
+
+    public ContractServiceApi(ContractServiceApiHandler handler, ShardRouter router) {
+        this(handler, router, null);
+    }
+
+    /**
+     * @param callExecutor the executor the server runs calls on, for work of a call started outside of gRPC;
+     *                     null when gRPC has its own, then the common pool is used
+     */
+    public ContractServiceApi(ContractServiceApiHandler handler, ShardRouter router, Executor callExecutor) {
+        this.handler = handler;
+        this.router = router;
+        this.callExecutor = callExecutor != null ? callExecutor : ForkJoinPool.commonPool();
+    }
+
+    public ContractWatchers getWatchers() {
+        return watchers;
+    }
 
     @Override
     public void newQuote(NewQuoteRequest request, StreamObserver<NewQuoteResponse> responseObserver) {
@@ -26,6 +62,9 @@ public class ContractServiceApi extends ContractServiceGrpc.ContractServiceImplB
 
     @Override
     public void addWorkDone(AddWorkDoneRequest request, StreamObserver<AddWorkDoneResponse> responseObserver) {
+        if (router.forward(request.getContractId(), request, responseObserver, ContractServiceGrpc.ContractServiceStub::addWorkDone)) {
+            return;
+        }
         try {
             returnResponse(responseObserver, handler.addWorkDone(request));
         } catch (Exception e) {
@@ -35,6 +74,9 @@ public class ContractServiceApi extends ContractServiceGrpc.ContractServiceImplB
 
     @Override
     public void finalizeContract(FinalizeContractRequest request, StreamObserver<FinalizeContractResponse> responseObserver) {
+        if (router.forward(request.getContractId(), request, responseObserver, ContractServiceGrpc.ContractServiceStub::finalizeContract)) {
+            return;
+        }
         try {
             returnResponse(responseObserver, handler.finalizeContract(request));
         } catch (Exception e) {
@@ -44,6 +86,9 @@ public class ContractServiceApi extends ContractServiceGrpc.ContractServiceImplB
 
     @Override
     public void findContract(FindContractRequest request, StreamObserver<FindContractResponse> responseObserver) {
+        if (router.forward(request.getContractId(), request, responseObserver, ContractServiceGrpc.ContractServiceStub::findContract)) {
+            return;
+        }
         try {
             returnResponse(responseObserver, handler.find(request));
         } catch (Exception e) {
@@ -51,8 +96,23 @@ public class ContractServiceApi extends ContractServiceGrpc.ContractServiceImplB
         }
     }
 
+    @Override
+    public void getContractFinancials(GetContractFinancialsRequest request, StreamObserver<GetContractFinancialsResponse> responseObserver) {
+        if (router.forward(request.getContractId(), request, responseObserver, ContractServiceGrpc.ContractServiceStub::getContractFinancials)) {
+            return;
+        }
+        try {
+            returnResponse(responseObserver, handler.getFinancials(request));
+        } catch (Exception e) {
+            returnError(responseObserver, e);
+        }
+    }
+
     @Override
     public void promoteQuote(PromoteQuoteRequest request, StreamObserver<PromoteQuoteResponse> responseObserver) {
+        if (router.forward(request.getContractId(), request, responseObserver, ContractServiceGrpc.ContractServiceStub::promoteQuote)) {
+            return;
+        }
         try {
             handler.promoteQuote(request);
             returnResponse(responseObserver, PromoteQuoteResponse.getDefaultInstance());
@@ -61,24 +121,130 @@ public class ContractServiceApi extends ContractServiceGrpc.ContractServiceImplB
         }
     }
 
+    @Override
+    public void listContracts(ListContractsRequest request, StreamObserver<ListContractsResponse> responseObserver) {
+        try {
+            new FlowControlledResponder<>(responseObserver, router.listEverywhere(request, handler.listContracts(request)),
+                    e -> returnError(responseObserver, e))
+                    .send();
+        } catch (Exception e) {
+            returnError(responseObserver, e);
+        }
+    }
+
+    @Override
+    public void watchContracts(WatchContractsRequest request, StreamObserver<WatchContractsResponse> responseObserver) {
+        if (router.forwardWatch(request, responseObserver)) {
+            return;
+        }
+        try {
+            watchers.add(new ContractWatch(responseObserver, request, handler.watchContracts(request), watchers));
+        } catch (Exception e) {
+            returnError(responseObserver, e);
+        }
+    }
+
+    @Override
+    public void getContractStatistics(GetContractStatisticsRequest request, StreamObserver<GetContractStatisticsResponse> responseObserver) {
+        try {
+            var totals = router.totalsEverywhere(request, handler.getStatistics(request));
+            returnResponse(responseObserver, Transformer.transform(totals, request.getTopCustomers()));
+        } catch (Exception e) {
+            returnError(responseObserver, e);
+        }
+    }
+
+    @Override
+    public StreamObserver<NewQuoteRequest> bulkNewQuote(StreamObserver<BulkNewQuoteResponse> responseObserver) {
+        return new BatchingStreamObserver<NewQuoteRequest>(responseObserver,
+                (batch, firstIndex) -> handler.batch(() -> {
+                    long index = firstIndex;
+                    for (var request : batch) {
+                        var response = BulkNewQuoteResponse.newBuilder().setIndex(index++);
+                        try {
+                            response.setContractId(handler.newQuote(request).getContractId());
+                        } catch (Exception e) {
+                            response.setError(ErrorStatuses.toRpcStatus(e));
+                        }
+                        responseObserver.onNext(response.build());
+                    }
+                }),
+                responseObserver::onCompleted, callExecutor);
+    }
+
+    @Override
+    public StreamObserver<AddWorkDoneRequest> bulkAddWorkDone(StreamObserver<BulkAddWorkDoneResponse> responseObserver) {
+        var accepted = new AtomicLong();
+        var response = BulkAddWorkDoneResponse.newBuilder();
+        return new BatchingStreamObserver<AddWorkDoneRequest>(responseObserver,
+                (batch, firstIndex) -> {
+                    var errors = addWorkDoneEverywhere(batch);
+                    for (int i = 0; i < errors.length; i++) {
+                        if (errors[i] == null) {
+                            accepted.incrementAndGet();
+                        } else {
+                            response.addErrors(BulkItemError.newBuilder().setIndex(firstIndex + i).setError(errors[i]));
+                        }
+                    }
+                },
+                () -> returnResponse(responseObserver, response.setAccepted(accepted.get()).build()), callExecutor);
+    }
+
+    /**
+     * The work for contracts of other nodes is sent to each node in one stream, and made durable there while
+     * the work for the contracts of this node is added here as one batch.
+     * @return the error of every position in the batch, null when it was added.
+     */
+    private com.google.rpc.Status[] addWorkDoneEverywhere(List<AddWorkDoneRequest> batch) {
+        var errors = new com.google.rpc.Status[batch.size()];
+        var local = new ArrayList<Integer>();
+        var remote = new HashMap<String, List<Integer>>();
+        for (int i = 0; i < batch.size(); i++) {
+            try {
+                var node = router.nodeOf(batch.get(i).getContractId());
+                (node == null ? local : remote.computeIfAbsent(node, k -> new ArrayList<>())).add(i);
+            } catch (Exception e) {
+                errors[i] = ErrorStatuses.toRpcStatus(e);
+            }
+        }
+        var answers = new HashMap<String, CompletableFuture<BulkAddWorkDoneResponse>>();
+        remote.forEach((node, positions) -> {
+            var requests = new ArrayList<AddWorkDoneRequest>(positions.size());
+            positions.forEach(i -> requests.add(batch.get(i)));
+            answers.put(node, router.bulkAddWorkDone(node, requests));
+        });
+        if (!local.isEmpty()) {
+            handler.batch(() -> {
+                for (int i : local) {
+                    try {
+                        handler.addWorkDone(batch.get(i));
+                    } catch (Exception e) {
+                        errors[i] = ErrorStatuses.toRpcStatus(e);
+                    }
+                }
+            });
+        }
+        answers.forEach((node, answer) -> {
+            var positions = remote.get(node);
+            try {
+                for (var error : answer.join().getErrorsList()) {
+                    errors[positions.get((int) error.getIndex())] = error.getError();
+                }
+            } catch (CompletionException e) {
+                var error = ErrorStatuses.toRpcStatus(e.getCause());
+                positions.forEach(i -> errors[i] = error);
+            }
+        });
+        return errors;
+    }
+
     private <T> void returnResponse(StreamObserver<T> responseObserver, T response) {
         responseObserver.onNext(response);
         responseObserver.onCompleted();
     }
 
     private void returnError(StreamObserver<?> responseObserver, Throwable exc) {
-        if (exc instanceof PreConditionNotMetException) {
-            var e = (PreConditionNotMetException) exc;
-            var status = Status.FAILED_PRECONDITION
-                    .withCause(exc)
-                    .withDescription(e.getConditionFailuresAsString());
-            responseObserver.onError(status.asRuntimeException());
-        }
-        if (exc instanceof NotFoundException) {
-            responseObserver.onError(Status.NOT_FOUND.asRuntimeException());
-        }
-        var status = Status.fromThrowable(exc);
-        responseObserver.onError(status.asRuntimeException());
+        responseObserver.onError(ErrorStatuses.toStatusException(exc));
     }
 
 }
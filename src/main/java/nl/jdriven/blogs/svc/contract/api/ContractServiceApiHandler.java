@@ -1,11 +1,19 @@
 package nl.jdriven.blogs.svc.contract.api;
 
+import nl.jdriven.blogs.svc.contract.model.exception.NotFoundException;
 import nl.jdriven.blogs.svc.contract.model.exception.PreConditionNotMetException;
+import nl.jdriven.blogs.svc.contract.model.main.Amount;
+import nl.jdriven.blogs.svc.contract.model.main.ContractId;
 import nl.jdriven.blogs.svc.contract.proto.*;
+import nl.jdriven.blogs.svc.contract.repository.ContractTotals;
+import nl.jdriven.blogs.svc.contract.service.ContractFeed;
+import nl.jdriven.blogs.svc.contract.service.ContractQuery;
 import nl.jdriven.blogs.svc.contract.service.ContractService;
 import org.apache.commons.lang3.StringUtils;
 
-import java.math.BigDecimal;
+import java.util.Iterator;
+import java.util.Optional;
+import java.util.stream.Collectors;
 
 /**
  * Handles all gRPC functions by translating input and output from/to the model classes of the service
@@ -14,58 +22,76 @@ import java.math.BigDecimal;
  * @see ContractService
  */
 public class ContractServiceApiHandler extends ContractServiceGrpc.ContractServiceImplBase {
-    private static final ContractService contractService = new ContractService();
+    private static final PreConditionNotMetException CONTRACT_ID_MANDATORY =
+            new PreConditionNotMetException(new String[]{"contractId"}, new String[]{"Input.ContractId.mandatory"});
+    private static final PreConditionNotMetException IDEMPOTENCY_KEY_TOO_LONG =
+            new PreConditionNotMetException(new String[]{"idempotencyKey"}, new String[]{"Input.IdempotencyKey.tooLong"});
+    private static final int MAX_IDEMPOTENCY_KEY_LENGTH = 256;
 
-    public NewQuoteResponse newQuote(NewQuoteRequest request) {
-        String reason = "";
-        if (StringUtils.isBlank(request.getDescriptionOfWorkRequested())) {
-            reason = "Input.DescriptionOfWorkRequested.mandatory";
-        } else if (StringUtils.isBlank(request.getFullNameOfCustomer())) {
-            reason = StringUtils.joinWith(";", reason, "Input.FullNameOfCustomer.mandatory");
-        } else if (!request.hasQuotedPrice() || Transformer.transform(request.getQuotedPrice()).isEmpty()) {
-            reason = StringUtils.joinWith(";", reason, "Input.QuotedPrice.mandatory");
-        }
-        if (reason.length() > 0) {
-            throw new PreConditionNotMetException(reason);
-        }
+    private final ContractService contractService;
+    private final FindResponseCache findResponses;
+
+    public ContractServiceApiHandler() {
+        this(new ContractService());
+    }
+
+    public ContractServiceApiHandler(ContractService contractService) {
+        this(contractService, new FindResponseCache());
+    }
 
-        String id = contractService.addQuote(request.getFullNameOfCustomer(),
-                Transformer.transform(request.getQuotedPrice()).get(),
-                request.getDescriptionOfWorkRequested());
+    public ContractServiceApiHandler(ContractService contractService, FindResponseCache findResponses) {
+        this.contractService = contractService;
+        this.findResponses = findResponses;
+    }
 
-        return NewQuoteResponse.newBuilder().setContractId(id).build();
+    public NewQuoteResponse newQuote(NewQuoteRequest request) {
+        var quotedPrice = request.hasQuotedPrice() ? Transformer.transform(request.getQuotedPrice()) : Optional.<Amount>empty();
+        new Violations()
+                .check(StringUtils.isNotBlank(request.getDescriptionOfWorkRequested()),
+                        "descriptionOfWorkRequested", "Input.DescriptionOfWorkRequested.mandatory")
+                .check(StringUtils.isNotBlank(request.getFullNameOfCustomer()),
+                        "fullNameOfCustomer", "Input.FullNameOfCustomer.mandatory")
+                .check(quotedPrice.isPresent(), "quotedPrice", "Input.QuotedPrice.mandatory")
+                .check(request.getIdempotencyKey().length() <= MAX_IDEMPOTENCY_KEY_LENGTH, "idempotencyKey", "Input.IdempotencyKey.tooLong")
+                .throwIfAny();
+
+        var id = contractService.addQuote(request.getFullNameOfCustomer(),
+                quotedPrice.get(),
+                request.getDescriptionOfWorkRequested(),
+                request.getIdempotencyKey());
+
+        return NewQuoteResponse.newBuilder().setContractId(id.toString()).build();
     }
 
     public AddWorkDoneResponse addWorkDone(AddWorkDoneRequest request) {
-        String reasons = "";
-        if (StringUtils.isBlank(request.getContractId())) {
-            reasons = "Input.ContractId.mandatory";
-        }
-        if (!request.hasWork()) {
-            reasons = StringUtils.joinWith(";", reasons, "Input.Work.mandatory");
-        } else {
+        var violations = new Violations()
+                .check(StringUtils.isNotBlank(request.getContractId()), "contractId", "Input.ContractId.mandatory")
+                .check(request.hasWork(), "work", "Input.Work.mandatory")
+                .check(request.getIdempotencyKey().length() <= MAX_IDEMPOTENCY_KEY_LENGTH, "idempotencyKey", "Input.IdempotencyKey.tooLong");
+        if (request.hasWork()) {
             // check the work package
-            if (StringUtils.isBlank(request.getWork().getDescriptionOfWorkDone())) {
-                reasons = StringUtils.joinWith(";", reasons, "Input.Work.Description.mandatory");
-            }
-            if (!request.getWork().hasCostOfWork() || Transformer.transform(request.getWork().getCostOfWork()).isEmpty()) {
-                reasons = StringUtils.joinWith(";", reasons, "Input.Work.Cost.mandatory");
-            }
-        }
-        if (reasons.length() > 0) {
-            throw new PreConditionNotMetException(reasons);
+            violations
+                    .check(StringUtils.isNotBlank(request.getWork().getDescriptionOfWorkDone()),
+                            "work.descriptionOfWorkDone", "Input.Work.Description.mandatory")
+                    .check(request.getWork().hasCostOfWork() && Transformer.transform(request.getWork().getCostOfWork()).isPresent(),
+                            "work.costOfWork", "Input.Work.Cost.mandatory");
         }
+        violations.throwIfAny();
 
+        var id = existingContractId(request.getContractId());
         var workDone = Transformer.transform(request.getWork());
-        contractService.addWorkDone(request.getContractId(), workDone);
+        contractService.addWorkDone(id, workDone, request.getIdempotencyKey());
+        findResponses.invalidate(id);
 
         return AddWorkDoneResponse.getDefaultInstance();
     }
 
     public FinalizeContractResponse finalizeContract(FinalizeContractRequest request) {
-        checkContractIdPresent(request.getContractId());
+        var id = contractId(request.getContractId());
+        checkIdempotencyKey(request.getIdempotencyKey());
 
-        BigDecimal profitMade = contractService.finalizeContract(request.getContractId());
+        Amount profitMade = contractService.finalizeContract(id, request.getIdempotencyKey());
+        findResponses.invalidate(id);
 
         return FinalizeContractResponse.newBuilder()
                 .setProfitMade(Transformer.transform(profitMade))
@@ -73,23 +99,107 @@ public class ContractServiceApiHandler extends ContractServiceGrpc.ContractServi
     }
 
     public FindContractResponse find(FindContractRequest request) {
-        checkContractIdPresent(request.getContractId());
+        var contract = contractService.find(contractId(request.getContractId()));
 
-        var contract = contractService.find(request.getContractId());
+        return findResponses.get(contract);
+    }
+
+    public GetContractFinancialsResponse getFinancials(GetContractFinancialsRequest request) {
+        var financials = contractService.financials(contractId(request.getContractId()));
 
-        return FindContractResponse.newBuilder().setContract(Transformer.transform(contract)).build();
+        return GetContractFinancialsResponse.newBuilder()
+                .setStatus(Transformer.transform(financials.getStatus()))
+                .setQuotedPrice(Transformer.transform(financials.getQuotedPrice()))
+                .setTotalCostOfWork(Transformer.transform(financials.getTotalCostOfWork()))
+                .setProfit(Transformer.transform(financials.getProfit()))
+                .build();
     }
 
     public void promoteQuote(PromoteQuoteRequest request) {
-        checkContractIdPresent(request.getContractId());
+        var id = contractId(request.getContractId());
+        checkIdempotencyKey(request.getIdempotencyKey());
 
-        contractService.promoteQuote(request.getContractId());
+        contractService.promoteQuote(id, request.getIdempotencyKey());
+        findResponses.invalidate(id);
     }
 
-    private void checkContractIdPresent(String contractId) {
+    /**
+     * @return the responses, produced one by one while iterating.
+     */
+    public Iterator<ListContractsResponse> listContracts(ListContractsRequest request) {
+        var min = request.hasMinQuotedPrice() ? Transformer.transform(request.getMinQuotedPrice()) : null;
+        var max = request.hasMaxQuotedPrice() ? Transformer.transform(request.getMaxQuotedPrice()) : null;
+        new Violations()
+                .check(min == null || min.isPresent(), "minQuotedPrice", "Input.MinQuotedPrice.invalid")
+                .check(max == null || max.isPresent(), "maxQuotedPrice", "Input.MaxQuotedPrice.invalid")
+                .check(request.getPageSize() >= 0, "pageSize", "Input.PageSize.negative")
+                .throwIfAny();
+        var statuses = request.getStatusList().stream()
+                .map(Transformer::transform)
+                .collect(Collectors.toSet());
+        var query = new ContractQuery(statuses, request.getCustomerNamePrefix(),
+                min == null ? null : min.get(), max == null ? null : max.get());
+        var afterCursor = StringUtils.isEmpty(request.getPageToken()) ? null : request.getPageToken();
+
+        var found = contractService.list(query, afterCursor);
+        if (request.getPageSize() > 0) {
+            found = found.limit(request.getPageSize());
+        }
+        return found.map(s -> ListContractsResponse.newBuilder()
+                        .setContract(Transformer.transform(s.getContract()))
+                        .setNextPageToken(s.getCursor())
+                        .build())
+                .iterator();
+    }
+
+    /**
+     * @return where to read the changes asked for, they still have to be filtered.
+     */
+    public ContractFeed.Cursor watchContracts(WatchContractsRequest request) {
+        new Violations()
+                .check(request.getContractIdList().stream().allMatch(id -> Transformer.contractId(id).isPresent()),
+                        "contractId", "Input.ContractId.invalid")
+                .check(request.getAfterSequence() >= 0, "afterSequence", "Input.AfterSequence.negative")
+                .throwIfAny();
+        return contractService.getFeed().cursor(request.getAfterSequence());
+    }
+
+    /**
+     * @return the totals of the contracts of this node.
+     */
+    public ContractTotals getStatistics(GetContractStatisticsRequest request) {
+        new Violations()
+                .check(request.getTopCustomers() >= 0, "topCustomers", "Input.TopCustomers.negative")
+                .check(request.getTopCustomers() == 0 || !request.getRunningTotals(), "topCustomers",
+                        "Input.TopCustomers.notWithRunningTotals")
+                .throwIfAny();
+        return contractService.statistics(request.getTopCustomers() > 0, request.getRunningTotals());
+    }
+
+    /**
+     * Handle a number of requests as one batch.
+     * @see ContractService#batch(Runnable)
+     */
+    public void batch(Runnable calls) {
+        contractService.batch(calls);
+    }
+
+    private static void checkIdempotencyKey(String idempotencyKey) {
+        if (idempotencyKey.length() > MAX_IDEMPOTENCY_KEY_LENGTH) {
+            throw IDEMPOTENCY_KEY_TOO_LONG;
+        }
+    }
+
+    private static ContractId contractId(String contractId) {
         if (StringUtils.isBlank(contractId)) {
-            throw new PreConditionNotMetException("Input.ContractId.mandatory");
+            throw CONTRACT_ID_MANDATORY;
         }
+        return existingContractId(contractId);
+    }
+
+    // an id that cannot be parsed is no different from one that is not in use
+    private static ContractId existingContractId(String contractId) {
+        return Transformer.contractId(contractId).orElseThrow(() -> NotFoundException.INSTANCE);
     }
 
 }
@@ -0,0 +1,96 @@
+package nl.jdriven.blogs.svc.contract.api;
+
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import nl.jdriven.blogs.svc.contract.model.main.Contract;
+import nl.jdriven.blogs.svc.contract.model.main.ContractId;
+import nl.jdriven.blogs.svc.contract.proto.ChangesMissed;
+import nl.jdriven.blogs.svc.contract.proto.WatchContractsRequest;
+import nl.jdriven.blogs.svc.contract.proto.WatchContractsResponse;
+import nl.jdriven.blogs.svc.contract.service.ContractChange;
+import nl.jdriven.blogs.svc.contract.service.ContractFeed;
+
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * One WatchContracts call: sends the changes of the feed that match the request, only while the client can
+ * take them. A client that reads slower than changes are made stays behind on the feed instead of having its
+ * changes pile up in memory; once it is further behind than the feed keeps, it is told what it missed.
+ */
+class ContractWatch {
+    // most changes looked at in one go, so one busy watch does not keep the others waiting
+    private static final int MAX_CHANGES_PER_SEND = 1024;
+
+    private final ServerCallStreamObserver<WatchContractsResponse> responseObserver;
+    private final ContractFeed.Cursor cursor;
+    private final ContractWatchers watchers;
+    // all when empty
+    private final Set<ContractId> contractIds;
+    private final Set<Contract.Status> statuses;
+    private volatile boolean done;
+
+    /**
+     * Must be created in the service method, before it returns.
+     */
+    ContractWatch(StreamObserver<WatchContractsResponse> responseObserver, WatchContractsRequest request,
+                  ContractFeed.Cursor cursor, ContractWatchers watchers) {
+        this.responseObserver = (ServerCallStreamObserver<WatchContractsResponse>) responseObserver;
+        this.cursor = cursor;
+        this.watchers = watchers;
+        contractIds = request.getContractIdList().stream()
+                .map(ContractId::parse)
+                .collect(Collectors.toSet());
+        statuses = EnumSet.noneOf(Contract.Status.class);
+        request.getStatusList().forEach(status -> statuses.add(Transformer.transform(status)));
+        this.responseObserver.setOnReadyHandler(watchers::wake);
+        this.responseObserver.setOnCancelHandler(() -> done = true);
+    }
+
+    boolean isDone() {
+        return done;
+    }
+
+    /**
+     * Only called by the thread of the watchers.
+     * @return true when it stopped before the end of the feed.
+     */
+    boolean send() {
+        try {
+            for (int i = 0; i < MAX_CHANGES_PER_SEND; i++) {
+                if (done || !responseObserver.isReady()) {
+                    return false;
+                }
+                var change = cursor.next();
+                if (cursor.hasMissed()) {
+                    responseObserver.onNext(WatchContractsResponse.newBuilder()
+                            .setMissed(ChangesMissed.newBuilder()
+                                    .setAfterSequence(cursor.getMissedAfter())
+                                    .setNextSequence(cursor.getMissedNext()))
+                            .build());
+                    cursor.clearMissed();
+                    watchers.missed();
+                }
+                if (change == null) {
+                    return false;
+                }
+                if (matches(change)) {
+                    responseObserver.onNext(WatchContractsResponse.newBuilder()
+                            .setChange(Transformer.transform(change))
+                            .build());
+                }
+            }
+            return true;
+        } catch (RuntimeException e) {
+            // the call ended while sending
+            done = true;
+            return false;
+        }
+    }
+
+    private boolean matches(ContractChange change) {
+        return (contractIds.isEmpty() || contractIds.contains(change.getEvent().getContractId()))
+                && (statuses.isEmpty() || statuses.contains(change.getStatus()));
+    }
+}
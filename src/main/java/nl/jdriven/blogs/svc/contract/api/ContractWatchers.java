@@ -0,0 +1,80 @@
+package nl.jdriven.blogs.svc.contract.api;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sends the changes of the contract feed to all WatchContracts calls from one thread, so a change costs
+ * the service no more than filling a slot of the feed, however many clients watch and however slow they are.
+ * While there are watches the thread looks for new changes every millisecond; it is started with the first watch.
+ */
+public class ContractWatchers {
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final Set<ContractWatch> watches = ConcurrentHashMap.newKeySet();
+    private final LongAdder missed = new LongAdder();
+    // written under the lock, read by the threads that wake it
+    private volatile Thread sender;
+
+    /**
+     * @return the number of calls watching.
+     */
+    public int getActive() {
+        return watches.size();
+    }
+
+    /**
+     * @return how often a watch missed changes because it was behind too far.
+     */
+    public long getMissed() {
+        return missed.sum();
+    }
+
+    synchronized void add(ContractWatch watch) {
+        watches.add(watch);
+        var thread = sender;
+        if (thread == null) {
+            thread = new Thread(this::sendLoop, "contract-watchers");
+            thread.setDaemon(true);
+            thread.start();
+            sender = thread;
+        }
+        LockSupport.unpark(thread);
+    }
+
+    /**
+     * A watch can send again.
+     */
+    void wake() {
+        var thread = sender;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    void missed() {
+        missed.increment();
+    }
+
+    private void sendLoop() {
+        while (true) {
+            if (watches.isEmpty()) {
+                LockSupport.park(this);
+                continue;
+            }
+            boolean more = false;
+            for (var watch : watches) {
+                more |= watch.send();
+                if (watch.isDone()) {
+                    watches.remove(watch);
+                }
+            }
+            if (!more) {
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            }
+        }
+    }
+}
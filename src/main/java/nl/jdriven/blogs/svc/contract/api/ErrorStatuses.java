@@ -0,0 +1,145 @@
+package nl.jdriven.blogs.svc.contract.api;
+
+import com.google.protobuf.Any;
+import com.google.rpc.BadRequest;
+import com.google.rpc.PreconditionFailure;
+import io.grpc.Metadata;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.protobuf.ProtoUtils;
+import io.grpc.protobuf.StatusProto;
+import nl.jdriven.blogs.svc.contract.model.exception.NotFoundException;
+import nl.jdriven.blogs.svc.contract.model.exception.PreConditionNotMetException;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Turns exceptions of the service into gRPC errors. The status code and description stay what clients know
+ * (FAILED_PRECONDITION with the failures joined by ';', NOT_FOUND); the failures are also sent as
+ * google.rpc.Status details: BadRequest field violations for invalid input, PreconditionFailure violations
+ * for a contract in the wrong state.
+ * Failures come from a fixed set of conditions, so their statuses are built once and cached.
+ */
+final class ErrorStatuses {
+    // the trailer io.grpc.protobuf.StatusProto reads the details from
+    private static final Metadata.Key<com.google.rpc.Status> DETAILS_KEY = Metadata.Key.of("grpc-status-details-bin",
+            ProtoUtils.metadataMarshaller(com.google.rpc.Status.getDefaultInstance()));
+    // combinations of conditions are few, this only guards against unexpected variety
+    private static final int MAX_CACHED = 1024;
+
+    private static final class Cached {
+        final Status status;
+        final com.google.rpc.Status details;
+
+        Cached(Status status, com.google.rpc.Status details) {
+            this.status = status;
+            this.details = details;
+        }
+    }
+
+    private static final Cached NOT_FOUND = new Cached(Status.NOT_FOUND,
+            com.google.rpc.Status.newBuilder().setCode(Status.Code.NOT_FOUND.value()).build());
+    private static final ConcurrentHashMap<String, Cached> preConditions = new ConcurrentHashMap<>();
+
+    /**
+     * gRPC's own exception fills in a stack trace, which nobody reads for an expected error.
+     */
+    private static final class StacklessStatusException extends StatusRuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        StacklessStatusException(Status status, Metadata trailers) {
+            super(status, trailers);
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+
+    private ErrorStatuses() {
+    }
+
+    /**
+     * @return the exception to pass to onError.
+     */
+    static StatusRuntimeException toStatusException(Throwable exc) {
+        if (exc instanceof StatusRuntimeException) {
+            // from another node, with its details
+            return (StatusRuntimeException) exc;
+        }
+        var cached = cached(exc);
+        if (cached == null) {
+            return Status.fromThrowable(exc).asRuntimeException();
+        }
+        // trailers are written to the wire per call, so they cannot be shared
+        var trailers = new Metadata();
+        trailers.put(DETAILS_KEY, cached.details);
+        return new StacklessStatusException(cached.status, trailers);
+    }
+
+    /**
+     * @return the error of a single item of a bulk call, the same as it would be for a single call.
+     */
+    static com.google.rpc.Status toRpcStatus(Throwable exc) {
+        var cached = cached(exc);
+        if (cached != null) {
+            return cached.details;
+        }
+        var details = StatusProto.fromThrowable(exc);
+        if (details != null) {
+            return details;
+        }
+        var status = Status.fromThrowable(exc);
+        var rpcStatus = com.google.rpc.Status.newBuilder().setCode(status.getCode().value());
+        if (status.getDescription() != null) {
+            rpcStatus.setMessage(status.getDescription());
+        }
+        return rpcStatus.build();
+    }
+
+    private static Cached cached(Throwable exc) {
+        if (exc instanceof NotFoundException) {
+            return NOT_FOUND;
+        }
+        if (exc instanceof PreConditionNotMetException) {
+            var e = (PreConditionNotMetException) exc;
+            var cached = preConditions.get(e.getConditionFailuresAsString());
+            if (cached == null) {
+                cached = build(e);
+                if (preConditions.size() < MAX_CACHED) {
+                    preConditions.putIfAbsent(e.getConditionFailuresAsString(), cached);
+                }
+            }
+            return cached;
+        }
+        return null;
+    }
+
+    private static Cached build(PreConditionNotMetException e) {
+        var status = Status.FAILED_PRECONDITION.withDescription(e.getConditionFailuresAsString());
+        var badRequest = BadRequest.newBuilder();
+        var preconditionFailure = PreconditionFailure.newBuilder();
+        for (int i = 0; i < e.getConditionFailureCount(); i++) {
+            if (e.getField(i) != null) {
+                badRequest.addFieldViolationsBuilder()
+                        .setField(e.getField(i))
+                        .setDescription(e.getConditionFailure(i));
+            } else {
+                preconditionFailure.addViolationsBuilder()
+                        .setType(e.getConditionFailure(i))
+                        .setDescription(e.getConditionFailure(i));
+            }
+        }
+        var details = com.google.rpc.Status.newBuilder()
+                .setCode(Status.Code.FAILED_PRECONDITION.value())
+                .setMessage(e.getConditionFailuresAsString());
+        if (badRequest.getFieldViolationsCount() > 0) {
+            details.addDetails(Any.pack(badRequest.build()));
+        }
+        if (preconditionFailure.getViolationsCount() > 0) {
+            details.addDetails(Any.pack(preconditionFailure.build()));
+        }
+        return new Cached(status, details.build());
+    }
+}
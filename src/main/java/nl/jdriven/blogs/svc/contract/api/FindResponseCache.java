@@ -0,0 +1,98 @@
+package nl.jdriven.blogs.svc.contract.api;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import nl.jdriven.blogs.svc.contract.model.main.Contract;
+import nl.jdriven.blogs.svc.contract.model.main.ContractId;
+import nl.jdriven.blogs.svc.contract.proto.FindContractResponse;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps the built findContract response of frequently read contracts, so polling an unchanged
+ * contract does not transform it again. Every response is stamped with the version of the contract
+ * it was built from and only served while the contract still has that version, so a response is
+ * never stale even when an invalidation is missed; invalidating on changes just frees the space early.
+ * The number of responses is bounded, the least valuable are evicted by frequency and recency (W-TinyLFU).
+ */
+public class FindResponseCache implements FindResponseCacheMXBean {
+    public static final long DEFAULT_MAXIMUM_SIZE = 10_000;
+
+    private static class Stamped {
+        final long version;
+        final FindContractResponse response;
+
+        Stamped(long version, FindContractResponse response) {
+            this.version = version;
+            this.response = response;
+        }
+    }
+
+    private final Cache<ContractId, Stamped> responses;
+    // found in the cache, but built from an older version of the contract
+    private final LongAdder stale = new LongAdder();
+
+    public FindResponseCache() {
+        this(DEFAULT_MAXIMUM_SIZE);
+    }
+
+    /**
+     * @param maximumSize number of contracts to keep the response of, 0 to cache nothing.
+     */
+    public FindResponseCache(long maximumSize) {
+        responses = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * @return the cached response for the contract as it is now, or one that is built and cached.
+     */
+    FindContractResponse get(Contract contract) {
+        // read the version before building: the response holds at least this version, so it is not served after a change
+        long version = contract.getVersion();
+        var cached = responses.getIfPresent(contract.getId());
+        if (cached != null) {
+            if (cached.version == version) {
+                return cached.response;
+            }
+            stale.increment();
+        }
+        var response = FindContractResponse.newBuilder().setContract(Transformer.transform(contract)).build();
+        responses.put(contract.getId(), new Stamped(version, response));
+        return response;
+    }
+
+    void invalidate(ContractId contractId) {
+        responses.invalidate(contractId);
+    }
+
+    @Override
+    public long getSize() {
+        return responses.estimatedSize();
+    }
+
+    @Override
+    public long getHitCount() {
+        // Caffeine counts a stale response as a hit
+        return responses.stats().hitCount() - stale.sum();
+    }
+
+    @Override
+    public long getMissCount() {
+        return responses.stats().missCount() + stale.sum();
+    }
+
+    @Override
+    public double getHitRatio() {
+        long hits = getHitCount();
+        long lookups = hits + getMissCount();
+        return lookups == 0 ? 1.0 : (double) hits / lookups;
+    }
+
+    @Override
+    public long getEvictionCount() {
+        return responses.stats().evictionCount();
+    }
+}
@@ -0,0 +1,22 @@
+package nl.jdriven.blogs.svc.contract.api;
+
+/**
+ * JMX view of the findContract response cache.
+ */
+public interface FindResponseCacheMXBean {
+    long getSize();
+
+    long getHitCount();
+
+    /**
+     * @return lookups that had to build the response: not cached, evicted or changed since.
+     */
+    long getMissCount();
+
+    /**
+     * @return hits as a fraction of all lookups, 1.0 when there were none.
+     */
+    double getHitRatio();
+
+    long getEvictionCount();
+}
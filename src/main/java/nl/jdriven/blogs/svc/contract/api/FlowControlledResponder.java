@@ -0,0 +1,52 @@
+package nl.jdriven.blogs.svc.contract.api;
+
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+
+import java.util.Iterator;
+import java.util.function.Consumer;
+
+/**
+ * Sends the responses of a server-streaming call only while the client can take them:
+ * when gRPC reports the call is not ready, sending stops until the on-ready callback.
+ * Responses are pulled from the iterator one at a time, so a slow client never causes
+ * responses to pile up in memory.
+ */
+class FlowControlledResponder<T> {
+    private final ServerCallStreamObserver<T> responseObserver;
+    private final Iterator<T> responses;
+    private final Consumer<Exception> onFailure;
+    private boolean done;
+
+    /**
+     * Must be created in the service method, before it returns.
+     * @param onFailure called when producing a response fails, must end the call
+     */
+    FlowControlledResponder(StreamObserver<T> responseObserver, Iterator<T> responses, Consumer<Exception> onFailure) {
+        this.responseObserver = (ServerCallStreamObserver<T>) responseObserver;
+        this.responses = responses;
+        this.onFailure = onFailure;
+        this.responseObserver.setOnReadyHandler(this::send);
+        this.responseObserver.setOnCancelHandler(this::cancel);
+    }
+
+    synchronized void send() {
+        try {
+            while (!done && responseObserver.isReady()) {
+                if (!responses.hasNext()) {
+                    done = true;
+                    responseObserver.onCompleted();
+                    return;
+                }
+                responseObserver.onNext(responses.next());
+            }
+        } catch (Exception e) {
+            done = true;
+            onFailure.accept(e);
+        }
+    }
+
+    private synchronized void cancel() {
+        done = true;
+    }
+}
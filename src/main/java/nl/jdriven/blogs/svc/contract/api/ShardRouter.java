@@ -0,0 +1,369 @@
+package nl.jdriven.blogs.svc.contract.api;
+
+import com.google.common.collect.Iterators;
+import io.grpc.Context;
+import io.grpc.Contexts;
+import io.grpc.ManagedChannel;
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.netty.shaded.io.grpc.netty.NettyChannelBuilder;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
+import io.grpc.stub.MetadataUtils;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import nl.jdriven.blogs.svc.contract.cluster.ShardMap;
+import nl.jdriven.blogs.svc.contract.model.main.ContractId;
+import nl.jdriven.blogs.svc.contract.proto.AddWorkDoneRequest;
+import nl.jdriven.blogs.svc.contract.proto.BulkAddWorkDoneResponse;
+import nl.jdriven.blogs.svc.contract.proto.ContractServiceGrpc;
+import nl.jdriven.blogs.svc.contract.proto.GetContractStatisticsRequest;
+import nl.jdriven.blogs.svc.contract.proto.GetContractStatisticsResponse;
+import nl.jdriven.blogs.svc.contract.proto.ListContractsRequest;
+import nl.jdriven.blogs.svc.contract.proto.ListContractsResponse;
+import nl.jdriven.blogs.svc.contract.proto.WatchContractsRequest;
+import nl.jdriven.blogs.svc.contract.proto.WatchContractsResponse;
+import nl.jdriven.blogs.svc.contract.repository.ContractTotals;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Sends the calls for contracts of another node to that node, as set in the {@link ShardMap}, and passes its
+ * answer back as it is. The call to the other node has the deadline of the original call and is cancelled with it.
+ * A forwarded call is marked, and is never forwarded again: when the maps of the nodes disagree, for instance
+ * while shards are moved, the call fails with UNAVAILABLE so the client tries again later.
+ * <p>
+ * ListContracts is sent to every node and the answers are merged: all nodes list in the same order,
+ * and the page token of a contract is its position in that order, so it can be given to every node.
+ * GetContractStatistics is sent to every node at once, and the totals are added up. The items of a BulkAddWorkDone
+ * batch are grouped by node, and each group is sent to its node in one stream.
+ * WatchContracts is sent to the node of the contracts watched; the sequences of changes are those of the feed
+ * of one node, so a watch on contracts of several nodes, or on all contracts, is refused. The changes are passed on
+ * only as fast as the caller reads them, so a slow watcher makes the other node wait instead of this one buffering.
+ * Waiting for the other nodes blocks the thread, so a sharded server cannot run calls on the event loop.
+ */
+public class ShardRouter implements Closeable {
+    /** Every contract is on this node. */
+    public static final ShardRouter LOCAL = new ShardRouter(ShardMap.SINGLE);
+
+    private static final Metadata.Key<String> FORWARDED_BY_HEADER = Metadata.Key.of("contract-forwarded-by", Metadata.ASCII_STRING_MARSHALLER);
+    private static final Context.Key<String> FORWARDED_BY = Context.key("contract-forwarded-by");
+
+    interface Call<ReqT, RespT> {
+        void start(ContractServiceGrpc.ContractServiceStub stub, ReqT request, StreamObserver<RespT> responses);
+    }
+
+    /**
+     * Asks the other node for one response at a time, when the caller can take it.
+     */
+    private static final class FlowControlledRelay<ReqT, RespT> implements ClientResponseObserver<ReqT, RespT> {
+        private final ServerCallStreamObserver<RespT> responses;
+        // a response can be asked for
+        private final AtomicBoolean wanted = new AtomicBoolean(true);
+        private volatile ClientCallStreamObserver<ReqT> call;
+        private volatile boolean started;
+
+        /**
+         * Must be created in the service method, before it returns.
+         */
+        FlowControlledRelay(StreamObserver<RespT> responses) {
+            this.responses = (ServerCallStreamObserver<RespT>) responses;
+            this.responses.setOnReadyHandler(this::requestWhenReady);
+        }
+
+        @Override
+        public void beforeStart(ClientCallStreamObserver<ReqT> requestStream) {
+            requestStream.disableAutoInboundFlowControl();
+            call = requestStream;
+        }
+
+        /**
+         * The call to the other node was started, responses can be asked for from now on.
+         */
+        void started() {
+            started = true;
+            requestWhenReady();
+        }
+
+        @Override
+        public void onNext(RespT response) {
+            responses.onNext(response);
+            wanted.set(true);
+            requestWhenReady();
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            responses.onError(t);
+        }
+
+        @Override
+        public void onCompleted() {
+            responses.onCompleted();
+        }
+
+        // when it becomes ready after the check, the handler runs again
+        private void requestWhenReady() {
+            if (started && responses.isReady() && wanted.compareAndSet(true, false)) {
+                call.request(1);
+            }
+        }
+    }
+
+    private final ShardMap shards;
+    private final Map<String, ManagedChannel> channels = new HashMap<>();
+    private final Map<String, ContractServiceGrpc.ContractServiceStub> stubs = new HashMap<>();
+    private final Map<String, ContractServiceGrpc.ContractServiceBlockingStub> blockingStubs = new HashMap<>();
+    private final LongAdder forwarded = new LongAdder();
+
+    public ShardRouter(ShardMap shards) {
+        this.shards = shards;
+        if (!shards.isSharded()) {
+            return;
+        }
+        var header = new Metadata();
+        header.put(FORWARDED_BY_HEADER, shards.getSelf());
+        for (var node : shards.getNodes()) {
+            if (node.equals(shards.getSelf())) {
+                continue;
+            }
+            var channel = NettyChannelBuilder.forTarget(node)
+                    .usePlaintext() // disable TLS which is enabled by default and requires certificates
+                    .build();
+            channels.put(node, channel);
+            stubs.put(node, MetadataUtils.attachHeaders(ContractServiceGrpc.newStub(channel), header));
+            blockingStubs.put(node, MetadataUtils.attachHeaders(ContractServiceGrpc.newBlockingStub(channel), header));
+        }
+    }
+
+    public ShardMap getShards() {
+        return shards;
+    }
+
+    /**
+     * @return number of calls sent to another node.
+     */
+    public long getForwarded() {
+        return forwarded.sum();
+    }
+
+    /**
+     * Puts the mark of a forwarded call in its context; the service that uses this router must be intercepted by it.
+     */
+    public ServerInterceptor interceptor() {
+        return new ServerInterceptor() {
+            @Override
+            public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers,
+                                                                         ServerCallHandler<ReqT, RespT> next) {
+                var forwardedBy = headers.get(FORWARDED_BY_HEADER);
+                if (forwardedBy == null) {
+                    return next.startCall(call, headers);
+                }
+                return Contexts.interceptCall(Context.current().withValue(FORWARDED_BY, forwardedBy), call, headers, next);
+            }
+        };
+    }
+
+    /**
+     * @return true when the call was sent to the node of the contract and it will answer,
+     * false when the contract is on this node, or the id is invalid, and the call is handled here.
+     */
+    <ReqT, RespT> boolean forward(String contractId, ReqT request, StreamObserver<RespT> responses, Call<ReqT, RespT> call) {
+        String owner;
+        try {
+            owner = remoteOwner(contractId);
+        } catch (StatusRuntimeException e) {
+            responses.onError(e);
+            return true;
+        }
+        if (owner == null) {
+            return false;
+        }
+        forwarded.increment();
+        call.start(stubs.get(owner), request, responses);
+        return true;
+    }
+
+    /**
+     * @return true when the watch was sent to the node of its contracts and it will answer, or it was refused;
+     * false when the contracts are on this node, or an id is invalid, and the watch is handled here.
+     */
+    boolean forwardWatch(WatchContractsRequest request, StreamObserver<WatchContractsResponse> responses) {
+        if (channels.isEmpty()) {
+            return false;
+        }
+        if (request.getContractIdCount() == 0) {
+            responses.onError(Status.FAILED_PRECONDITION
+                    .withDescription("Contracts are divided over " + shards.getNodes().size()
+                            + " nodes, a watch must name the contracts it is for")
+                    .asRuntimeException());
+            return true;
+        }
+        String node = null;
+        for (var contractId : request.getContractIdList()) {
+            var id = ContractId.parse(contractId);
+            if (id == null) {
+                return false;
+            }
+            var owner = shards.isLocal(id) ? shards.getSelf() : shards.ownerOf(id);
+            if (node != null && !node.equals(owner)) {
+                responses.onError(Status.FAILED_PRECONDITION
+                        .withDescription("Contracts " + request.getContractId(0) + " and " + contractId
+                                + " are on different nodes, a watch can only be for contracts of one node")
+                        .asRuntimeException());
+                return true;
+            }
+            node = owner;
+        }
+        return forward(request.getContractId(0), request, responses, ShardRouter::watchFlowControlled);
+    }
+
+    private static void watchFlowControlled(ContractServiceGrpc.ContractServiceStub stub, WatchContractsRequest request,
+                                            StreamObserver<WatchContractsResponse> responses) {
+        var relay = new FlowControlledRelay<WatchContractsRequest, WatchContractsResponse>(responses);
+        stub.watchContracts(request, relay);
+        relay.started();
+    }
+
+    /**
+     * @return the node of the contract, null when the contract is on this node, or the id is invalid,
+     * and the call is handled here.
+     * @throws StatusRuntimeException when the contract is not on this node, and the call was forwarded already
+     */
+    String nodeOf(String contractId) {
+        return remoteOwner(contractId);
+    }
+
+    /**
+     * Sends the work for contracts of the node in one BulkAddWorkDone stream, without waiting for the answer.
+     * @return the answer of the node, where the index of an error is the position in the requests.
+     */
+    CompletableFuture<BulkAddWorkDoneResponse> bulkAddWorkDone(String node, List<AddWorkDoneRequest> requests) {
+        forwarded.increment();
+        var answer = new CompletableFuture<BulkAddWorkDoneResponse>();
+        var items = stubs.get(node).bulkAddWorkDone(new StreamObserver<>() {
+            @Override
+            public void onNext(BulkAddWorkDoneResponse response) {
+                answer.complete(response);
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                answer.completeExceptionally(t);
+            }
+
+            @Override
+            public void onCompleted() {
+            }
+        });
+        requests.forEach(items::onNext);
+        items.onCompleted();
+        return answer;
+    }
+
+    /**
+     * @param local the contracts of this node that match the request
+     * @return the contracts of all nodes that match the request, in order, at most a page.
+     */
+    Iterator<ListContractsResponse> listEverywhere(ListContractsRequest request, Iterator<ListContractsResponse> local) {
+        if (blockingStubs.isEmpty() || FORWARDED_BY.get() != null) {
+            return local;
+        }
+        var all = new ArrayList<Iterator<ListContractsResponse>>();
+        all.add(local);
+        for (var stub : blockingStubs.values()) {
+            forwarded.increment();
+            all.add(stub.listContracts(request));
+        }
+        var merged = Iterators.mergeSorted(all, Comparator.comparing(ListContractsResponse::getNextPageToken));
+        return request.getPageSize() > 0 ? Iterators.limit(merged, request.getPageSize()) : merged;
+    }
+
+    /**
+     * The top customers of every node are added up, so the profit of a customer at a node where it is not
+     * in the top is missing; all other totals are exact.
+     * @param local the totals of this node
+     * @return the totals of all nodes.
+     */
+    ContractTotals totalsEverywhere(GetContractStatisticsRequest request, ContractTotals local) {
+        if (stubs.isEmpty() || FORWARDED_BY.get() != null) {
+            return local;
+        }
+        var answers = new ArrayList<CompletableFuture<GetContractStatisticsResponse>>();
+        for (var stub : stubs.values()) {
+            forwarded.increment();
+            var answer = new CompletableFuture<GetContractStatisticsResponse>();
+            stub.getContractStatistics(request, new StreamObserver<>() {
+                @Override
+                public void onNext(GetContractStatisticsResponse response) {
+                    answer.complete(response);
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                    answer.completeExceptionally(t);
+                }
+
+                @Override
+                public void onCompleted() {
+                }
+            });
+            answers.add(answer);
+        }
+        for (var answer : answers) {
+            try {
+                Transformer.addTo(local, answer.join());
+            } catch (CompletionException e) {
+                throw Status.fromThrowable(e.getCause()).asRuntimeException();
+            }
+        }
+        return local;
+    }
+
+    @Override
+    public void close() {
+        for (var channel : channels.values()) {
+            channel.shutdown();
+        }
+        try {
+            for (var channel : channels.values()) {
+                channel.awaitTermination(5, TimeUnit.SECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private String remoteOwner(String contractId) {
+        if (channels.isEmpty()) {
+            return null;
+        }
+        var id = ContractId.parse(contractId);
+        if (id == null || shards.isLocal(id)) {
+            return null;
+        }
+        var forwardedBy = FORWARDED_BY.get();
+        if (forwardedBy != null) {
+            throw Status.UNAVAILABLE
+                    .withDescription("Shard " + shards.shardOf(id) + " is not on " + shards.getSelf() + " but on "
+                            + shards.ownerOf(id) + ", forwarded by " + forwardedBy)
+                    .asRuntimeException();
+        }
+        return shards.ownerOf(id);
+    }
+}
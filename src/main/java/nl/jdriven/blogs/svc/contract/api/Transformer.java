@@ -1,12 +1,20 @@
 package nl.jdriven.blogs.svc.contract.api;
 
 import com.google.type.Money;
+import nl.jdriven.blogs.svc.contract.model.main.Amount;
 import nl.jdriven.blogs.svc.contract.model.main.Contract;
+import nl.jdriven.blogs.svc.contract.model.main.ContractId;
 import nl.jdriven.blogs.svc.contract.model.main.WorkDone;
+import nl.jdriven.blogs.svc.contract.proto.ContractStatus;
+import nl.jdriven.blogs.svc.contract.proto.CurrencyStatistics;
+import nl.jdriven.blogs.svc.contract.proto.CustomerProfit;
+import nl.jdriven.blogs.svc.contract.proto.GetContractStatisticsResponse;
 import nl.jdriven.blogs.svc.contract.proto.Quote;
+import nl.jdriven.blogs.svc.contract.proto.StatusCount;
+import nl.jdriven.blogs.svc.contract.repository.ContractTotals;
+import nl.jdriven.blogs.svc.contract.service.ContractChange;
 
-import java.math.BigDecimal;
-import java.math.MathContext;
+import java.util.Currency;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
@@ -17,24 +25,34 @@ public class Transformer {
     private Transformer() {
     }
 
-    // unverified cut-and-grab job, might work but who knows.
-    public static Optional<BigDecimal> transform(final Money amount) {
-        // only accept EUR or no code (default is EUR)
+    /**
+     * Only EUR is accepted, no currency code means EUR. An amount with a fraction of a cent
+     * (or nanos that do not match the sign of the units) is not accepted rather than rounded.
+     */
+    public static Optional<Amount> transform(final Money amount) {
         var  currencyCode = amount.getCurrencyCode();
-        if (currencyCode != null && currencyCode.length() > 0 && !"EUR".equalsIgnoreCase(currencyCode)) {
+        if (currencyCode.length() > 0 && !"EUR".equalsIgnoreCase(currencyCode)) {
             return Optional.empty();
         }
-        var  bd = new BigDecimal(amount.getUnits()).add(new BigDecimal(amount.getNanos(), new MathContext(9)));
-        return Optional.of(bd);
+        if (!Amount.isRepresentable(amount.getUnits(), amount.getNanos(), Amount.EUR)) {
+            return Optional.empty();
+        }
+        return Optional.of(Amount.ofUnitsAndNanos(amount.getUnits(), amount.getNanos(), Amount.EUR));
     }
 
-    // quick hack, does not support cents (why will the Internet not help me?)
-    public static Money transform(BigDecimal amount) {
+    public static Money transform(Amount amount) {
         return Money.newBuilder()
-                .setCurrencyCode("EUR")
-                .setUnits(amount.longValue())
+                .setCurrencyCode(amount.getCurrency().getCurrencyCode())
+                .setUnits(amount.getUnits())
+                .setNanos(amount.getNanos())
                 .build();
+    }
 
+    /**
+     * Ids are strings in the api and only there; anything that is not a UUID cannot be the id of a contract.
+     */
+    public static Optional<ContractId> contractId(String contractId) {
+        return Optional.ofNullable(ContractId.parse(contractId));
     }
 
     public static WorkDone transform(nl.jdriven.blogs.svc.contract.proto.WorkDone work) {
@@ -62,9 +80,103 @@ public class Transformer {
                 .collect(Collectors.toUnmodifiableList());
 
         return nl.jdriven.blogs.svc.contract.proto.Contract.newBuilder()
-                .setContractId(c.getId())
+                .setContractId(c.getId().toString())
                 .setQuote(quote)
                 .addAllWork(allWork)
+                .setStatus(transform(c.getStatus()))
                 .build();
     }
+
+    public static nl.jdriven.blogs.svc.contract.proto.ContractChange transform(ContractChange change) {
+        var event = change.getEvent();
+        var builder = nl.jdriven.blogs.svc.contract.proto.ContractChange.newBuilder()
+                .setSequence(change.getSequence())
+                .setType(nl.jdriven.blogs.svc.contract.proto.ContractChange.Type.valueOf(event.getType().name()))
+                .setContractId(event.getContractId().toString())
+                .setStatus(transform(change.getStatus()))
+                .setTimestampMillis(change.getTimestampMillis());
+        switch (event.getType()) {
+            case QUOTE_CREATED:
+                builder.setQuote(Quote.newBuilder()
+                        .setDescriptionOfWorkRequested(event.getDescriptionOfWorkRequested())
+                        .setFullNameOfCustomer(event.getFullNameOfCustomer())
+                        .setQuotedPrice(transform(event.getQuotedPrice())));
+                break;
+            case WORK_ADDED:
+                builder.setWork(transform(event.getWorkDone()));
+                break;
+            case FINALIZED:
+                builder.setProfitMade(transform(change.getProfit()));
+                break;
+            default:
+                break;
+        }
+        return builder.build();
+    }
+
+    public static GetContractStatisticsResponse transform(ContractTotals totals, int topCustomers) {
+        var response = GetContractStatisticsResponse.newBuilder()
+                .setWorkItemCount(totals.getWorkItems());
+        for (var status : Contract.Status.values()) {
+            response.addCountByStatus(StatusCount.newBuilder().setStatus(transform(status)).setCount(totals.getCount(status)));
+        }
+        for (var currency : totals.getCurrencies()) {
+            var statistics = CurrencyStatistics.newBuilder()
+                    .setCurrencyCode(currency.getCurrency().getCurrencyCode())
+                    .setPromotedCount(currency.getPromotedCount())
+                    .setOverflowed(currency.isOverflowed());
+            currency.getQuotedRevenue().ifPresent(a -> statistics.setQuotedRevenue(transform(a)));
+            currency.getTotalCostOfWork().ifPresent(a -> statistics.setTotalCostOfWork(transform(a)));
+            currency.getAverageCostOfWork().ifPresent(a -> statistics.setAverageCostOfWork(transform(a)));
+            currency.getRealizedProfit().ifPresent(a -> statistics.setRealizedProfit(transform(a)));
+            response.addCurrencies(statistics);
+        }
+        for (var customer : totals.getTopCustomers(topCustomers)) {
+            var profit = CustomerProfit.newBuilder()
+                    .setFullNameOfCustomer(customer.getFullNameOfCustomer())
+                    .setCurrencyCode(customer.getCurrency().getCurrencyCode())
+                    .setOverflowed(customer.getRealizedProfit().isEmpty());
+            customer.getRealizedProfit().ifPresent(a -> profit.setRealizedProfit(transform(a)));
+            response.addTopCustomers(profit);
+        }
+        return response.build();
+    }
+
+    /**
+     * Add the statistics of another node to the totals.
+     */
+    public static void addTo(ContractTotals totals, GetContractStatisticsResponse statistics) {
+        for (var count : statistics.getCountByStatusList()) {
+            totals.addCount(transform(count.getStatus()), count.getCount());
+        }
+        totals.addWorkItems(statistics.getWorkItemCount());
+        for (var currency : statistics.getCurrenciesList()) {
+            var code = Currency.getInstance(currency.getCurrencyCode());
+            totals.addCurrency(code, currency.getPromotedCount(),
+                    currency.hasQuotedRevenue() ? anyAmount(currency.getQuotedRevenue(), code) : null,
+                    currency.hasTotalCostOfWork() ? anyAmount(currency.getTotalCostOfWork(), code) : null,
+                    currency.hasRealizedProfit() ? anyAmount(currency.getRealizedProfit(), code) : null);
+        }
+        for (var customer : statistics.getTopCustomersList()) {
+            var code = Currency.getInstance(customer.getCurrencyCode());
+            totals.addCustomerProfit(customer.getFullNameOfCustomer(), code,
+                    customer.hasRealizedProfit() ? anyAmount(customer.getRealizedProfit(), code) : null);
+        }
+    }
+
+    // from another node, so in a currency this node knows as well; null when it is too large for this node as well
+    private static Amount anyAmount(Money amount, Currency currency) {
+        if (!Amount.isRepresentable(amount.getUnits(), amount.getNanos(), currency)) {
+            return null;
+        }
+        return Amount.ofUnitsAndNanos(amount.getUnits(), amount.getNanos(), currency);
+    }
+
+    public static ContractStatus transform(Contract.Status status) {
+        return ContractStatus.valueOf(status.name());
+    }
+
+    public static Contract.Status transform(ContractStatus status) {
+        return Contract.Status.valueOf(status.name());
+    }
 }
@@ -0,0 +1,42 @@
+package nl.jdriven.blogs.svc.contract.api;
+
+import nl.jdriven.blogs.svc.contract.model.exception.PreConditionNotMetException;
+
+import java.util.Arrays;
+
+/**
+ * Collects the validation failures of a request, so all of them are reported at once.
+ */
+final class Violations {
+    private String[] fields;
+    private String[] reasons;
+    private int count;
+
+    /**
+     * @param valid when false the failure is added
+     */
+    Violations check(boolean valid, String field, String reason) {
+        if (!valid) {
+            if (fields == null) {
+                fields = new String[4];
+                reasons = new String[4];
+            } else if (count == fields.length) {
+                fields = Arrays.copyOf(fields, count * 2);
+                reasons = Arrays.copyOf(reasons, count * 2);
+            }
+            fields[count] = field;
+            reasons[count] = reason;
+            count++;
+        }
+        return this;
+    }
+
+    /**
+     * @throws PreConditionNotMetException with every failure that was found
+     */
+    void throwIfAny() {
+        if (count > 0) {
+            throw new PreConditionNotMetException(Arrays.copyOf(fields, count), Arrays.copyOf(reasons, count));
+        }
+    }
+}
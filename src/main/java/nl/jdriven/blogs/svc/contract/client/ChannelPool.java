@@ -0,0 +1,127 @@
+package nl.jdriven.blogs.svc.contract.client;
+
+import io.grpc.ManagedChannel;
+import io.grpc.MethodDescriptor;
+import io.grpc.netty.shaded.io.grpc.netty.NettyChannelBuilder;
+import nl.jdriven.blogs.svc.contract.proto.ContractServiceGrpc;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A fixed number of channels to the same server, each with its own connection, handed out round-robin.
+ * One HTTP/2 connection is served by one event loop thread on either side and its streams share one flow
+ * control window, so a single channel limits the throughput of a busy client long before the server does.
+ * <p>
+ * Every channel has a service config that hedges the reads (findContract, GetContractFinancials): when the
+ * answer takes longer than the hedge delay the call is sent again, and the first answer wins. The changes are
+ * retried when the server was unavailable; the client gives them an idempotency key, so that is safe.
+ * A hedge is extra load, so the hedge delay should be above the usual latency of the server, around its 95th
+ * percentile: then only the slowest calls are hedged.
+ */
+final class ChannelPool implements Closeable {
+    private static final long TERMINATION_SECONDS = 5;
+
+    private final ManagedChannel[] channels;
+    private final AtomicInteger next = new AtomicInteger();
+
+    ChannelPool(ClientConfig config) {
+        channels = new ManagedChannel[Math.max(1, config.getChannels())];
+        for (int i = 0; i < channels.length; i++) {
+            channels[i] = NettyChannelBuilder.forTarget(config.getTarget())
+                    .usePlaintext() // disable TLS which is enabled by default and requires certificates
+                    .flowControlWindow(config.getFlowControlWindow())
+                    .defaultServiceConfig(serviceConfig(config))
+                    .enableRetry()
+                    .maxRetryAttempts(config.getMaxAttempts())
+                    .maxHedgedAttempts(config.getMaxAttempts())
+                    .build();
+        }
+    }
+
+    int size() {
+        return channels.length;
+    }
+
+    ManagedChannel get(int index) {
+        return channels[index];
+    }
+
+    /**
+     * @return the index of the channel for the next call.
+     */
+    int nextIndex() {
+        return Math.floorMod(next.getAndIncrement(), channels.length);
+    }
+
+    /**
+     * Waits a while for the calls that are still running to complete.
+     */
+    @Override
+    public void close() {
+        for (var channel : channels) {
+            channel.shutdown();
+        }
+        try {
+            for (var channel : channels) {
+                if (!channel.awaitTermination(TERMINATION_SECONDS, TimeUnit.SECONDS)) {
+                    channel.shutdownNow();
+                }
+            }
+        } catch (InterruptedException e) {
+            for (var channel : channels) {
+                channel.shutdownNow();
+            }
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // the service config is parsed from JSON, so numbers are doubles and durations strings
+    static Map<String, ?> serviceConfig(ClientConfig config) {
+        var methodConfig = new ArrayList<Map<String, ?>>();
+        double attempts = config.getMaxAttempts();
+        if (attempts > 1 && config.getHedgeDelayMillis() > 0) {
+            methodConfig.add(Map.of(
+                    "name", List.of(
+                            name(ContractServiceGrpc.getFindContractMethod()),
+                            name(ContractServiceGrpc.getGetContractFinancialsMethod())),
+                    "hedgingPolicy", Map.of(
+                            "maxAttempts", attempts,
+                            "hedgingDelay", seconds(config.getHedgeDelayMillis()),
+                            "nonFatalStatusCodes", List.of("UNAVAILABLE"))));
+        }
+        if (attempts > 1) {
+            methodConfig.add(Map.of(
+                    "name", List.of(
+                            name(ContractServiceGrpc.getNewQuoteMethod()),
+                            name(ContractServiceGrpc.getPromoteQuoteMethod()),
+                            name(ContractServiceGrpc.getAddWorkDoneMethod()),
+                            name(ContractServiceGrpc.getFinalizeContractMethod())),
+                    "retryPolicy", Map.of(
+                            "maxAttempts", attempts,
+                            "initialBackoff", "0.05s",
+                            "maxBackoff", "1s",
+                            "backoffMultiplier", 2.0,
+                            "retryableStatusCodes", List.of("UNAVAILABLE"))));
+            // stops hedging and retrying while most attempts fail, so an overloaded server does not get even more
+            return Map.of("methodConfig", methodConfig,
+                    "retryThrottling", Map.of("maxTokens", 10.0, "tokenRatio", 0.1));
+        }
+        return Map.of("methodConfig", methodConfig);
+    }
+
+    private static Map<String, ?> name(MethodDescriptor<?, ?> method) {
+        return Map.of(
+                "service", ContractServiceGrpc.SERVICE_NAME,
+                "method", method.getFullMethodName().substring(ContractServiceGrpc.SERVICE_NAME.length() + 1));
+    }
+
+    private static String seconds(long millis) {
+        return String.format(Locale.ROOT, "%.3fs", millis / 1000.0);
+    }
+}
@@ -0,0 +1,92 @@
+package nl.jdriven.blogs.svc.contract.client;
+
+/**
+ * Settings of a {@link ContractClient}, read from system properties (prefix contract.client.):
+ * <ul>
+ * <li>target: the server, localhost:53000</li>
+ * <li>channels: connections to the server, calls are spread over them round-robin; 4</li>
+ * <li>deadlineMillis: deadline of every call, 10000; none when 0</li>
+ * <li>hedgeDelayMillis: a findContract without an answer after this long is sent again on another attempt, 50;
+ * no hedging when 0; keep it above the usual latency, and turn it off to measure how much the server can take</li>
+ * <li>maxAttempts: attempts of a hedged or retried call, 3</li>
+ * <li>batchSize: most work items sent in one bulk call, 256</li>
+ * <li>batchesInFlight: bulk calls that may be running at the same time, 16</li>
+ * <li>flowControlWindow: initial HTTP/2 flow control window in bytes, 1 MiB</li>
+ * </ul>
+ */
+public class ClientConfig {
+    private static final String PREFIX = "contract.client.";
+
+    private final String target;
+    private final int channels;
+    private final long deadlineMillis;
+    private final long hedgeDelayMillis;
+    private final int maxAttempts;
+    private final int batchSize;
+    private final int batchesInFlight;
+    private final int flowControlWindow;
+
+    public ClientConfig(String target, int channels, long deadlineMillis, long hedgeDelayMillis, int maxAttempts,
+                        int batchSize, int batchesInFlight, int flowControlWindow) {
+        this.target = target;
+        this.channels = channels;
+        this.deadlineMillis = deadlineMillis;
+        this.hedgeDelayMillis = hedgeDelayMillis;
+        this.maxAttempts = maxAttempts;
+        this.batchSize = batchSize;
+        this.batchesInFlight = batchesInFlight;
+        this.flowControlWindow = flowControlWindow;
+    }
+
+    public static ClientConfig fromSystemProperties() {
+        return new ClientConfig(
+                System.getProperty(PREFIX + "target", "localhost:53000"),
+                Integer.getInteger(PREFIX + "channels", 4),
+                Long.getLong(PREFIX + "deadlineMillis", 10_000),
+                Long.getLong(PREFIX + "hedgeDelayMillis", 50),
+                Integer.getInteger(PREFIX + "maxAttempts", 3),
+                Integer.getInteger(PREFIX + "batchSize", 256),
+                Integer.getInteger(PREFIX + "batchesInFlight", 16),
+                Integer.getInteger(PREFIX + "flowControlWindow", 1024 * 1024));
+    }
+
+    public String getTarget() {
+        return target;
+    }
+
+    public int getChannels() {
+        return channels;
+    }
+
+    public long getDeadlineMillis() {
+        return deadlineMillis;
+    }
+
+    public long getHedgeDelayMillis() {
+        return hedgeDelayMillis;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public int getBatchesInFlight() {
+        return batchesInFlight;
+    }
+
+    public int getFlowControlWindow() {
+        return flowControlWindow;
+    }
+
+    @Override
+    public String toString() {
+        return "target=" + target + ", channels=" + channels + ", deadlineMillis=" + deadlineMillis
+                + ", hedgeDelayMillis=" + hedgeDelayMillis + ", maxAttempts=" + maxAttempts
+                + ", batchSize=" + batchSize + ", batchesInFlight=" + batchesInFlight
+                + ", flowControlWindow=" + flowControlWindow;
+    }
+}
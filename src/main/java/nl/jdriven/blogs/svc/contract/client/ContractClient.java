@@ -0,0 +1,184 @@
+package nl.jdriven.blogs.svc.contract.client;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import io.grpc.stub.AbstractStub;
+import nl.jdriven.blogs.svc.contract.proto.AddWorkDoneRequest;
+import nl.jdriven.blogs.svc.contract.proto.AddWorkDoneResponse;
+import nl.jdriven.blogs.svc.contract.proto.ChangesMissed;
+import nl.jdriven.blogs.svc.contract.proto.ContractServiceGrpc;
+import nl.jdriven.blogs.svc.contract.proto.FinalizeContractRequest;
+import nl.jdriven.blogs.svc.contract.proto.FinalizeContractResponse;
+import nl.jdriven.blogs.svc.contract.proto.FindContractRequest;
+import nl.jdriven.blogs.svc.contract.proto.FindContractResponse;
+import nl.jdriven.blogs.svc.contract.proto.GetContractFinancialsRequest;
+import nl.jdriven.blogs.svc.contract.proto.GetContractFinancialsResponse;
+import nl.jdriven.blogs.svc.contract.proto.GetContractStatisticsRequest;
+import nl.jdriven.blogs.svc.contract.proto.GetContractStatisticsResponse;
+import nl.jdriven.blogs.svc.contract.proto.ListContractsRequest;
+import nl.jdriven.blogs.svc.contract.proto.ListContractsResponse;
+import nl.jdriven.blogs.svc.contract.proto.NewQuoteRequest;
+import nl.jdriven.blogs.svc.contract.proto.NewQuoteResponse;
+import nl.jdriven.blogs.svc.contract.proto.PromoteQuoteRequest;
+import nl.jdriven.blogs.svc.contract.proto.PromoteQuoteResponse;
+import nl.jdriven.blogs.svc.contract.proto.WatchContractsRequest;
+import nl.jdriven.blogs.svc.contract.proto.WatchContractsResponse;
+
+import java.io.Closeable;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Client of the contract service for callers that make many calls at the same time. All calls are asynchronous:
+ * unary calls return a {@link CompletableFuture}, streaming responses are a {@link Flow.Publisher}.
+ * Calls are spread over a {@link ChannelPool}, reads are hedged, and addWorkDone calls made at the same time
+ * are sent together (see {@link WorkDoneBatcher}).
+ * <p>
+ * Changes without an idempotency key get a random one, so they can be retried safely; set the key yourself
+ * to keep it the same when you retry a change that failed.
+ * A failed call completes its future with the {@link io.grpc.StatusRuntimeException} of the call.
+ * The client is thread-safe and meant to be shared; close it when done.
+ */
+public class ContractClient implements Closeable {
+    private final ClientConfig config;
+    private final ChannelPool channels;
+    private final ContractServiceGrpc.ContractServiceFutureStub[] futureStubs;
+    private final ContractServiceGrpc.ContractServiceStub[] asyncStubs;
+    private final WorkDoneBatcher workDoneBatcher;
+
+    public ContractClient() {
+        this(ClientConfig.fromSystemProperties());
+    }
+
+    public ContractClient(ClientConfig config) {
+        this.config = config;
+        channels = new ChannelPool(config);
+        futureStubs = new ContractServiceGrpc.ContractServiceFutureStub[channels.size()];
+        asyncStubs = new ContractServiceGrpc.ContractServiceStub[channels.size()];
+        for (int i = 0; i < channels.size(); i++) {
+            futureStubs[i] = ContractServiceGrpc.newFutureStub(channels.get(i));
+            asyncStubs[i] = ContractServiceGrpc.newStub(channels.get(i));
+        }
+        workDoneBatcher = new WorkDoneBatcher(this::asyncStub, config.getBatchSize(), config.getBatchesInFlight());
+    }
+
+    public ClientConfig getConfig() {
+        return config;
+    }
+
+    public CompletableFuture<NewQuoteResponse> newQuote(NewQuoteRequest request) {
+        if (request.getIdempotencyKey().isEmpty()) {
+            request = request.toBuilder().setIdempotencyKey(newIdempotencyKey()).build();
+        }
+        return completable(futureStub().newQuote(request));
+    }
+
+    public CompletableFuture<PromoteQuoteResponse> promoteQuote(PromoteQuoteRequest request) {
+        if (request.getIdempotencyKey().isEmpty()) {
+            request = request.toBuilder().setIdempotencyKey(newIdempotencyKey()).build();
+        }
+        return completable(futureStub().promoteQuote(request));
+    }
+
+    /**
+     * Sent together with other work added at the same time; work that fails is reported on its own future.
+     */
+    public CompletableFuture<AddWorkDoneResponse> addWorkDone(AddWorkDoneRequest request) {
+        if (request.getIdempotencyKey().isEmpty()) {
+            request = request.toBuilder().setIdempotencyKey(newIdempotencyKey()).build();
+        }
+        return workDoneBatcher.add(request);
+    }
+
+    public CompletableFuture<FinalizeContractResponse> finalizeContract(FinalizeContractRequest request) {
+        if (request.getIdempotencyKey().isEmpty()) {
+            request = request.toBuilder().setIdempotencyKey(newIdempotencyKey()).build();
+        }
+        return completable(futureStub().finalizeContract(request));
+    }
+
+    public CompletableFuture<FindContractResponse> findContract(FindContractRequest request) {
+        return completable(futureStub().findContract(request));
+    }
+
+    public CompletableFuture<GetContractFinancialsResponse> getContractFinancials(GetContractFinancialsRequest request) {
+        return completable(futureStub().getContractFinancials(request));
+    }
+
+    public CompletableFuture<GetContractStatisticsResponse> getContractStatistics(GetContractStatisticsRequest request) {
+        return completable(futureStub().getContractStatistics(request));
+    }
+
+    /**
+     * @return a publisher that makes a new call for every subscriber, and receives no more contracts than requested.
+     */
+    public Flow.Publisher<ListContractsResponse> listContracts(ListContractsRequest request) {
+        return new ResponsePublisher<>(request, (r, responses) -> asyncStub().listContracts(r, responses));
+    }
+
+    /**
+     * @return a publisher that makes a new call for every subscriber; changes are only sent as they are requested,
+     * a subscriber that requests too slowly gets a {@link ChangesMissed} instead of the changes it was too late for.
+     * The call has no deadline, it runs until the subscription is cancelled.
+     */
+    public Flow.Publisher<WatchContractsResponse> watchContracts(WatchContractsRequest request) {
+        return new ResponsePublisher<>(request, (r, responses) -> asyncStubs[channels.nextIndex()].watchContracts(r, responses));
+    }
+
+    /**
+     * Sends the work that is still waiting, then waits a while for the calls that are running to complete.
+     */
+    @Override
+    public void close() {
+        workDoneBatcher.flush();
+        channels.close();
+    }
+
+    private ContractServiceGrpc.ContractServiceFutureStub futureStub() {
+        return withDeadline(futureStubs[channels.nextIndex()]);
+    }
+
+    private ContractServiceGrpc.ContractServiceStub asyncStub() {
+        return withDeadline(asyncStubs[channels.nextIndex()]);
+    }
+
+    private <S extends AbstractStub<S>> S withDeadline(S stub) {
+        return config.getDeadlineMillis() > 0 ? stub.withDeadlineAfter(config.getDeadlineMillis(), TimeUnit.MILLISECONDS) : stub;
+    }
+
+    // random numbers from the thread's own generator, SecureRandom (UUID.randomUUID) is a point of contention
+    private static String newIdempotencyKey() {
+        var random = ThreadLocalRandom.current();
+        return new UUID(random.nextLong(), random.nextLong()).toString();
+    }
+
+    /**
+     * @return a future that is completed by the call, and cancels the call when it is cancelled.
+     */
+    private static <T> CompletableFuture<T> completable(ListenableFuture<T> call) {
+        var result = new CompletableFuture<T>() {
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                call.cancel(mayInterruptIfRunning);
+                return super.cancel(mayInterruptIfRunning);
+            }
+        };
+        Futures.addCallback(call, new FutureCallback<>() {
+            @Override
+            public void onSuccess(T response) {
+                result.complete(response);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                result.completeExceptionally(t);
+            }
+        }, MoreExecutors.directExecutor());
+        return result;
+    }
+}
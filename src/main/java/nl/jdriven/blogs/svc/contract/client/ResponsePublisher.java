@@ -0,0 +1,115 @@
+package nl.jdriven.blogs.svc.contract.client;
+
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
+import io.grpc.stub.StreamObserver;
+
+import java.util.concurrent.Flow;
+import java.util.function.BiConsumer;
+
+/**
+ * The responses of a server streaming call as a reactive streams publisher. Every subscriber starts its own call,
+ * and the demand of the subscriber is passed on as gRPC flow control: the server sends no more responses than
+ * were requested, so a slow subscriber slows down the server instead of filling the memory of the client.
+ */
+final class ResponsePublisher<ReqT, RespT> implements Flow.Publisher<RespT> {
+    private final ReqT request;
+    private final BiConsumer<ReqT, StreamObserver<RespT>> call;
+
+    /**
+     * @param call starts the call on an async stub
+     */
+    ResponsePublisher(ReqT request, BiConsumer<ReqT, StreamObserver<RespT>> call) {
+        this.request = request;
+        this.call = call;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super RespT> subscriber) {
+        var subscription = new CallSubscription<ReqT, RespT>(subscriber);
+        subscriber.onSubscribe(subscription);
+        call.accept(request, subscription);
+        subscription.started();
+    }
+
+    private static final class CallSubscription<ReqT, RespT> implements Flow.Subscription, ClientResponseObserver<ReqT, RespT> {
+        private final Flow.Subscriber<? super RespT> subscriber;
+        private ClientCallStreamObserver<ReqT> requestStream;
+        // demand and cancellation before the call was started are passed on once it is
+        private boolean started;
+        private long demand;
+        private volatile boolean cancelled;
+
+        CallSubscription(Flow.Subscriber<? super RespT> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void beforeStart(ClientCallStreamObserver<ReqT> requestStream) {
+            this.requestStream = requestStream;
+            requestStream.disableAutoInboundFlowControl();
+        }
+
+        void started() {
+            long n;
+            synchronized (this) {
+                started = true;
+                n = demand;
+            }
+            if (cancelled) {
+                requestStream.cancel("Subscription cancelled", null);
+            } else if (n > 0) {
+                requestStream.request((int) Math.min(n, Integer.MAX_VALUE));
+            }
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                cancel();
+                subscriber.onError(new IllegalArgumentException("Requested " + n + " responses, must be positive"));
+                return;
+            }
+            synchronized (this) {
+                if (!started) {
+                    demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+                    return;
+                }
+            }
+            // more than Integer.MAX_VALUE responses is as good as unbounded
+            requestStream.request((int) Math.min(n, Integer.MAX_VALUE));
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            synchronized (this) {
+                if (!started) {
+                    return;
+                }
+            }
+            requestStream.cancel("Subscription cancelled", null);
+        }
+
+        @Override
+        public void onNext(RespT response) {
+            if (!cancelled) {
+                subscriber.onNext(response);
+            }
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            if (!cancelled) {
+                subscriber.onError(t);
+            }
+        }
+
+        @Override
+        public void onCompleted() {
+            if (!cancelled) {
+                subscriber.onComplete();
+            }
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package nl.jdriven.blogs.svc.contract.client;
+
+import io.grpc.protobuf.StatusProto;
+import io.grpc.stub.StreamObserver;
+import nl.jdriven.blogs.svc.contract.proto.AddWorkDoneRequest;
+import nl.jdriven.blogs.svc.contract.proto.AddWorkDoneResponse;
+import nl.jdriven.blogs.svc.contract.proto.BulkAddWorkDoneResponse;
+import nl.jdriven.blogs.svc.contract.proto.ContractServiceGrpc;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Sends separate addWorkDone calls together in BulkAddWorkDone streams. There is no linger: as long as fewer
+ * than the maximum number of calls are running, work is sent right away, on its own as a plain addWorkDone.
+ * Only when the maximum is reached does work wait, and the next call that completes sends all work that waited
+ * in one stream. So a quiet client gets the latency of a single call, and a busy one gets batches that are
+ * as large as the load makes them, with far fewer calls for the server to handle.
+ */
+final class WorkDoneBatcher {
+    private static final class Pending {
+        final AddWorkDoneRequest request;
+        final CompletableFuture<AddWorkDoneResponse> response = new CompletableFuture<>();
+
+        Pending(AddWorkDoneRequest request) {
+            this.request = request;
+        }
+    }
+
+    private final Supplier<ContractServiceGrpc.ContractServiceStub> stubs;
+    private final int batchSize;
+    private final int maxInFlight;
+    private final ArrayDeque<Pending> waiting = new ArrayDeque<>();
+    private int inFlight;
+
+    /**
+     * @param stubs       the stub for the next call
+     * @param batchSize   most work sent in one stream
+     * @param maxInFlight calls that may be running at the same time
+     */
+    WorkDoneBatcher(Supplier<ContractServiceGrpc.ContractServiceStub> stubs, int batchSize, int maxInFlight) {
+        this.stubs = stubs;
+        this.batchSize = Math.max(1, batchSize);
+        this.maxInFlight = Math.max(1, maxInFlight);
+    }
+
+    CompletableFuture<AddWorkDoneResponse> add(AddWorkDoneRequest request) {
+        var pending = new Pending(request);
+        List<Pending> batch = null;
+        synchronized (this) {
+            waiting.add(pending);
+            if (inFlight < maxInFlight) {
+                inFlight++;
+                batch = take();
+            }
+        }
+        if (batch != null) {
+            send(batch);
+        }
+        return pending.response;
+    }
+
+    /**
+     * Sends all work that is waiting, without waiting for running calls.
+     */
+    void flush() {
+        while (true) {
+            List<Pending> batch;
+            synchronized (this) {
+                if (waiting.isEmpty()) {
+                    return;
+                }
+                inFlight++;
+                batch = take();
+            }
+            send(batch);
+        }
+    }
+
+    private List<Pending> take() {
+        var batch = new ArrayList<Pending>(Math.min(batchSize, waiting.size()));
+        while (batch.size() < batchSize && !waiting.isEmpty()) {
+            batch.add(waiting.poll());
+        }
+        return batch;
+    }
+
+    private void send(List<Pending> batch) {
+        var stub = stubs.get();
+        if (batch.size() == 1) {
+            var pending = batch.get(0);
+            stub.addWorkDone(pending.request, new StreamObserver<>() {
+                @Override
+                public void onNext(AddWorkDoneResponse response) {
+                    pending.response.complete(response);
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                    pending.response.completeExceptionally(t);
+                    completed();
+                }
+
+                @Override
+                public void onCompleted() {
+                    completed();
+                }
+            });
+            return;
+        }
+        var requests = stub.bulkAddWorkDone(new StreamObserver<>() {
+            private BulkAddWorkDoneResponse response = BulkAddWorkDoneResponse.getDefaultInstance();
+
+            @Override
+            public void onNext(BulkAddWorkDoneResponse response) {
+                this.response = response;
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                for (var pending : batch) {
+                    pending.response.completeExceptionally(t);
+                }
+                completed();
+            }
+
+            @Override
+            public void onCompleted() {
+                // the errors are in stream order, the work that is not in them was added
+                for (var error : response.getErrorsList()) {
+                    batch.set((int) error.getIndex(), null)
+                            .response.completeExceptionally(StatusProto.toStatusRuntimeException(error.getError()));
+                }
+                for (var pending : batch) {
+                    if (pending != null) {
+                        pending.response.complete(AddWorkDoneResponse.getDefaultInstance());
+                    }
+                }
+                completed();
+            }
+        });
+        for (var pending : batch) {
+            requests.onNext(pending.request);
+        }
+        requests.onCompleted();
+    }
+
+    private void completed() {
+        List<Pending> batch;
+        synchronized (this) {
+            if (waiting.isEmpty()) {
+                inFlight--;
+                return;
+            }
+            batch = take();
+        }
+        send(batch);
+    }
+}
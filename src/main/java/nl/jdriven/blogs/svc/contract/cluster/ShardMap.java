@@ -0,0 +1,173 @@
+package nl.jdriven.blogs.svc.contract.cluster;
+
+import nl.jdriven.blogs.svc.contract.model.main.ContractId;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Which node owns which contracts. Contract ids are divided over a fixed number of shards by jump consistent
+ * hashing (Lamping and Veach), and every shard is owned by one node; nodes are named by their host:port.
+ * The shard of an id never depends on the nodes, so moving a shard to another node does not move any other,
+ * and going from n to n + 1 shards only moves 1 / (n + 1) of the contracts.
+ * <p>
+ * Read from system properties (prefix contract.shards.):
+ * <ul>
+ * <li>nodes: the nodes, e.g. localhost:53000,localhost:53001; not sharded when empty, the default</li>
+ * <li>count: the number of shards, divided evenly over the nodes, 64</li>
+ * <li>map: which node owns which shards instead of the even division,
+ * e.g. localhost:53000=0-15,32-47;localhost:53001=16-31,48-63; the count is the number of shards in it</li>
+ * <li>self: the node that this is, localhost:port</li>
+ * </ul>
+ * All nodes must have the same map and count, a node forwards the calls for another node's contracts to it.
+ */
+public final class ShardMap {
+    /** Everything on one node. */
+    public static final ShardMap SINGLE = new ShardMap(new String[]{""}, "");
+
+    private static final String PREFIX = "contract.shards.";
+    private static final int DEFAULT_COUNT = 64;
+
+    // owner of every shard
+    private final String[] owners;
+    private final String self;
+    private final boolean[] local;
+
+    private ShardMap(String[] owners, String self) {
+        this.owners = owners;
+        this.self = self;
+        local = new boolean[owners.length];
+        for (int shard = 0; shard < owners.length; shard++) {
+            local[shard] = owners[shard].equals(self);
+        }
+        if (!getNodes().contains(self)) {
+            throw new IllegalArgumentException("Node " + self + " is not in the shard map " + getNodes());
+        }
+    }
+
+    /**
+     * @param port of this node, to name it when contract.shards.self is not set
+     */
+    public static ShardMap fromSystemProperties(int port) {
+        var self = System.getProperty(PREFIX + "self", "localhost:" + port);
+        var map = System.getProperty(PREFIX + "map", "");
+        if (!map.isEmpty()) {
+            return parse(map, self);
+        }
+        var nodes = System.getProperty(PREFIX + "nodes", "");
+        if (nodes.isEmpty()) {
+            return SINGLE;
+        }
+        return evenlyDivided(Arrays.asList(nodes.split(",")), Integer.getInteger(PREFIX + "count", DEFAULT_COUNT), self);
+    }
+
+    /**
+     * @return shard i owned by node i modulo the number of nodes.
+     */
+    public static ShardMap evenlyDivided(List<String> nodes, int shardCount, String self) {
+        var owners = new String[shardCount];
+        for (int shard = 0; shard < shardCount; shard++) {
+            owners[shard] = nodes.get(shard % nodes.size()).trim();
+        }
+        return new ShardMap(owners, self);
+    }
+
+    /**
+     * @param map node=shards;node=shards, shards as a list of numbers and ranges
+     */
+    public static ShardMap parse(String map, String self) {
+        var owners = new ArrayList<String>();
+        for (var nodeShards : map.split(";")) {
+            var nodeAndShards = nodeShards.split("=");
+            if (nodeAndShards.length != 2) {
+                throw new IllegalArgumentException("Expected node=shards in the shard map, got " + nodeShards);
+            }
+            var node = nodeAndShards[0].trim();
+            for (var range : nodeAndShards[1].split(",")) {
+                var bounds = range.split("-");
+                int from = Integer.parseInt(bounds[0].trim());
+                int to = Integer.parseInt(bounds[bounds.length - 1].trim());
+                for (int shard = from; shard <= to; shard++) {
+                    while (owners.size() <= shard) {
+                        owners.add(null);
+                    }
+                    if (owners.get(shard) != null) {
+                        throw new IllegalArgumentException("Shard " + shard + " has two owners in the shard map");
+                    }
+                    owners.set(shard, node);
+                }
+            }
+        }
+        int missing = owners.indexOf(null);
+        if (missing >= 0) {
+            throw new IllegalArgumentException("Shard " + missing + " has no owner in the shard map");
+        }
+        return new ShardMap(owners.toArray(new String[0]), self);
+    }
+
+    public int getShardCount() {
+        return owners.length;
+    }
+
+    public String getSelf() {
+        return self;
+    }
+
+    /**
+     * @return all nodes, this one included.
+     */
+    public Set<String> getNodes() {
+        return new LinkedHashSet<>(Arrays.asList(owners));
+    }
+
+    public boolean isSharded() {
+        return owners.length > 1 && getNodes().size() > 1;
+    }
+
+    public int shardOf(ContractId id) {
+        return jumpConsistentHash(id.getHigh() * 0x9e3779b97f4a7c15L ^ id.getLow(), owners.length);
+    }
+
+    public boolean isLocal(ContractId id) {
+        return local[shardOf(id)];
+    }
+
+    public String ownerOf(ContractId id) {
+        return owners[shardOf(id)];
+    }
+
+    /**
+     * @return the shards owned by this node.
+     */
+    public int[] getLocalShards() {
+        int count = 0;
+        var shards = new int[owners.length];
+        for (int shard = 0; shard < owners.length; shard++) {
+            if (local[shard]) {
+                shards[count++] = shard;
+            }
+        }
+        return Arrays.copyOf(shards, count);
+    }
+
+    // the bucket stays the same for a key as buckets are added, unless it moves to the new bucket
+    private static int jumpConsistentHash(long key, int buckets) {
+        long bucket = -1;
+        long jump = 0;
+        while (jump < buckets) {
+            bucket = jump;
+            key = key * 2862933555777941757L + 1;
+            jump = (long) ((bucket + 1) * ((double) (1L << 31) / (double) ((key >>> 33) + 1)));
+        }
+        return (int) bucket;
+    }
+
+    @Override
+    public String toString() {
+        return isSharded() ? "shards=" + owners.length + ", nodes=" + getNodes() + ", self=" + self
+                + ", local shards=" + getLocalShards().length : "not sharded";
+    }
+}
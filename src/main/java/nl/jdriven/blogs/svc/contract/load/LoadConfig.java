@@ -0,0 +1,135 @@
+package nl.jdriven.blogs.svc.contract.load;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Settings of a load test, read from system properties (prefix contract.load.):
+ * <ul>
+ * <li>target: the server, localhost:53000; inprocess starts a server in this JVM, with the in-process transport</li>
+ * <li>mode: CLOSED, a fixed number of callers that each wait for their answer before the next call,
+ * or OPEN, calls started at the rate whether earlier ones were answered or not; closed by default</li>
+ * <li>rate: calls per second of all callers together, 0 for as fast as possible (closed loop only); 0</li>
+ * <li>concurrency: callers of the closed loop, or most calls waiting for an answer in the open loop; 16</li>
+ * <li>channels: connections to the server, 4</li>
+ * <li>warmupSeconds: run before measuring, 5</li>
+ * <li>durationSeconds: measured, 30</li>
+ * <li>mix: relative weight of every operation,
+ * newQuote=20,promoteQuote=15,addWorkDone=35,finalizeContract=10,findContract=20</li>
+ * <li>histogramFile: when set, the latencies are written to files with this name and the extension .hgrm,
+ * in the HdrHistogram percentile distribution format: of all operations, of every operation (name-operation.hgrm)
+ * and the service time (name-service-time.hgrm); plus the histograms of every second in an HdrHistogram log (.hlog)</li>
+ * </ul>
+ */
+public class LoadConfig {
+    public enum Mode {CLOSED, OPEN}
+
+    public static final String IN_PROCESS = "inprocess";
+    private static final String PREFIX = "contract.load.";
+    private static final String DEFAULT_MIX = "newQuote=20,promoteQuote=15,addWorkDone=35,finalizeContract=10,findContract=20";
+
+    private final String target;
+    private final Mode mode;
+    private final int rate;
+    private final int concurrency;
+    private final int channels;
+    private final int warmupSeconds;
+    private final int durationSeconds;
+    private final Map<Operation, Integer> mix;
+    private final String histogramFile;
+
+    public LoadConfig(String target, Mode mode, int rate, int concurrency, int channels, int warmupSeconds,
+                      int durationSeconds, Map<Operation, Integer> mix, String histogramFile) {
+        if (mode == Mode.OPEN && rate <= 0) {
+            throw new IllegalArgumentException("An open loop needs a rate");
+        }
+        if (mix.values().stream().mapToInt(Integer::intValue).sum() <= 0) {
+            throw new IllegalArgumentException("The mix has no operations");
+        }
+        this.target = target;
+        this.mode = mode;
+        this.rate = rate;
+        this.concurrency = concurrency;
+        this.channels = channels;
+        this.warmupSeconds = warmupSeconds;
+        this.durationSeconds = durationSeconds;
+        this.mix = Collections.unmodifiableMap(new EnumMap<>(mix));
+        this.histogramFile = histogramFile;
+    }
+
+    public static LoadConfig fromSystemProperties() {
+        return new LoadConfig(
+                System.getProperty(PREFIX + "target", "localhost:53000"),
+                Mode.valueOf(System.getProperty(PREFIX + "mode", Mode.CLOSED.name()).toUpperCase()),
+                Integer.getInteger(PREFIX + "rate", 0),
+                Integer.getInteger(PREFIX + "concurrency", 16),
+                Integer.getInteger(PREFIX + "channels", 4),
+                Integer.getInteger(PREFIX + "warmupSeconds", 5),
+                Integer.getInteger(PREFIX + "durationSeconds", 30),
+                parseMix(System.getProperty(PREFIX + "mix", DEFAULT_MIX)),
+                System.getProperty(PREFIX + "histogramFile", ""));
+    }
+
+    /**
+     * @param mix e.g. newQuote=1,findContract=4; operations that are not named are not called
+     */
+    public static Map<Operation, Integer> parseMix(String mix) {
+        var weights = new EnumMap<Operation, Integer>(Operation.class);
+        for (var part : mix.split(",")) {
+            var nameAndWeight = part.split("=");
+            if (nameAndWeight.length != 2) {
+                throw new IllegalArgumentException("Expected operation=weight in the mix, got " + part);
+            }
+            weights.put(Operation.ofMethodName(nameAndWeight[0].trim()), Integer.parseInt(nameAndWeight[1].trim()));
+        }
+        return weights;
+    }
+
+    public String getTarget() {
+        return target;
+    }
+
+    public boolean isInProcess() {
+        return IN_PROCESS.equalsIgnoreCase(target);
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public int getRate() {
+        return rate;
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    public int getChannels() {
+        return channels;
+    }
+
+    public int getWarmupSeconds() {
+        return warmupSeconds;
+    }
+
+    public int getDurationSeconds() {
+        return durationSeconds;
+    }
+
+    public Map<Operation, Integer> getMix() {
+        return mix;
+    }
+
+    public String getHistogramFile() {
+        return histogramFile;
+    }
+
+    @Override
+    public String toString() {
+        return "target=" + target + ", mode=" + mode + ", rate=" + rate + ", concurrency=" + concurrency
+                + ", channels=" + channels + ", warmupSeconds=" + warmupSeconds + ", durationSeconds=" + durationSeconds
+                + ", mix=" + mix;
+    }
+}
@@ -0,0 +1,260 @@
+package nl.jdriven.blogs.svc.contract.load;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.MoreExecutors;
+import io.grpc.Channel;
+import io.grpc.Status;
+import nl.jdriven.blogs.svc.contract.proto.ContractServiceGrpc;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramLogWriter;
+
+import java.io.FileNotFoundException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Calls the service with the mix of operations of a {@link LoadConfig}, in a closed or an open loop,
+ * and reports the latencies every second and at the end, as percentiles in milliseconds.
+ * <p>
+ * The closed loop has a fixed number of callers that each wait for the answer before they make the next call;
+ * with a rate every caller has a schedule, and a call that is late because the previous answer was slow still
+ * counts from when it should have started. The open loop starts calls at the rate from one thread, whether
+ * earlier ones were answered or not; only when the maximum number of calls is waiting for an answer does it
+ * wait, and that waiting counts in the latency as well.
+ */
+public class LoadGenerator {
+    private static final long SECOND_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final double MICROS_PER_MILLI = 1000.0;
+
+    private final LoadConfig config;
+    private final ContractServiceGrpc.ContractServiceFutureStub[] stubs;
+    private final AtomicInteger nextStub = new AtomicInteger();
+    private final Workload workload;
+    private final EnumMap<Operation, OperationStats> stats = new EnumMap<>(Operation.class);
+    private final PrintStream out;
+
+    /**
+     * @param channels calls are spread over these round-robin
+     */
+    public LoadGenerator(LoadConfig config, List<? extends Channel> channels, PrintStream out) {
+        this.config = config;
+        this.out = out;
+        stubs = channels.stream()
+                .map(ContractServiceGrpc::newFutureStub)
+                .toArray(ContractServiceGrpc.ContractServiceFutureStub[]::new);
+        workload = new Workload(config.getMix());
+        for (var operation : Operation.values()) {
+            stats.put(operation, new OperationStats(operation));
+        }
+    }
+
+    public void run() throws InterruptedException, FileNotFoundException {
+        long start = System.nanoTime();
+        long end = start + (config.getWarmupSeconds() + config.getDurationSeconds()) * SECOND_NANOS;
+        var callers = new ArrayList<Thread>();
+        if (config.getMode() == LoadConfig.Mode.OPEN) {
+            callers.add(new Thread(() -> openLoop(start, end), "load-open-loop"));
+        } else {
+            for (int i = 0; i < config.getConcurrency(); i++) {
+                int caller = i;
+                callers.add(new Thread(() -> closedLoop(caller, start, end), "load-caller-" + i));
+            }
+        }
+        var log = config.getHistogramFile().isEmpty() ? null : new HistogramLogWriter(config.getHistogramFile() + ".hlog");
+        if (log != null) {
+            log.outputLogFormatVersion();
+            log.outputComment(config.toString());
+            log.outputStartTime(System.currentTimeMillis());
+            log.setBaseTime(System.currentTimeMillis());
+            log.outputLegend();
+        }
+        out.println("Load test with " + config);
+        callers.forEach(Thread::start);
+        for (int second = 1; second * SECOND_NANOS <= end - start; second++) {
+            LockSupport.parkNanos(start + second * SECOND_NANOS - System.nanoTime());
+            reportInterval(second, second > config.getWarmupSeconds(), log);
+        }
+        for (var caller : callers) {
+            caller.join();
+        }
+        // the calls that were answered after the end
+        reportInterval(config.getWarmupSeconds() + config.getDurationSeconds() + 1, true, log);
+        if (log != null) {
+            log.close();
+        }
+        reportTotals();
+        if (!config.getHistogramFile().isEmpty()) {
+            writeDistributions(config.getHistogramFile());
+        }
+    }
+
+    private void closedLoop(int caller, long start, long end) {
+        long interval = config.getRate() > 0 ? SECOND_NANOS * config.getConcurrency() / config.getRate() : 0;
+        // the schedules of the callers are spread over the interval
+        long intended = start + interval * caller / config.getConcurrency();
+        while (true) {
+            if (interval > 0) {
+                if (intended >= end) {
+                    return;
+                }
+                parkUntil(intended);
+            } else {
+                intended = System.nanoTime();
+                if (intended >= end) {
+                    return;
+                }
+            }
+            long sent = System.nanoTime();
+            var call = workload.start(stub());
+            Status.Code code;
+            try {
+                call.response.get();
+                code = Status.Code.OK;
+            } catch (ExecutionException e) {
+                code = Status.fromThrowable(e.getCause()).getCode();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            stats.get(call.operation).record(intended, sent, System.nanoTime(), code);
+            intended += interval;
+        }
+    }
+
+    private void openLoop(long start, long end) {
+        double interval = (double) SECOND_NANOS / config.getRate();
+        var waiting = new Semaphore(config.getConcurrency());
+        for (long i = 0; ; i++) {
+            long intended = start + (long) (i * interval);
+            if (intended >= end) {
+                break;
+            }
+            parkUntil(intended);
+            waiting.acquireUninterruptibly();
+            long sent = System.nanoTime();
+            var call = workload.start(stub());
+            var operationStats = stats.get(call.operation);
+            Futures.addCallback(call.response, new FutureCallback<Object>() {
+                @Override
+                public void onSuccess(Object response) {
+                    operationStats.record(intended, sent, System.nanoTime(), Status.Code.OK);
+                    waiting.release();
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    operationStats.record(intended, sent, System.nanoTime(), Status.fromThrowable(t).getCode());
+                    waiting.release();
+                }
+            }, MoreExecutors.directExecutor());
+        }
+        // wait for the calls that are still running
+        waiting.acquireUninterruptibly(config.getConcurrency());
+    }
+
+    private ContractServiceGrpc.ContractServiceFutureStub stub() {
+        // a call that takes longer is recorded as the slowest anyway
+        return stubs[Math.floorMod(nextStub.getAndIncrement(), stubs.length)]
+                .withDeadlineAfter(OperationStats.HIGHEST_MICROS, TimeUnit.MICROSECONDS);
+    }
+
+    private static void parkUntil(long nanoTime) {
+        for (long wait = nanoTime - System.nanoTime(); wait > 0; wait = nanoTime - System.nanoTime()) {
+            LockSupport.parkNanos(wait);
+        }
+    }
+
+    private void reportInterval(int second, boolean measuring, HistogramLogWriter log) {
+        var all = new Histogram(OperationStats.HIGHEST_MICROS, 3);
+        long failed = 0;
+        for (var operationStats : stats.values()) {
+            long failedBefore = operationStats.getFailed();
+            var interval = operationStats.interval(measuring);
+            all.add(interval);
+            failed += operationStats.getFailed() - failedBefore;
+            if (log != null && interval.getTotalCount() > 0) {
+                interval.setTag(operationStats.getOperation().getMethodName());
+                log.outputIntervalHistogram(second - 1, second, interval, MICROS_PER_MILLI);
+            }
+        }
+        out.printf("%5ds %s %8d calls/s  p50 %8.3f  p99 %8.3f  p99.9 %8.3f  max %8.3f ms%s%n",
+                second, measuring ? " " : "w", all.getTotalCount(),
+                millis(all.getValueAtPercentile(50)), millis(all.getValueAtPercentile(99)),
+                millis(all.getValueAtPercentile(99.9)), millis(all.getMaxValue()),
+                measuring ? "  failed " + failed : "  (warmup)");
+    }
+
+    private void reportTotals() {
+        out.printf("%nLatency from the intended start of the call, in ms, over %d s:%n", config.getDurationSeconds());
+        reportTable(true);
+        out.printf("%nService time from the moment the call was sent, in ms:%n");
+        reportTable(false);
+        for (var operationStats : stats.values()) {
+            for (var code : Status.Code.values()) {
+                long count = operationStats.getHandled(code);
+                if (code != Status.Code.OK && count > 0) {
+                    out.printf("%s failed with %s: %d%n", operationStats.getOperation().getMethodName(), code, count);
+                }
+            }
+        }
+    }
+
+    private void reportTable(boolean latency) {
+        out.printf("%-18s %10s %10s %9s %9s %9s %9s %9s %9s%n",
+                "operation", "calls", "calls/s", "p50", "p90", "p99", "p99.9", "p99.99", "max");
+        var all = new Histogram(OperationStats.HIGHEST_MICROS, 3);
+        for (var operationStats : stats.values()) {
+            var histogram = latency ? operationStats.getLatency() : operationStats.getServiceTime();
+            if (histogram.getTotalCount() > 0) {
+                reportRow(operationStats.getOperation().getMethodName(), histogram);
+                all.add(histogram);
+            }
+        }
+        reportRow("all", all);
+    }
+
+    private void reportRow(String name, Histogram histogram) {
+        out.printf("%-18s %10d %10d %9.3f %9.3f %9.3f %9.3f %9.3f %9.3f%n",
+                name, histogram.getTotalCount(), histogram.getTotalCount() / Math.max(1, config.getDurationSeconds()),
+                millis(histogram.getValueAtPercentile(50)), millis(histogram.getValueAtPercentile(90)),
+                millis(histogram.getValueAtPercentile(99)), millis(histogram.getValueAtPercentile(99.9)),
+                millis(histogram.getValueAtPercentile(99.99)), millis(histogram.getMaxValue()));
+    }
+
+    /**
+     * Percentile distributions in milliseconds, as read by the HdrHistogram plotter:
+     * of all operations, of every operation and of the service time of all operations.
+     */
+    private void writeDistributions(String baseName) throws FileNotFoundException {
+        var all = new Histogram(OperationStats.HIGHEST_MICROS, 3);
+        var allServiceTime = new Histogram(OperationStats.HIGHEST_MICROS, 3);
+        for (var operationStats : stats.values()) {
+            if (operationStats.getLatency().getTotalCount() > 0) {
+                writeDistribution(baseName + "-" + operationStats.getOperation().getMethodName() + ".hgrm", operationStats.getLatency());
+                all.add(operationStats.getLatency());
+                allServiceTime.add(operationStats.getServiceTime());
+            }
+        }
+        writeDistribution(baseName + ".hgrm", all);
+        writeDistribution(baseName + "-service-time.hgrm", allServiceTime);
+        out.println("Latency distributions written to " + baseName + "*.hgrm, every second to " + baseName + ".hlog");
+    }
+
+    private static void writeDistribution(String file, Histogram histogram) throws FileNotFoundException {
+        try (var stream = new PrintStream(file)) {
+            histogram.outputPercentileDistribution(stream, MICROS_PER_MILLI);
+        }
+    }
+
+    private static double millis(long micros) {
+        return micros / MICROS_PER_MILLI;
+    }
+}
@@ -0,0 +1,31 @@
+package nl.jdriven.blogs.svc.contract.load;
+
+/**
+ * The calls the load generator makes, named as the methods of the service.
+ */
+public enum Operation {
+    NEW_QUOTE("newQuote"),
+    PROMOTE_QUOTE("promoteQuote"),
+    ADD_WORK_DONE("addWorkDone"),
+    FINALIZE_CONTRACT("finalizeContract"),
+    FIND_CONTRACT("findContract");
+
+    private final String methodName;
+
+    Operation(String methodName) {
+        this.methodName = methodName;
+    }
+
+    public String getMethodName() {
+        return methodName;
+    }
+
+    public static Operation ofMethodName(String methodName) {
+        for (var operation : values()) {
+            if (operation.methodName.equalsIgnoreCase(methodName)) {
+                return operation;
+            }
+        }
+        throw new IllegalArgumentException("Unknown operation " + methodName);
+    }
+}
@@ -0,0 +1,95 @@
+package nl.jdriven.blogs.svc.contract.load;
+
+import io.grpc.Status;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latencies and status codes of one operation. Every call is recorded twice. Its latency runs from the moment
+ * the call should have started according to the rate; that includes the time it waited for the callers that were
+ * busy, so a server that stalls is not hidden by the calls the load generator failed to make meanwhile
+ * (coordinated omission). Its service time runs from the moment the call was actually sent.
+ * Recording is lock-free; the histograms of an interval are collected by the reporting thread.
+ */
+final class OperationStats {
+    // slower calls are recorded as this, an HdrHistogram has a fixed range
+    static final long HIGHEST_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+    private final Operation operation;
+    private final Recorder latency = new Recorder(HIGHEST_MICROS, 3);
+    private final Recorder serviceTime = new Recorder(HIGHEST_MICROS, 3);
+    // indexed by Status.Code.value()
+    private final LongAdder[] handled = new LongAdder[Status.Code.values().length];
+    // only touched by the reporting thread
+    private Histogram intervalLatency;
+    private Histogram intervalServiceTime;
+    private final Histogram totalLatency = new Histogram(HIGHEST_MICROS, 3);
+    private final Histogram totalServiceTime = new Histogram(HIGHEST_MICROS, 3);
+    private final long[] totalHandled = new long[handled.length];
+
+    OperationStats(Operation operation) {
+        this.operation = operation;
+        for (int i = 0; i < handled.length; i++) {
+            handled[i] = new LongAdder();
+        }
+    }
+
+    Operation getOperation() {
+        return operation;
+    }
+
+    void record(long intendedNanos, long sentNanos, long doneNanos, Status.Code code) {
+        handled[code.value()].increment();
+        latency.recordValue(micros(doneNanos - intendedNanos));
+        serviceTime.recordValue(micros(doneNanos - sentNanos));
+    }
+
+    /**
+     * Takes the calls recorded since the previous interval, and adds them to the totals when measuring.
+     * @return the latencies of the interval, the histogram is reused by the next interval.
+     */
+    Histogram interval(boolean measuring) {
+        intervalLatency = latency.getIntervalHistogram(intervalLatency);
+        intervalServiceTime = serviceTime.getIntervalHistogram(intervalServiceTime);
+        for (int i = 0; i < handled.length; i++) {
+            long count = handled[i].sumThenReset();
+            if (measuring) {
+                totalHandled[i] += count;
+            }
+        }
+        if (measuring) {
+            totalLatency.add(intervalLatency);
+            totalServiceTime.add(intervalServiceTime);
+        }
+        return intervalLatency;
+    }
+
+    Histogram getLatency() {
+        return totalLatency;
+    }
+
+    Histogram getServiceTime() {
+        return totalServiceTime;
+    }
+
+    long getHandled(Status.Code code) {
+        return totalHandled[code.value()];
+    }
+
+    long getFailed() {
+        long failed = 0;
+        for (int i = 0; i < totalHandled.length; i++) {
+            if (i != Status.Code.OK.value()) {
+                failed += totalHandled[i];
+            }
+        }
+        return failed;
+    }
+
+    private static long micros(long nanos) {
+        return Math.max(0, Math.min(TimeUnit.NANOSECONDS.toMicros(nanos), HIGHEST_MICROS));
+    }
+}
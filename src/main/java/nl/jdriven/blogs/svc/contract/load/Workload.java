@@ -0,0 +1,160 @@
+package nl.jdriven.blogs.svc.contract.load;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.type.Money;
+import nl.jdriven.blogs.svc.contract.proto.AddWorkDoneRequest;
+import nl.jdriven.blogs.svc.contract.proto.ContractServiceGrpc;
+import nl.jdriven.blogs.svc.contract.proto.FinalizeContractRequest;
+import nl.jdriven.blogs.svc.contract.proto.FindContractRequest;
+import nl.jdriven.blogs.svc.contract.proto.NewQuoteRequest;
+import nl.jdriven.blogs.svc.contract.proto.PromoteQuoteRequest;
+import nl.jdriven.blogs.svc.contract.proto.WorkDone;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Picks the next operation from the mix and makes its request. The contracts it changes come from what
+ * earlier calls did: quotes that were made are promoted, promoted contracts get work and are finalized,
+ * and any contract made is found. An operation without a contract to call it on is a new quote instead.
+ * Contracts are picked at random, so now and then work is added to a contract that was just finalized;
+ * the server refuses that, which shows up as a FAILED_PRECONDITION of addWorkDone.
+ */
+final class Workload {
+    private static final int MAX_QUOTES = 100_000;
+    private static final int AT_WORK_SLOTS = 4096;
+    private static final int KNOWN_SLOTS = 65536;
+    private static final int CUSTOMERS = 1000;
+
+    private final Operation[] operations;
+    private final int[] cumulativeWeights;
+    // quotes waiting to be promoted, each is promoted once
+    private final ConcurrentLinkedQueue<String> quotes = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger quoteCount = new AtomicInteger();
+    // promoted contracts, a newer one takes the slot of an older one
+    private final AtomicReferenceArray<String> atWork = new AtomicReferenceArray<>(AT_WORK_SLOTS);
+    private final AtomicLong promoted = new AtomicLong();
+    // contracts to find
+    private final AtomicReferenceArray<String> known = new AtomicReferenceArray<>(KNOWN_SLOTS);
+    private final AtomicLong quoted = new AtomicLong();
+
+    Workload(Map<Operation, Integer> mix) {
+        operations = mix.keySet().toArray(new Operation[0]);
+        cumulativeWeights = new int[operations.length];
+        int sum = 0;
+        for (int i = 0; i < operations.length; i++) {
+            sum += mix.get(operations[i]);
+            cumulativeWeights[i] = sum;
+        }
+    }
+
+    /**
+     * A call that was started: the operation it turned out to be and its response.
+     */
+    static final class Call {
+        final Operation operation;
+        final ListenableFuture<?> response;
+
+        Call(Operation operation, ListenableFuture<?> response) {
+            this.operation = operation;
+            this.response = response;
+        }
+    }
+
+    Call start(ContractServiceGrpc.ContractServiceFutureStub stub) {
+        var random = ThreadLocalRandom.current();
+        int pick = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        int i = 0;
+        while (cumulativeWeights[i] <= pick) {
+            i++;
+        }
+        switch (operations[i]) {
+            case PROMOTE_QUOTE:
+                var quote = quotes.poll();
+                if (quote != null) {
+                    quoteCount.decrementAndGet();
+                    return promoteQuote(stub, quote);
+                }
+                break;
+            case ADD_WORK_DONE:
+                var contract = atWork.get(random.nextInt(AT_WORK_SLOTS));
+                if (contract != null) {
+                    return new Call(Operation.ADD_WORK_DONE, stub.addWorkDone(AddWorkDoneRequest.newBuilder()
+                            .setContractId(contract)
+                            .setWork(WorkDone.newBuilder()
+                                    .setCostOfWork(euros(random.nextInt(10, 500)))
+                                    .setDescriptionOfWorkDone("Installed cabinets"))
+                            .build()));
+                }
+                break;
+            case FINALIZE_CONTRACT:
+                var done = atWork.getAndSet(random.nextInt(AT_WORK_SLOTS), null);
+                if (done != null) {
+                    return new Call(Operation.FINALIZE_CONTRACT,
+                            stub.finalizeContract(FinalizeContractRequest.newBuilder().setContractId(done).build()));
+                }
+                break;
+            case FIND_CONTRACT:
+                var any = known.get(random.nextInt((int) Math.min(KNOWN_SLOTS, Math.max(1, quoted.get()))));
+                if (any != null) {
+                    return new Call(Operation.FIND_CONTRACT,
+                            stub.findContract(FindContractRequest.newBuilder().setContractId(any).build()));
+                }
+                break;
+            default:
+                break;
+        }
+        return newQuote(stub, random);
+    }
+
+    private Call newQuote(ContractServiceGrpc.ContractServiceFutureStub stub, ThreadLocalRandom random) {
+        var response = stub.newQuote(NewQuoteRequest.newBuilder()
+                .setFullNameOfCustomer("Customer " + random.nextInt(CUSTOMERS))
+                .setDescriptionOfWorkRequested("Install a kitchen, everything is delivered at the house")
+                .setQuotedPrice(euros(random.nextInt(1000, 5000)))
+                .build());
+        onSuccess(response, quote -> {
+            var id = quote.getContractId();
+            known.set((int) (quoted.getAndIncrement() % KNOWN_SLOTS), id);
+            // quotes that are never promoted are dropped once there are enough
+            if (quoteCount.incrementAndGet() <= MAX_QUOTES) {
+                quotes.add(id);
+            } else {
+                quoteCount.decrementAndGet();
+            }
+        });
+        return new Call(Operation.NEW_QUOTE, response);
+    }
+
+    private Call promoteQuote(ContractServiceGrpc.ContractServiceFutureStub stub, String id) {
+        var response = stub.promoteQuote(PromoteQuoteRequest.newBuilder().setContractId(id).build());
+        onSuccess(response, promotion -> atWork.set((int) (promoted.getAndIncrement() % AT_WORK_SLOTS), id));
+        return new Call(Operation.PROMOTE_QUOTE, response);
+    }
+
+    private static Money euros(long units) {
+        return Money.newBuilder().setCurrencyCode("EUR").setUnits(units).build();
+    }
+
+    private static <T> void onSuccess(ListenableFuture<T> response, Consumer<T> action) {
+        Futures.addCallback(response, new FutureCallback<>() {
+            @Override
+            public void onSuccess(T result) {
+                action.accept(result);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                // counted by the load generator
+            }
+        }, MoreExecutors.directExecutor());
+    }
+}
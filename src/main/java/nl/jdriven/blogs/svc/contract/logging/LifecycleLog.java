@@ -0,0 +1,241 @@
+package nl.jdriven.blogs.svc.contract.logging;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Structured log of contract lifecycle events, written off the request thread.
+ * Logging an event only fills a preallocated slot of a ring buffer; a single background thread formats
+ * the slots as key=value lines and writes them. When the writer cannot keep up and the ring is full,
+ * events are dropped and counted instead of making the caller wait.
+ * Events below WARN can be sampled: with a sample rate of n, one in n of them is logged.
+ */
+public class LifecycleLog implements Closeable {
+    public enum Level {DEBUG, INFO, WARN, ERROR, OFF}
+
+    /**
+     * Logs nothing and has no thread.
+     */
+    public static final LifecycleLog OFF = new LifecycleLog(Level.OFF, 1, 2, null);
+
+    private static final String PREFIX = "contract.log.";
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private static final class Entry {
+        // sequence of the event in this slot once it is complete, written last
+        volatile long published = -1;
+        long timestampMillis;
+        Level level;
+        String event;
+        Object contractId;
+        String key1;
+        Object value1;
+        String key2;
+        Object value2;
+    }
+
+    private final Level level;
+    private final int sampleRate;
+    private final Entry[] ring;
+    private final int mask;
+    private final AtomicLong claimed = new AtomicLong();
+    // every slot before this sequence has been written out and may be reused
+    private volatile long consumed;
+    private final LongAdder dropped = new LongAdder();
+    private final Writer out;
+    private final Thread writer;
+    private volatile boolean closed;
+
+    /**
+     * @param sampleRate log one in this many events below WARN, 1 for all of them
+     * @param bufferSize number of events that can wait to be written, rounded up to a power of two
+     */
+    public LifecycleLog(Level level, int sampleRate, int bufferSize, Writer out) {
+        this.level = level;
+        this.sampleRate = Math.max(1, sampleRate);
+        int size = Integer.highestOneBit(Math.max(2, bufferSize) - 1) << 1;
+        ring = new Entry[size];
+        for (int i = 0; i < size; i++) {
+            ring[i] = new Entry();
+        }
+        mask = size - 1;
+        this.out = out;
+        if (level == Level.OFF) {
+            writer = null;
+        } else {
+            writer = new Thread(this::writeLoop, "lifecycle-log");
+            writer.setDaemon(true);
+            writer.start();
+        }
+    }
+
+    /**
+     * Settings: -Dcontract.log.level=DEBUG|INFO|WARN|ERROR|OFF (INFO), -Dcontract.log.sample=1,
+     * -Dcontract.log.buffer=8192; events go to standard out.
+     */
+    public static LifecycleLog fromSystemProperties() {
+        var level = Level.valueOf(System.getProperty(PREFIX + "level", Level.INFO.name()).toUpperCase());
+        if (level == Level.OFF) {
+            return OFF;
+        }
+        // not through System.out, its PrintStream synchronizes and flushes on every line
+        var stdout = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(FileDescriptor.out), StandardCharsets.UTF_8), 64 * 1024);
+        return new LifecycleLog(level, Integer.getInteger(PREFIX + "sample", 1), Integer.getInteger(PREFIX + "buffer", 8192), stdout);
+    }
+
+    public boolean isEnabled(Level level) {
+        return level.compareTo(this.level) >= 0 && level != Level.OFF;
+    }
+
+    public void log(Level level, String event, Object contractId) {
+        log(level, event, contractId, null, null, null, null);
+    }
+
+    public void log(Level level, String event, Object contractId, String key, Object value) {
+        log(level, event, contractId, key, value, null, null);
+    }
+
+    /**
+     * The contract id and the values are formatted later, on the writer thread, so they must not change anymore.
+     */
+    public void log(Level level, String event, Object contractId, String key1, Object value1, String key2, Object value2) {
+        if (!isEnabled(level) || (level.compareTo(Level.WARN) < 0 && sampleRate > 1
+                && ThreadLocalRandom.current().nextInt(sampleRate) != 0)) {
+            return;
+        }
+        long seq;
+        do {
+            seq = claimed.get();
+            if (seq - consumed >= ring.length) {
+                dropped.increment();
+                return;
+            }
+        } while (!claimed.compareAndSet(seq, seq + 1));
+        var entry = ring[(int) seq & mask];
+        entry.timestampMillis = System.currentTimeMillis();
+        entry.level = level;
+        entry.event = event;
+        entry.contractId = contractId;
+        entry.key1 = key1;
+        entry.value1 = value1;
+        entry.key2 = key2;
+        entry.value2 = value2;
+        entry.published = seq;
+    }
+
+    /**
+     * @return events that were lost because the ring was full.
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * Write out what is in the ring and stop the writer.
+     */
+    @Override
+    public void close() {
+        if (writer == null) {
+            return;
+        }
+        closed = true;
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeLoop() {
+        var line = new StringBuilder(256);
+        long next = consumed;
+        while (true) {
+            var entry = ring[(int) next & mask];
+            if (entry.published != next) {
+                flush();
+                // a claimed slot that is still being filled is written once it is published
+                if (closed && claimed.get() == next) {
+                    return;
+                }
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+                continue;
+            }
+            line.setLength(0);
+            format(entry, line);
+            entry.value1 = null;
+            entry.value2 = null;
+            next++;
+            consumed = next;
+            try {
+                out.append(line);
+            } catch (IOException e) {
+                // nowhere left to report it, keep the ring moving
+            }
+        }
+    }
+
+    private void flush() {
+        try {
+            out.flush();
+        } catch (IOException e) {
+            // see writeLoop
+        }
+    }
+
+    private static void format(Entry entry, StringBuilder line) {
+        line.append(Instant.ofEpochMilli(entry.timestampMillis)).append(' ')
+                .append(entry.level).append(' ')
+                .append(entry.event);
+        // events of the store as a whole have none
+        if (entry.contractId != null) {
+            field(line, "contractId", entry.contractId);
+        }
+        if (entry.key1 != null) {
+            field(line, entry.key1, entry.value1);
+        }
+        if (entry.key2 != null) {
+            field(line, entry.key2, entry.value2);
+        }
+        line.append('\n');
+    }
+
+    private static void field(StringBuilder line, String key, Object value) {
+        line.append(' ').append(key).append('=');
+        var text = String.valueOf(value);
+        boolean quote = text.isEmpty();
+        for (int i = 0; i < text.length() && !quote; i++) {
+            char c = text.charAt(i);
+            quote = c <= ' ' || c == '"' || c == '=' || c == '\\';
+        }
+        if (!quote) {
+            line.append(text);
+            return;
+        }
+        line.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                line.append('\\').append(c);
+            } else if (c == '\n') {
+                line.append("\\n");
+            } else if (c == '\r') {
+                line.append("\\r");
+            } else {
+                line.append(c);
+            }
+        }
+        line.append('"');
+    }
+}
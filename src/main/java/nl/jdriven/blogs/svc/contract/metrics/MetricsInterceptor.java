@@ -0,0 +1,73 @@
+package nl.jdriven.blogs.svc.contract.metrics;
+
+import io.grpc.ForwardingServerCall;
+import io.grpc.ForwardingServerCallListener;
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.Status;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * Records start, status code and latency of every call in the {@link MetricsRegistry}.
+ * A call is done when the server sends its status, or when the client cancels it before that.
+ */
+public class MetricsInterceptor implements ServerInterceptor {
+    private final MetricsRegistry registry;
+
+    public MetricsInterceptor(MetricsRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers,
+                                                                 ServerCallHandler<ReqT, RespT> next) {
+        var metrics = registry.rpc(call.getMethodDescriptor().getFullMethodName());
+        var monitored = new MonitoredCall<>(call, metrics);
+        ServerCall.Listener<ReqT> listener;
+        try {
+            listener = next.startCall(monitored, headers);
+        } catch (RuntimeException e) {
+            monitored.finish(Status.Code.UNKNOWN);
+            throw e;
+        }
+        return new ForwardingServerCallListener.SimpleForwardingServerCallListener<>(listener) {
+            @Override
+            public void onCancel() {
+                monitored.finish(Status.Code.CANCELLED);
+                super.onCancel();
+            }
+        };
+    }
+
+    private static final class MonitoredCall<ReqT, RespT> extends ForwardingServerCall.SimpleForwardingServerCall<ReqT, RespT> {
+        @SuppressWarnings("rawtypes")
+        private static final AtomicIntegerFieldUpdater<MonitoredCall> FINISHED =
+                AtomicIntegerFieldUpdater.newUpdater(MonitoredCall.class, "finished");
+
+        private final RpcMetrics metrics;
+        private final long startNanos = System.nanoTime();
+        private volatile int finished;
+
+        MonitoredCall(ServerCall<ReqT, RespT> call, RpcMetrics metrics) {
+            super(call);
+            this.metrics = metrics;
+            metrics.started();
+        }
+
+        @Override
+        public void close(Status status, Metadata trailers) {
+            finish(status.getCode());
+            super.close(status, trailers);
+        }
+
+        void finish(Status.Code code) {
+            // close and cancel can both happen, the first one counts
+            if (FINISHED.compareAndSet(this, 0, 1)) {
+                metrics.finished(code, System.nanoTime() - startNanos);
+            }
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package nl.jdriven.blogs.svc.contract.metrics;
+
+import io.grpc.Status;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.LongSupplier;
+
+/**
+ * All metrics of the server, written in the Prometheus text format on every scrape.
+ * Latency quantiles are over the calls since the previous scrape, counts are totals since startup.
+ */
+public class MetricsRegistry {
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private static class Gauge {
+        final String name;
+        final String help;
+        final LongSupplier value;
+
+        Gauge(String name, String help, LongSupplier value) {
+            this.name = name;
+            this.help = help;
+            this.value = value;
+        }
+    }
+
+    private final ConcurrentHashMap<String, RpcMetrics> rpcs = new ConcurrentHashMap<>();
+    private final List<Gauge> gauges = new CopyOnWriteArrayList<>();
+
+    /**
+     * @return the metrics of the method, created on the first call.
+     */
+    public RpcMetrics rpc(String fullMethodName) {
+        // get first: computeIfAbsent may lock the bin even when the key is present
+        var metrics = rpcs.get(fullMethodName);
+        return metrics != null ? metrics : rpcs.computeIfAbsent(fullMethodName, RpcMetrics::new);
+    }
+
+    /**
+     * Publish a value that is read at every scrape.
+     */
+    public void gauge(String name, String help, LongSupplier value) {
+        gauges.add(new Gauge(name, help, value));
+    }
+
+    public String scrape() {
+        var sb = new StringBuilder(4096);
+        // sorted, so a scrape is easy to read and compare
+        Map<String, RpcMetrics> sorted = new TreeMap<>(rpcs);
+        var all = new ArrayList<>(sorted.values());
+
+        family(sb, "grpc_server_started_total", "counter", "RPCs started by the server.");
+        for (var m : all) {
+            sample(sb, "grpc_server_started_total", m, null, m.getStarted());
+        }
+        family(sb, "grpc_server_handled_total", "counter", "RPCs completed by the server, by status code.");
+        for (var m : all) {
+            for (var code : Status.Code.values()) {
+                long count = m.getHandled(code);
+                if (count > 0) {
+                    sample(sb, "grpc_server_handled_total", m, "code=\"" + code + "\"", count);
+                }
+            }
+        }
+        family(sb, "grpc_server_in_flight", "gauge", "RPCs started but not completed.");
+        for (var m : all) {
+            sample(sb, "grpc_server_in_flight", m, null, m.getInFlight());
+        }
+        family(sb, "grpc_server_handling_seconds", "summary", "Time from the start of an RPC until its status is sent.");
+        for (var m : all) {
+            var histogram = m.latencySinceLastScrape();
+            long count = 0;
+            for (var code : Status.Code.values()) {
+                count += m.getHandled(code);
+            }
+            for (double q : QUANTILES) {
+                sb.append("grpc_server_handling_seconds{method=\"").append(m.getMethod())
+                        .append("\",quantile=\"").append(q).append("\"} ")
+                        .append(histogram.getValueAtPercentile(q * 100) / 1e6).append('\n');
+            }
+            sb.append("grpc_server_handling_seconds_sum{method=\"").append(m.getMethod()).append("\"} ")
+                    .append(m.getLatencyMicrosSum() / 1e6).append('\n');
+            sample(sb, "grpc_server_handling_seconds_count", m, null, count);
+        }
+        for (var gauge : gauges) {
+            family(sb, gauge.name, "gauge", gauge.help);
+            sb.append(gauge.name).append(' ').append(gauge.value.getAsLong()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static void family(StringBuilder sb, String name, String type, String help) {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder sb, String name, RpcMetrics m, String extraLabel, long value) {
+        sb.append(name).append("{method=\"").append(m.getMethod()).append('"');
+        if (extraLabel != null) {
+            sb.append(',').append(extraLabel);
+        }
+        sb.append("} ").append(value).append('\n');
+    }
+}
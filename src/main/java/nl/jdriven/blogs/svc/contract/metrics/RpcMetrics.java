@@ -0,0 +1,76 @@
+package nl.jdriven.blogs.svc.contract.metrics;
+
+import io.grpc.Status;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latency histogram of one gRPC method. Recording is lock-free and allocates nothing:
+ * LongAdders for the counts and an HdrHistogram Recorder, which is read and reset by the scrape
+ * without stopping the callers.
+ */
+public class RpcMetrics {
+    // slower calls are recorded as this, an HdrHistogram has a fixed range
+    private static final long HIGHEST_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+    private final String method;
+    private final LongAdder started = new LongAdder();
+    private final LongAdder inFlight = new LongAdder();
+    // indexed by Status.Code.value()
+    private final LongAdder[] handled = new LongAdder[Status.Code.values().length];
+    private final LongAdder latencyMicrosSum = new LongAdder();
+    private final Recorder latencyMicros = new Recorder(HIGHEST_MICROS, 3);
+    // only touched by the scrape
+    private Histogram interval;
+
+    RpcMetrics(String method) {
+        this.method = method;
+        for (int i = 0; i < handled.length; i++) {
+            handled[i] = new LongAdder();
+        }
+    }
+
+    void started() {
+        started.increment();
+        inFlight.increment();
+    }
+
+    void finished(Status.Code code, long nanos) {
+        inFlight.decrement();
+        handled[code.value()].increment();
+        long micros = Math.min(TimeUnit.NANOSECONDS.toMicros(nanos), HIGHEST_MICROS);
+        latencyMicrosSum.add(micros);
+        latencyMicros.recordValue(micros);
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public long getStarted() {
+        return started.sum();
+    }
+
+    public long getInFlight() {
+        return inFlight.sum();
+    }
+
+    public long getHandled(Status.Code code) {
+        return handled[code.value()].sum();
+    }
+
+    public long getLatencyMicrosSum() {
+        return latencyMicrosSum.sum();
+    }
+
+    /**
+     * @return latencies recorded since the previous call, the returned histogram is reused by the next call.
+     */
+    synchronized Histogram latencySinceLastScrape() {
+        interval = latencyMicros.getIntervalHistogram(interval);
+        return interval;
+    }
+}
@@ -0,0 +1,122 @@
+package nl.jdriven.blogs.svc.contract.model.event;
+
+import nl.jdriven.blogs.svc.contract.model.main.Amount;
+import nl.jdriven.blogs.svc.contract.model.main.Contract;
+import nl.jdriven.blogs.svc.contract.model.main.ContractId;
+import nl.jdriven.blogs.svc.contract.model.main.WorkDone;
+
+/**
+ * A single change in the life of a contract. Applying all events of a contract in order
+ * rebuilds the contract, which is what the persistent repository does at startup.
+ */
+public final class ContractEvent {
+    public enum Type {QUOTE_CREATED, PROMOTED, WORK_ADDED, FINALIZED, ABANDONED, EVICTED}
+
+    private final Type type;
+    private final ContractId contractId;
+    // only for QUOTE_CREATED
+    private final String fullNameOfCustomer;
+    private final Amount quotedPrice;
+    private final String descriptionOfWorkRequested;
+    // only for WORK_ADDED
+    private final WorkDone workDone;
+
+    private ContractEvent(Type type, ContractId contractId, String fullNameOfCustomer, Amount quotedPrice,
+                          String descriptionOfWorkRequested, WorkDone workDone) {
+        this.type = type;
+        this.contractId = contractId;
+        this.fullNameOfCustomer = fullNameOfCustomer;
+        this.quotedPrice = quotedPrice;
+        this.descriptionOfWorkRequested = descriptionOfWorkRequested;
+        this.workDone = workDone;
+    }
+
+    public static ContractEvent quoteCreated(ContractId contractId, String fullNameOfCustomer, Amount quotedPrice,
+                                             String descriptionOfWorkRequested) {
+        return new ContractEvent(Type.QUOTE_CREATED, contractId, fullNameOfCustomer, quotedPrice,
+                descriptionOfWorkRequested, null);
+    }
+
+    public static ContractEvent quoteCreated(Contract c) {
+        return quoteCreated(c.getId(), c.getFullNameOfCustomer(), c.getQuotedPrice(), c.getDescriptionOfWorkRequested());
+    }
+
+    public static ContractEvent promoted(ContractId contractId) {
+        return new ContractEvent(Type.PROMOTED, contractId, null, null, null, null);
+    }
+
+    public static ContractEvent workAdded(ContractId contractId, WorkDone workDone) {
+        return new ContractEvent(Type.WORK_ADDED, contractId, null, null, null, workDone);
+    }
+
+    public static ContractEvent finalized(ContractId contractId) {
+        return new ContractEvent(Type.FINALIZED, contractId, null, null, null, null);
+    }
+
+    public static ContractEvent abandoned(ContractId contractId) {
+        return new ContractEvent(Type.ABANDONED, contractId, null, null, null, null);
+    }
+
+    /**
+     * The contract is removed from storage; it ends the life of the contract, and is not applied to it.
+     */
+    public static ContractEvent evicted(ContractId contractId) {
+        return new ContractEvent(Type.EVICTED, contractId, null, null, null, null);
+    }
+
+    /**
+     * @return the contract as it is right after a QUOTE_CREATED event.
+     */
+    public Contract toContract() {
+        if (type != Type.QUOTE_CREATED) {
+            throw new IllegalStateException("Only a created quote starts a contract, not " + type);
+        }
+        return new Contract(contractId, quotedPrice, descriptionOfWorkRequested, fullNameOfCustomer);
+    }
+
+    /**
+     * Change the contract according to this event; the caller must hold the contract's update lock.
+     */
+    public void applyTo(Contract c) {
+        switch (type) {
+            case PROMOTED:
+                c.setStatus(Contract.Status.ATWORK);
+                break;
+            case WORK_ADDED:
+                c.addWorkDone(workDone);
+                break;
+            case FINALIZED:
+                c.setStatus(Contract.Status.FINALIZED);
+                break;
+            case ABANDONED:
+                c.setStatus(Contract.Status.ABANDONED);
+                break;
+            default:
+                throw new IllegalStateException("Cannot apply " + type + " to an existing contract");
+        }
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public ContractId getContractId() {
+        return contractId;
+    }
+
+    public String getFullNameOfCustomer() {
+        return fullNameOfCustomer;
+    }
+
+    public Amount getQuotedPrice() {
+        return quotedPrice;
+    }
+
+    public String getDescriptionOfWorkRequested() {
+        return descriptionOfWorkRequested;
+    }
+
+    public WorkDone getWorkDone() {
+        return workDone;
+    }
+}
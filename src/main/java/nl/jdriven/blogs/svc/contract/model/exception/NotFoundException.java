@@ -1,4 +1,13 @@
 package nl.jdriven.blogs.svc.contract.model.exception;
 
+/**
+ * Thrown for unknown ids, which clients can send at a high rate; it has no stack trace and
+ * no suppressed exceptions, so it is cheap to create and {@link #INSTANCE} can be shared.
+ */
 public class NotFoundException extends RuntimeException {
+    public static final NotFoundException INSTANCE = new NotFoundException();
+
+    public NotFoundException() {
+        super(null, null, false, false);
+    }
 }
@@ -3,22 +3,59 @@ package nl.jdriven.blogs.svc.contract.model.exception;
 import java.util.Arrays;
 import java.util.stream.Stream;
 
+/**
+ * One or more conditions of a request are not met. Like {@link NotFoundException} it has no stack trace,
+ * and as it cannot be changed an instance for a fixed condition can be created once and thrown again and again.
+ */
 public class PreConditionNotMetException extends RuntimeException {
-    private String[] conditionFailures;
+    private final String[] conditionFailures;
+    // the request field each failure is about, null for a failure that is not about a single field
+    private final String[] fields;
+    private final String conditionFailuresAsString;
 
     public PreConditionNotMetException(String... conditionFailures) {
-        this.conditionFailures = conditionFailures;
+        this(new String[conditionFailures.length], conditionFailures);
     }
 
     public PreConditionNotMetException(String conditionFailures) {
-                this.conditionFailures = conditionFailures.split(";");
+        this(conditionFailures.split(";"));
+    }
+
+    /**
+     * @param fields the request field of each failure, or null
+     */
+    public PreConditionNotMetException(String[] fields, String[] conditionFailures) {
+        super(null, null, false, false);
+        this.conditionFailures = conditionFailures;
+        this.fields = fields;
+        this.conditionFailuresAsString = String.join(";", conditionFailures);
     }
 
     public Stream<String> getConditionFailures() {
         return Arrays.stream(conditionFailures);
     }
 
+    public int getConditionFailureCount() {
+        return conditionFailures.length;
+    }
+
+    public String getConditionFailure(int i) {
+        return conditionFailures[i];
+    }
+
+    /**
+     * @return the request field of the i-th failure, null when it is not about a field.
+     */
+    public String getField(int i) {
+        return fields[i];
+    }
+
     public String getConditionFailuresAsString() {
-        return String.join(";", conditionFailures);
+        return conditionFailuresAsString;
+    }
+
+    @Override
+    public String getMessage() {
+        return conditionFailuresAsString;
     }
 }
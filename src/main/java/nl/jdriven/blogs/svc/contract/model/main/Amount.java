@@ -0,0 +1,167 @@
+package nl.jdriven.blogs.svc.contract.model.main;
+
+import java.util.Currency;
+import java.util.Objects;
+
+/**
+ * An amount of money as a whole number of minor units (cents for EUR) of a currency.
+ * All arithmetic is exact long arithmetic and fails on overflow instead of rounding or wrapping.
+ * The units/nanos accessors match the google.type.Money representation, so converting from and
+ * to the wire format is plain integer arithmetic.
+ */
+public final class Amount implements Comparable<Amount> {
+    public static final Currency EUR = Currency.getInstance("EUR");
+    public static final Amount ZERO = new Amount(0, EUR);
+
+    private static final int NANOS_PER_UNIT = 1_000_000_000;
+    private static final long[] POWERS_OF_TEN = {1, 10, 100, 1_000, 10_000, 100_000, 1_000_000, 10_000_000, 100_000_000, 1_000_000_000};
+
+    private final long minorUnits;
+    private final Currency currency;
+
+    private Amount(long minorUnits, Currency currency) {
+        this.minorUnits = minorUnits;
+        this.currency = currency;
+    }
+
+    public static Amount ofMinorUnits(long minorUnits) {
+        return ofMinorUnits(minorUnits, EUR);
+    }
+
+    public static Amount ofMinorUnits(long minorUnits, Currency currency) {
+        if (minorUnits == 0 && currency == EUR) {
+            return ZERO;
+        }
+        return new Amount(minorUnits, Objects.requireNonNull(currency));
+    }
+
+    /**
+     * @return whole units of EUR, e.g. 25 for 25.00
+     */
+    public static Amount ofUnits(long units) {
+        return ofMinorUnits(Math.multiplyExact(units, minorUnitsPerUnit(EUR)), EUR);
+    }
+
+    /**
+     * Whether units and nanos as in google.type.Money are an amount of the currency without rounding:
+     * nanos in range, with the sign of the units, no fraction smaller than the minor unit and no overflow.
+     */
+    public static boolean isRepresentable(long units, int nanos, Currency currency) {
+        if (nanos <= -NANOS_PER_UNIT || nanos >= NANOS_PER_UNIT || (units > 0 && nanos < 0) || (units < 0 && nanos > 0)) {
+            return false;
+        }
+        long perUnit = minorUnitsPerUnit(currency);
+        if (nanos % (NANOS_PER_UNIT / perUnit) != 0) {
+            return false;
+        }
+        long limit = (Long.MAX_VALUE - NANOS_PER_UNIT) / perUnit;
+        return units <= limit && units >= -limit;
+    }
+
+    /**
+     * @throws ArithmeticException when not {@link #isRepresentable(long, int, Currency) representable}
+     */
+    public static Amount ofUnitsAndNanos(long units, int nanos, Currency currency) {
+        if (!isRepresentable(units, nanos, currency)) {
+            throw new ArithmeticException(units + " units and " + nanos + " nanos is not an amount of " + currency);
+        }
+        long perUnit = minorUnitsPerUnit(currency);
+        return ofMinorUnits(units * perUnit + nanos / (NANOS_PER_UNIT / perUnit), currency);
+    }
+
+    public long getMinorUnits() {
+        return minorUnits;
+    }
+
+    public Currency getCurrency() {
+        return currency;
+    }
+
+    /**
+     * @return the integral part, as google.type.Money units
+     */
+    public long getUnits() {
+        return minorUnits / minorUnitsPerUnit(currency);
+    }
+
+    /**
+     * @return the fraction in billionths with the sign of the amount, as google.type.Money nanos
+     */
+    public int getNanos() {
+        long perUnit = minorUnitsPerUnit(currency);
+        return (int) (minorUnits % perUnit * (NANOS_PER_UNIT / perUnit));
+    }
+
+    public Amount plus(Amount other) {
+        return ofMinorUnits(Math.addExact(minorUnits, sameCurrency(other).minorUnits), currency);
+    }
+
+    public Amount minus(Amount other) {
+        return ofMinorUnits(Math.subtractExact(minorUnits, sameCurrency(other).minorUnits), currency);
+    }
+
+    public boolean isNegative() {
+        return minorUnits < 0;
+    }
+
+    @Override
+    public int compareTo(Amount other) {
+        return Long.compare(minorUnits, sameCurrency(other).minorUnits);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Amount)) {
+            return false;
+        }
+        var other = (Amount) o;
+        return minorUnits == other.minorUnits && currency.equals(other.currency);
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(minorUnits) * 31 + currency.hashCode();
+    }
+
+    /**
+     * @return e.g. "-12.05 EUR"
+     */
+    @Override
+    public String toString() {
+        int digits = fractionDigits(currency);
+        var sb = new StringBuilder(24);
+        if (minorUnits < 0) {
+            sb.append('-');
+        }
+        long perUnit = POWERS_OF_TEN[digits];
+        sb.append(Math.abs(minorUnits / perUnit));
+        if (digits > 0) {
+            var fraction = Long.toString(Math.abs(minorUnits % perUnit));
+            sb.append('.');
+            for (int i = fraction.length(); i < digits; i++) {
+                sb.append('0');
+            }
+            sb.append(fraction);
+        }
+        return sb.append(' ').append(currency.getCurrencyCode()).toString();
+    }
+
+    private Amount sameCurrency(Amount other) {
+        if (!currency.equals(other.currency)) {
+            throw new IllegalArgumentException("Cannot combine " + currency + " with " + other.currency);
+        }
+        return other;
+    }
+
+    private static long minorUnitsPerUnit(Currency currency) {
+        return POWERS_OF_TEN[fractionDigits(currency)];
+    }
+
+    // pseudo currencies have no minor unit (-1)
+    private static int fractionDigits(Currency currency) {
+        return Math.max(0, currency.getDefaultFractionDigits());
+    }
+}
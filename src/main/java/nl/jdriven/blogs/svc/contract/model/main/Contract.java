@@ -1,31 +1,37 @@
 package nl.jdriven.blogs.svc.contract.model.main;
 
-import org.apache.commons.lang3.builder.ToStringBuilder;
-import org.apache.commons.lang3.builder.ToStringStyle;
-
-import java.math.BigDecimal;
-import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
+/**
+ * A contract can be read by any thread at any time; changes are made by one thread at a time
+ * through the ContractRepository, so the fields that change are safely published for the readers.
+ */
 public class Contract {
     public static enum Status {QUOTE, ATWORK, FINALIZED, ABANDONED}
 
-    private Status status = Status.QUOTE;
-    private final String id;
-    private final BigDecimal quotedPrice;
+    private volatile Status status = Status.QUOTE;
+    // number of changes applied, the created quote is version 1
+    private volatile long version = 1;
+    private final ContractId id;
+    private final Amount quotedPrice;
     private final String descriptionOfWorkRequested;
     private final String fullNameOfCustomer;
-    private final List<WorkDone> workDone = new ArrayList<>();
+    // readers (find, finalize) get a stable snapshot while work is being added
+    private final List<WorkDone> workDone = new CopyOnWriteArrayList<>();
+    // sum of the cost of all work done, in minor units of the quoted price, kept up to date with every addition
+    private volatile long totalCostOfWork;
 
-    public Contract(String id, BigDecimal quotedPrice, String descriptionOfWorkRequested, String fullNameOfCustomer) {
+    public Contract(ContractId id, Amount quotedPrice, String descriptionOfWorkRequested, String fullNameOfCustomer) {
         this.id = id;
         this.quotedPrice = quotedPrice;
         this.descriptionOfWorkRequested = descriptionOfWorkRequested;
         this.fullNameOfCustomer = fullNameOfCustomer;
     }
 
-    public String getId() {
+    public ContractId getId() {
         return id;
     }
 
@@ -37,7 +43,15 @@ public class Contract {
         this.status = status;
     }
 
-    public BigDecimal getQuotedPrice() {
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    public Amount getQuotedPrice() {
         return quotedPrice;
     }
 
@@ -53,11 +67,51 @@ public class Contract {
         return Collections.unmodifiableList(workDone);
     }
 
+    /**
+     * Total cost of the work done so far, without going over the work.
+     */
+    public Amount getTotalCostOfWork() {
+        return Amount.ofMinorUnits(totalCostOfWork, quotedPrice.getCurrency());
+    }
+
+    /**
+     * Quoted price minus the total cost of the work done so far; the profit made once finalized.
+     */
+    public Amount getProfit() {
+        return Amount.ofMinorUnits(Math.subtractExact(quotedPrice.getMinorUnits(), totalCostOfWork), quotedPrice.getCurrency());
+    }
+
     public void addWorkDone(WorkDone work) {
+        long total = Math.addExact(totalCostOfWork, costInMinorUnits(work));
         workDone.add(work);
+        totalCostOfWork = total;
+    }
+
+    public void addAllWorkDone(Collection<WorkDone> work) {
+        long total = totalCostOfWork;
+        for (var w : work) {
+            total = Math.addExact(total, costInMinorUnits(w));
+        }
+        workDone.addAll(work);
+        totalCostOfWork = total;
+    }
+
+    private long costInMinorUnits(WorkDone work) {
+        var cost = work.getCostOfWork();
+        if (!cost.getCurrency().equals(quotedPrice.getCurrency())) {
+            throw new IllegalArgumentException("Cost of work in " + cost.getCurrency() + " for a contract in " + quotedPrice.getCurrency());
+        }
+        return cost.getMinorUnits();
     }
 
     public String toString() {
-        return ToStringBuilder.reflectionToString(this, ToStringStyle.MULTI_LINE_STYLE);
+        return "Contract{id=" + id
+                + ", status=" + status
+                + ", version=" + version
+                + ", fullNameOfCustomer=" + fullNameOfCustomer
+                + ", quotedPrice=" + quotedPrice
+                + ", descriptionOfWorkRequested=" + descriptionOfWorkRequested
+                + ", workDone=" + workDone
+                + '}';
     }
 }
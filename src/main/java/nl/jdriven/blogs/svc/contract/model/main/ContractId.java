@@ -0,0 +1,157 @@
+package nl.jdriven.blogs.svc.contract.model.main;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Id of a contract: 128 bits in two longs, with the layout of a version 7 UUID. The first 48 bits are the
+ * creation time in milliseconds, followed by a 12 bit sequence that keeps ids from one process strictly
+ * increasing, and 62 random bits. So new ids sort after older ones, which keeps appends to ordered
+ * structures at the end, and generating one never blocks: the random part comes from ThreadLocalRandom
+ * instead of SecureRandom. Ids are unique, not secret.
+ * <p>
+ * The string form is the usual 36 character UUID form, which is only used at the boundaries (API, cursors);
+ * any UUID string is accepted, so ids created before as random UUIDs stay valid.
+ */
+public final class ContractId implements Comparable<ContractId> {
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    // time in milliseconds << 12 | sequence of the last id generated
+    private static final AtomicLong lastTimeAndSequence = new AtomicLong();
+
+    private final long high;
+    private final long low;
+
+    private ContractId(long high, long low) {
+        this.high = high;
+        this.low = low;
+    }
+
+    public static ContractId of(long high, long low) {
+        return new ContractId(high, low);
+    }
+
+    /**
+     * @return a new id, greater than every id generated before by this process.
+     */
+    public static ContractId next() {
+        long now = System.currentTimeMillis() << 12;
+        long last;
+        long next;
+        do {
+            last = lastTimeAndSequence.get();
+            // when the sequence of this millisecond runs out the time runs ahead a bit, which keeps the order
+            next = Math.max(now, last + 1);
+        } while (!lastTimeAndSequence.compareAndSet(last, next));
+        long time = next >>> 12;
+        long sequence = next & 0xfff;
+        long high = time << 16 | 0x7000L | sequence;
+        long low = ThreadLocalRandom.current().nextLong() & 0x3fffffffffffffffL | 0x8000000000000000L;
+        return new ContractId(high, low);
+    }
+
+    /**
+     * @return the id in the string, or null when it is not a UUID string.
+     */
+    public static ContractId parse(String s) {
+        if (s == null || s.length() != 36 || s.charAt(8) != '-' || s.charAt(13) != '-' || s.charAt(18) != '-' || s.charAt(23) != '-') {
+            return null;
+        }
+        long high = 0;
+        long low = 0;
+        for (int i = 0; i < 36; i++) {
+            if (i == 8 || i == 13 || i == 18 || i == 23) {
+                continue;
+            }
+            int digit = hexDigit(s.charAt(i));
+            if (digit < 0) {
+                return null;
+            }
+            if (i < 19) {
+                high = high << 4 | digit;
+            } else {
+                low = low << 4 | digit;
+            }
+        }
+        return new ContractId(high, low);
+    }
+
+    public long getHigh() {
+        return high;
+    }
+
+    public long getLow() {
+        return low;
+    }
+
+    /**
+     * @return creation time in milliseconds since the epoch, for ids generated by {@link #next()}.
+     */
+    public long getTimestampMillis() {
+        return high >>> 16;
+    }
+
+    /**
+     * @return false for an id created as a random UUID, which has no creation time.
+     */
+    public boolean hasTimestamp() {
+        return (high >>> 12 & 0xf) == 7;
+    }
+
+    /**
+     * Ordered like the string forms, which is the order of creation for generated ids.
+     */
+    @Override
+    public int compareTo(ContractId other) {
+        int c = Long.compareUnsigned(high, other.high);
+        return c != 0 ? c : Long.compareUnsigned(low, other.low);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ContractId)) {
+            return false;
+        }
+        var other = (ContractId) o;
+        return high == other.high && low == other.low;
+    }
+
+    /**
+     * The low half is mostly random, folding it with the high half gives a well spread hash without further mixing.
+     */
+    @Override
+    public int hashCode() {
+        long h = high ^ low;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        var chars = new char[36];
+        int pos = 0;
+        for (int i = 0; i < 32; i++) {
+            if (i == 8 || i == 12 || i == 16 || i == 20) {
+                chars[pos++] = '-';
+            }
+            long half = i < 16 ? high : low;
+            chars[pos++] = HEX[(int) (half >>> (60 - 4 * (i & 15))) & 0xf];
+        }
+        return new String(chars);
+    }
+
+    // only ASCII, Character.digit also takes digits of other scripts
+    private static int hexDigit(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        }
+        if (c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+        }
+        return -1;
+    }
+}
@@ -1,20 +1,15 @@
 package nl.jdriven.blogs.svc.contract.model.main;
 
-import org.apache.commons.lang3.builder.ToStringBuilder;
-import org.apache.commons.lang3.builder.ToStringStyle;
-
-import java.math.BigDecimal;
-
 public class WorkDone {
-    private final BigDecimal costOfWork;
+    private final Amount costOfWork;
     private final String descriptionOfWorkDone;
 
-    public WorkDone(BigDecimal costOfWork, String descriptionOfWorkDone) {
+    public WorkDone(Amount costOfWork, String descriptionOfWorkDone) {
         this.costOfWork = costOfWork;
         this.descriptionOfWorkDone = descriptionOfWorkDone;
     }
 
-    public BigDecimal getCostOfWork() {
+    public Amount getCostOfWork() {
         return costOfWork;
     }
 
@@ -23,6 +18,6 @@ public class WorkDone {
     }
 
     public String toString() {
-        return ToStringBuilder.reflectionToString(this, ToStringStyle.MULTI_LINE_STYLE);
+        return "WorkDone{costOfWork=" + costOfWork + ", descriptionOfWorkDone=" + descriptionOfWorkDone + '}';
     }
 }
@@ -0,0 +1,77 @@
+package nl.jdriven.blogs.svc.contract.repository;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Fixed-width columns in direct (off-heap) buffers. Rows are stored in chunks of a fixed number of rows,
+ * and within a chunk every column is one contiguous region, so a scan over one column reads memory in order.
+ * Chunks are added as rows are written and never move, so there is no copying when the table grows.
+ * Only one thread may write at a time; readers may read concurrently, without locking, the rows that
+ * were published to them by the writer.
+ */
+final class ColumnChunks {
+    private final int rowsPerChunk;
+    private final int[] widths;
+    // start of every column inside a chunk
+    private final int[] offsets;
+    private final int chunkBytes;
+    private volatile ByteBuffer[] chunks = new ByteBuffer[0];
+
+    /**
+     * @param widths width in bytes of every column, 4 or 8
+     */
+    ColumnChunks(int rowsPerChunk, int... widths) {
+        this.rowsPerChunk = rowsPerChunk;
+        this.widths = widths.clone();
+        offsets = new int[widths.length];
+        int offset = 0;
+        for (int i = 0; i < widths.length; i++) {
+            offsets[i] = offset;
+            offset += widths[i] * rowsPerChunk;
+        }
+        chunkBytes = offset;
+    }
+
+    long getLong(long row, int column) {
+        return chunk(row).getLong(position(row, column));
+    }
+
+    int getInt(long row, int column) {
+        return chunk(row).getInt(position(row, column));
+    }
+
+    void putLong(long row, int column, long value) {
+        writableChunk(row).putLong(position(row, column), value);
+    }
+
+    void putInt(long row, int column, int value) {
+        writableChunk(row).putInt(position(row, column), value);
+    }
+
+    long offHeapBytes() {
+        return (long) chunks.length * chunkBytes;
+    }
+
+    private ByteBuffer chunk(long row) {
+        return chunks[(int) (row / rowsPerChunk)];
+    }
+
+    private int position(long row, int column) {
+        return offsets[column] + (int) (row % rowsPerChunk) * widths[column];
+    }
+
+    private ByteBuffer writableChunk(long row) {
+        int index = (int) (row / rowsPerChunk);
+        var current = chunks;
+        if (index >= current.length) {
+            var grown = Arrays.copyOf(current, index + 1);
+            for (int i = current.length; i <= index; i++) {
+                grown[i] = ByteBuffer.allocateDirect(chunkBytes);
+            }
+            chunks = grown;
+            current = grown;
+        }
+        return current[index];
+    }
+}
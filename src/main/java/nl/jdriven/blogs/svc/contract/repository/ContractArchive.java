@@ -0,0 +1,428 @@
+package nl.jdriven.blogs.svc.contract.repository;
+
+import nl.jdriven.blogs.svc.contract.model.main.Amount;
+import nl.jdriven.blogs.svc.contract.model.main.Contract;
+import nl.jdriven.blogs.svc.contract.model.main.ContractId;
+import nl.jdriven.blogs.svc.contract.model.main.WorkDone;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Currency;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Archive of FINALIZED contracts, which never change anymore. They are kept off the heap, in columns
+ * ({@link ColumnChunks}) of one row per contract and one row per work item, with all strings in a
+ * {@link StringDictionary}, so repeated names and descriptions are stored once. Per contract the heap
+ * only holds a slot in the id lookup table and an entry in the sorted order, a few bytes instead
+ * of the object graph of a {@link Contract}; the old generation no longer fills up with contracts that
+ * are done, which keeps garbage collection pauses short.
+ * <p>
+ * Contracts are read back as new, detached {@link Contract} objects. Scans in index key order
+ * (see {@link ContractIndex}) read a sorted array of rows plus a small sorted map of the rows added
+ * since the array was built, which is merged into it once it reaches a fraction of the archive. The merge runs on
+ * a background thread, so adding a contract never waits for it; rows added meanwhile go to a new map.
+ * Contracts are added by one thread at a time; reads never lock.
+ */
+class ContractArchive implements ContractArchiveMXBean {
+    private static final int CONTRACT_CHUNK_ROWS = 4096;
+    private static final int WORK_CHUNK_ROWS = 16384;
+    private static final int MINIMUM_RECENT = 4096;
+    private static final ExecutorService ordersMerger = Executors.newSingleThreadExecutor(r -> {
+        var t = new Thread(r, "archive-orders");
+        t.setDaemon(true);
+        return t;
+    });
+    // contract columns
+    private static final int ID_HIGH = 0;
+    private static final int ID_LOW = 1;
+    private static final int VERSION = 2;
+    private static final int PRICE = 3;
+    private static final int FIRST_WORK = 4;
+    private static final int PRICE_CURRENCY = 5;
+    private static final int CUSTOMER = 6;
+    private static final int DESCRIPTION = 7;
+    private static final int WORK_COUNT = 8;
+    // sum of the work costs, so totals only read the contract columns
+    private static final int COST_OF_WORK = 9;
+    // work columns
+    private static final int COST = 0;
+    private static final int COST_CURRENCY = 1;
+    private static final int WORK_DESCRIPTION = 2;
+
+    // totals of archived rows by currency code, and customer code, of one thread
+    private static final class ColumnTotals {
+        static final class CurrencyColumns {
+            long count;
+            final WideSum quoted = new WideSum();
+            final WideSum costOfWork = new WideSum();
+        }
+
+        CurrencyColumns[] byCurrency = new CurrencyColumns[0];
+        long workItems;
+        // profit in minor units by customer code << 32 | currency code, null when not by customer
+        final Map<Long, WideSum> profitByCustomer;
+
+        ColumnTotals(boolean byCustomer) {
+            profitByCustomer = byCustomer ? new HashMap<>() : null;
+        }
+
+        void add(int currency, long quoted, long costOfWork, int workCount, int customer) {
+            var t = currencyColumns(currency);
+            t.count++;
+            t.quoted.add(quoted);
+            t.costOfWork.add(costOfWork);
+            workItems += workCount;
+            if (profitByCustomer != null) {
+                profitByCustomer.computeIfAbsent((long) customer << 32 | currency, k -> new WideSum())
+                        .add(quoted).subtract(costOfWork);
+            }
+        }
+
+        void merge(ColumnTotals other) {
+            for (int code = 0; code < other.byCurrency.length; code++) {
+                var o = other.byCurrency[code];
+                if (o != null) {
+                    var t = currencyColumns(code);
+                    t.count += o.count;
+                    t.quoted.add(o.quoted);
+                    t.costOfWork.add(o.costOfWork);
+                }
+            }
+            workItems += other.workItems;
+            if (profitByCustomer != null) {
+                other.profitByCustomer.forEach((codes, profit) -> profitByCustomer.merge(codes, profit, WideSum::add));
+            }
+        }
+
+        private CurrencyColumns currencyColumns(int currency) {
+            if (currency >= byCurrency.length) {
+                byCurrency = Arrays.copyOf(byCurrency, currency + 1);
+            }
+            var t = byCurrency[currency];
+            if (t == null) {
+                t = new CurrencyColumns();
+                byCurrency[currency] = t;
+            }
+            return t;
+        }
+    }
+
+    private static final class Orders {
+        // rows in index key order, as of when it was built
+        final int[] byKey;
+        // rows added after it, being merged into a new array; null when no merge runs
+        final ConcurrentSkipListMap<String, Integer> mergingByKey;
+        // rows added since
+        final ConcurrentSkipListMap<String, Integer> recentByKey;
+        // only changed while adding
+        int recentCount;
+
+        Orders(int[] byKey, ConcurrentSkipListMap<String, Integer> mergingByKey, ConcurrentSkipListMap<String, Integer> recentByKey) {
+            this.byKey = byKey;
+            this.mergingByKey = mergingByKey;
+            this.recentByKey = recentByKey;
+        }
+    }
+
+    private final ColumnChunks contracts = new ColumnChunks(CONTRACT_CHUNK_ROWS, 8, 8, 8, 8, 8, 4, 4, 4, 4, 8);
+    private final ColumnChunks work = new ColumnChunks(WORK_CHUNK_ROWS, 8, 4, 4);
+    private final StringDictionary strings = new StringDictionary();
+    private final CopyOnWriteArrayList<Currency> currencies = new CopyOnWriteArrayList<>();
+    // rows below size are complete and may be read
+    private volatile int size;
+    private volatile long workSize;
+    // row + 1 of every contract by id, 0 is a free slot; at most half full
+    private volatile int[] idTable = new int[1024];
+    private volatile Orders orders = new Orders(new int[0], null, new ConcurrentSkipListMap<>());
+
+    /**
+     * Archive a FINALIZED contract; the caller makes sure it is not archived yet and does not change meanwhile.
+     */
+    synchronized void add(Contract c) {
+        int row = size;
+        var id = c.getId();
+        var workDone = c.getWorkDone();
+        contracts.putLong(row, ID_HIGH, id.getHigh());
+        contracts.putLong(row, ID_LOW, id.getLow());
+        contracts.putLong(row, VERSION, c.getVersion());
+        contracts.putLong(row, PRICE, c.getQuotedPrice().getMinorUnits());
+        contracts.putInt(row, PRICE_CURRENCY, currencyCode(c.getQuotedPrice().getCurrency()));
+        contracts.putInt(row, CUSTOMER, strings.encode(c.getFullNameOfCustomer()));
+        contracts.putInt(row, DESCRIPTION, strings.encode(c.getDescriptionOfWorkRequested()));
+        long workRow = workSize;
+        contracts.putLong(row, FIRST_WORK, workRow);
+        contracts.putInt(row, WORK_COUNT, workDone.size());
+        contracts.putLong(row, COST_OF_WORK, c.getTotalCostOfWork().getMinorUnits());
+        for (var w : workDone) {
+            work.putLong(workRow, COST, w.getCostOfWork().getMinorUnits());
+            work.putInt(workRow, COST_CURRENCY, currencyCode(w.getCostOfWork().getCurrency()));
+            work.putInt(workRow, WORK_DESCRIPTION, strings.encode(w.getDescriptionOfWorkDone()));
+            workRow++;
+        }
+        insertId(row, id);
+
+        var current = orders;
+        current.recentByKey.put(ContractIndex.key(Contract.Status.FINALIZED, c.getFullNameOfCustomer(), id), row);
+        current.recentCount++;
+        workSize = workRow;
+        size = row + 1;
+        if (current.mergingByKey == null && current.recentCount >= Math.max(MINIMUM_RECENT, row / 16)) {
+            var merging = new Orders(current.byKey, current.recentByKey, new ConcurrentSkipListMap<>());
+            orders = merging;
+            ordersMerger.execute(() -> mergeOrders(merging));
+        }
+    }
+
+    // on the merger thread; the map being merged no longer changes
+    private void mergeOrders(Orders merging) {
+        var byKey = merge(merging.byKey, merging.mergingByKey.values(), this::keyOf, Comparator.naturalOrder());
+        synchronized (this) {
+            // no other merge can start before this one is done, so these are still the current orders
+            var merged = new Orders(byKey, null, merging.recentByKey);
+            merged.recentCount = merging.recentCount;
+            orders = merged;
+        }
+    }
+
+    /**
+     * @return a copy of the archived contract, null when not archived.
+     */
+    Contract find(ContractId id) {
+        // rows found beyond the size are still being added
+        int published = size;
+        var table = idTable;
+        int mask = table.length - 1;
+        for (int slot = spread(id.hashCode()) & mask; ; slot = (slot + 1) & mask) {
+            int row = table[slot] - 1;
+            if (row < 0) {
+                return null;
+            }
+            if (row < published && contracts.getLong(row, ID_HIGH) == id.getHigh() && contracts.getLong(row, ID_LOW) == id.getLow()) {
+                return read(row);
+            }
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return copies of all archived contracts, in the order they were archived. The size is read as the stream
+     * is walked, not when it is created, so it has the contracts archived until it reaches the end; a stream that
+     * follows a walk over the heap has every contract that left the heap before that walk could see it.
+     */
+    Stream<Contract> stream() {
+        return StreamSupport.stream(new Spliterators.AbstractSpliterator<>(Long.MAX_VALUE,
+                Spliterator.ORDERED | Spliterator.NONNULL) {
+            private int row;
+
+            @Override
+            public boolean tryAdvance(Consumer<? super Contract> action) {
+                if (row >= size) {
+                    return false;
+                }
+                action.accept(read(row++));
+                return true;
+            }
+        }, false);
+    }
+
+    /**
+     * Adds all archived contracts up in one parallel pass over the columns, without reading them back as contracts:
+     * every thread sums by currency code and customer code, and a customer's name is only decoded at the end.
+     */
+    ContractTotals totals(boolean byCustomer) {
+        var byCodes = IntStream.range(0, size).parallel()
+                .collect(() -> new ColumnTotals(byCustomer), this::addRow, ColumnTotals::merge);
+        var totals = new ContractTotals(byCustomer);
+        for (int code = 0; code < byCodes.byCurrency.length; code++) {
+            var t = byCodes.byCurrency[code];
+            if (t != null) {
+                var currency = currencies.get(code);
+                totals.addCount(Contract.Status.FINALIZED, t.count);
+                var profit = new WideSum().add(t.quoted).subtract(t.costOfWork);
+                totals.addCurrency(currency, t.count, t.quoted, t.costOfWork, profit);
+            }
+        }
+        totals.addWorkItems(byCodes.workItems);
+        if (byCustomer) {
+            byCodes.profitByCustomer.forEach((codes, profit) -> totals.addCustomerProfit(
+                    strings.decode((int) (codes >>> 32)), currencies.get((int) (long) codes), profit));
+        }
+        return totals;
+    }
+
+    /**
+     * @param afterKey continue after this index key, from the start of the range when null
+     * @return the contracts with a customer name starting with the prefix, ignoring case, in index key order
+     * and with the index key as cursor, as if they were FINALIZED entries of the {@link ContractIndex}.
+     */
+    Stream<ScannedContract> scanIndexed(String customerNamePrefix, String afterKey) {
+        var from = ContractIndex.rangeStart(Contract.Status.FINALIZED, customerNamePrefix);
+        var to = ContractIndex.rangeEnd(from);
+        boolean fromInclusive = afterKey == null || afterKey.compareTo(from) < 0;
+        if (!fromInclusive && afterKey.compareTo(to) >= 0) {
+            return Stream.empty();
+        }
+        var lower = fromInclusive ? from : afterKey;
+        var current = orders;
+        var sorted = current.byKey;
+        int start = firstIndex(sorted, row -> {
+            int c = keyOf(row).compareTo(lower);
+            return fromInclusive ? c >= 0 : c > 0;
+        });
+        var fromSorted = IntStream.range(start, sorted.length)
+                .<Map.Entry<String, Integer>>mapToObj(i -> new AbstractMap.SimpleImmutableEntry<>(keyOf(sorted[i]), sorted[i]))
+                .takeWhile(entry -> entry.getKey().compareTo(to) < 0);
+        var recent = current.recentByKey.subMap(lower, fromInclusive, to, false).entrySet().stream();
+        if (current.mergingByKey != null) {
+            var merging = current.mergingByKey.subMap(lower, fromInclusive, to, false).entrySet().stream();
+            recent = SortedMerge.merge(merging, recent, Map.Entry.comparingByKey());
+        }
+        return SortedMerge.merge(fromSorted, recent, Map.Entry.comparingByKey())
+                .map(entry -> new ScannedContract(entry.getKey(), read(entry.getValue())));
+    }
+
+    @Override
+    public long getContractCount() {
+        return size;
+    }
+
+    @Override
+    public long getWorkItemCount() {
+        return workSize;
+    }
+
+    @Override
+    public long getDictionarySize() {
+        return strings.size();
+    }
+
+    @Override
+    public long getOffHeapBytes() {
+        return contracts.offHeapBytes() + work.offHeapBytes() + strings.offHeapBytes();
+    }
+
+    private Contract read(int row) {
+        var c = new Contract(idOf(row),
+                Amount.ofMinorUnits(contracts.getLong(row, PRICE), currencies.get(contracts.getInt(row, PRICE_CURRENCY))),
+                strings.decode(contracts.getInt(row, DESCRIPTION)),
+                strings.decode(contracts.getInt(row, CUSTOMER)));
+        c.setStatus(Contract.Status.FINALIZED);
+        long firstWork = contracts.getLong(row, FIRST_WORK);
+        int workCount = contracts.getInt(row, WORK_COUNT);
+        var workDone = new ArrayList<WorkDone>(workCount);
+        for (long w = firstWork; w < firstWork + workCount; w++) {
+            workDone.add(new WorkDone(
+                    Amount.ofMinorUnits(work.getLong(w, COST), currencies.get(work.getInt(w, COST_CURRENCY))),
+                    strings.decode(work.getInt(w, WORK_DESCRIPTION))));
+        }
+        c.addAllWorkDone(workDone);
+        c.setVersion(contracts.getLong(row, VERSION));
+        return c;
+    }
+
+    private void addRow(ColumnTotals totals, int row) {
+        totals.add(contracts.getInt(row, PRICE_CURRENCY), contracts.getLong(row, PRICE), contracts.getLong(row, COST_OF_WORK),
+                contracts.getInt(row, WORK_COUNT), contracts.getInt(row, CUSTOMER));
+    }
+
+    private ContractId idOf(int row) {
+        return ContractId.of(contracts.getLong(row, ID_HIGH), contracts.getLong(row, ID_LOW));
+    }
+
+    private String keyOf(int row) {
+        return ContractIndex.key(Contract.Status.FINALIZED, strings.decode(contracts.getInt(row, CUSTOMER)), idOf(row));
+    }
+
+    private int currencyCode(Currency currency) {
+        int code = currencies.indexOf(currency);
+        if (code < 0) {
+            currencies.add(currency);
+            code = currencies.size() - 1;
+        }
+        return code;
+    }
+
+    private void insertId(int row, ContractId id) {
+        var table = idTable;
+        if ((row + 1) * 2 > table.length) {
+            table = new int[table.length * 2];
+            for (int r = 0; r < row; r++) {
+                place(table, r, idOf(r));
+            }
+            place(table, row, id);
+            idTable = table;
+        } else {
+            place(table, row, id);
+        }
+    }
+
+    private static void place(int[] table, int row, ContractId id) {
+        int mask = table.length - 1;
+        int slot = spread(id.hashCode()) & mask;
+        while (table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = row + 1;
+    }
+
+    /**
+     * @return a sorted array of the rows of both, the recent rows in order already.
+     */
+    private static <K> int[] merge(int[] sorted, Collection<Integer> recent, IntFunction<K> keyOf, Comparator<? super K> order) {
+        var merged = new int[sorted.length + recent.size()];
+        int i = 0;
+        int m = 0;
+        K sortedKey = sorted.length > 0 ? keyOf.apply(sorted[0]) : null;
+        for (int row : recent) {
+            var recentKey = keyOf.apply(row);
+            while (i < sorted.length && order.compare(sortedKey, recentKey) < 0) {
+                merged[m++] = sorted[i++];
+                sortedKey = i < sorted.length ? keyOf.apply(sorted[i]) : null;
+            }
+            merged[m++] = row;
+        }
+        while (i < sorted.length) {
+            merged[m++] = sorted[i++];
+        }
+        return merged;
+    }
+
+    // binary search for the first row that matches, all rows after it match as well
+    private static int firstIndex(int[] sorted, IntPredicate matches) {
+        int low = 0;
+        int high = sorted.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (matches.test(sorted[mid])) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    private static int spread(int h) {
+        return h ^ (h >>> 16);
+    }
+}
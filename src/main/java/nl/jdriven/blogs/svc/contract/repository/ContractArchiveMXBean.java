@@ -0,0 +1,20 @@
+package nl.jdriven.blogs.svc.contract.repository;
+
+/**
+ * JMX view of the off-heap archive of finalized contracts of a contract repository.
+ */
+public interface ContractArchiveMXBean {
+    long getContractCount();
+
+    long getWorkItemCount();
+
+    /**
+     * @return number of distinct names and descriptions stored.
+     */
+    long getDictionarySize();
+
+    /**
+     * @return direct memory allocated for the archive.
+     */
+    long getOffHeapBytes();
+}
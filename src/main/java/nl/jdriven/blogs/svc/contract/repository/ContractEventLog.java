@@ -0,0 +1,355 @@
+package nl.jdriven.blogs.svc.contract.repository;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import nl.jdriven.blogs.svc.contract.store.proto.ContractEventRecord;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only log of contract events, stored in fixed size memory-mapped segment files.
+ * Records are serialized straight into the mapped segment, so an append is a sequential memory write
+ * without intermediate copies. A single flusher thread forces the written pages to disk; all appends
+ * that arrive while a force is running are made durable together by the next one (group commit).
+ * <p>
+ * Record layout: int payload length, int CRC32C of the payload, payload (a ContractEventRecord).
+ * A length of 0 marks the end of the data in a segment. Positions are global: segment base + offset,
+ * and each segment file is named after its base position. Segments that only hold events from before
+ * a snapshot can be removed with {@link #truncateBefore(long)}.
+ */
+class ContractEventLog implements Closeable {
+    static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+    private static final int HEADER_SIZE = 8;
+    private static final String SUFFIX = ".log";
+    private static final long PERIODIC_FLUSH_MILLIS = 100;
+
+    private final Path dir;
+    private final int segmentSize;
+    private final boolean syncOnAppend;
+
+    // guards the write side: current segment and written position
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private MappedByteBuffer segment;
+    private long segmentBase;
+    private final List<MappedByteBuffer> unforcedSegments = new ArrayList<>();
+
+    // guards the flush side
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final Condition flushRequested = flushLock.newCondition();
+    private final Condition flushed = flushLock.newCondition();
+    private volatile long writtenPosition;
+    private volatile long durablePosition;
+    private long requestedPosition;
+    private volatile boolean closed;
+    private IOException flushFailure;
+    private final Thread flusher;
+
+    /**
+     * @param syncOnAppend when true {@link #awaitDurable(long)} blocks until the position is on disk,
+     *                     otherwise the log is forced every {@value #PERIODIC_FLUSH_MILLIS} ms and nobody waits.
+     */
+    ContractEventLog(Path dir, int segmentSize, boolean syncOnAppend) {
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+        this.syncOnAppend = syncOnAppend;
+        try {
+            Files.createDirectories(dir);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        flusher = new Thread(this::flushLoop, "contract-log-flusher");
+        flusher.setDaemon(true);
+    }
+
+    /**
+     * Read all valid records from the position on in order, and open the log for appending right
+     * after the last one. Must be called once, before the first append.
+     * @param fromPosition a position returned by {@link #writtenPosition()}, 0 for the whole log.
+     */
+    void open(long fromPosition, Consumer<ContractEventRecord> replay) {
+        try {
+            var bases = segmentBases();
+            for (int i = 0; i < bases.size(); i++) {
+                boolean last = i == bases.size() - 1;
+                long base = bases.get(i);
+                var buffer = map(base, Files.size(dir.resolve(fileName(base))));
+                if (base + buffer.capacity() <= fromPosition && !last) {
+                    continue;
+                }
+                int startOffset = (int) Math.max(0, fromPosition - base);
+                int writeOffset = replaySegment(buffer, startOffset, replay);
+                if (!last && !isEndOfData(buffer, writeOffset)) {
+                    throw new IllegalStateException("Corrupt record in segment " + fileName(bases.get(i)) + " which is not the last one");
+                }
+                if (last) {
+                    // wipe anything after the last valid record, e.g. a torn write, so it cannot resurface later
+                    var zeros = new byte[64 * 1024];
+                    buffer.position(writeOffset);
+                    while (buffer.hasRemaining()) {
+                        buffer.put(zeros, 0, Math.min(zeros.length, buffer.remaining()));
+                    }
+                    buffer.position(writeOffset);
+                    segment = buffer;
+                    segmentBase = bases.get(i);
+                }
+            }
+            if (segment == null) {
+                // no log (anymore), start where the snapshot left off
+                segmentBase = fromPosition - fromPosition % segmentSize;
+                segment = map(segmentBase, segmentSize);
+                segment.position((int) (fromPosition - segmentBase));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        writtenPosition = segmentBase + segment.position();
+        durablePosition = writtenPosition;
+        requestedPosition = writtenPosition;
+        flusher.start();
+    }
+
+    /**
+     * Write the record at the end of the log; it is visible for a restart after a process crash
+     * immediately, and after an OS crash once {@link #awaitDurable(long)} returned for the returned position.
+     * @return position right after the record.
+     */
+    long append(ContractEventRecord record) {
+        int size = record.getSerializedSize();
+        if (size + HEADER_SIZE > segmentSize - HEADER_SIZE) {
+            throw new IllegalArgumentException("Record of " + size + " bytes does not fit in a segment");
+        }
+        appendLock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("Event log is closed");
+            }
+            // keep room for the terminating zero length
+            if (segment.remaining() < size + 2 * HEADER_SIZE) {
+                roll();
+            }
+            int start = segment.position();
+            segment.position(start + HEADER_SIZE);
+            var out = CodedOutputStream.newInstance(segment);
+            record.writeTo(out);
+            out.flush();
+            var crc = new CRC32C();
+            crc.update(segment.duplicate().position(start + HEADER_SIZE).limit(start + HEADER_SIZE + size));
+            segment.putInt(start + 4, (int) crc.getValue());
+            // length last, a reader never sees a length without the payload in this process
+            segment.putInt(start, size);
+            writtenPosition = segmentBase + segment.position();
+            return writtenPosition;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Block until everything up to the position has been forced to disk; returns at once when
+     * the log does not sync on append.
+     */
+    void awaitDurable(long position) {
+        if (!syncOnAppend || durablePosition >= position) {
+            return;
+        }
+        flushLock.lock();
+        try {
+            if (position > requestedPosition) {
+                requestedPosition = position;
+                flushRequested.signal();
+            }
+            while (durablePosition < position) {
+                if (flushFailure != null) {
+                    throw new UncheckedIOException("Event log could not be forced to disk", flushFailure);
+                }
+                flushed.awaitUninterruptibly();
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    long writtenPosition() {
+        return writtenPosition;
+    }
+
+    /**
+     * Delete the segments that only hold records before the position, except the one being written.
+     */
+    void truncateBefore(long position) {
+        long currentBase;
+        appendLock.lock();
+        try {
+            currentBase = segmentBase;
+        } finally {
+            appendLock.unlock();
+        }
+        try {
+            for (long base : segmentBases()) {
+                var file = dir.resolve(fileName(base));
+                if (base < currentBase && base + Files.size(file) <= position) {
+                    Files.delete(file);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        appendLock.lock();
+        try {
+            closed = true;
+        } finally {
+            appendLock.unlock();
+        }
+        flushLock.lock();
+        try {
+            flushRequested.signal();
+        } finally {
+            flushLock.unlock();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void flushLoop() {
+        while (true) {
+            flushLock.lock();
+            try {
+                while (!closed && requestedPosition <= durablePosition) {
+                    if (syncOnAppend) {
+                        flushRequested.awaitUninterruptibly();
+                    } else {
+                        flushRequested.await(PERIODIC_FLUSH_MILLIS, TimeUnit.MILLISECONDS);
+                        requestedPosition = writtenPosition;
+                    }
+                }
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                flushLock.unlock();
+            }
+            // everything written so far goes along, not just what was asked for
+            long target = force();
+            flushLock.lock();
+            try {
+                durablePosition = Math.max(durablePosition, target);
+                flushed.signalAll();
+                if (closed && durablePosition >= writtenPosition) {
+                    return;
+                }
+            } finally {
+                flushLock.unlock();
+            }
+        }
+    }
+
+    private long force() {
+        List<MappedByteBuffer> toForce;
+        MappedByteBuffer current;
+        long target;
+        appendLock.lock();
+        try {
+            toForce = new ArrayList<>(unforcedSegments);
+            unforcedSegments.clear();
+            current = segment;
+            target = writtenPosition;
+        } finally {
+            appendLock.unlock();
+        }
+        try {
+            toForce.forEach(MappedByteBuffer::force);
+            current.force();
+        } catch (RuntimeException e) {
+            flushLock.lock();
+            try {
+                flushFailure = new IOException(e);
+                flushed.signalAll();
+            } finally {
+                flushLock.unlock();
+            }
+            throw e;
+        }
+        return target;
+    }
+
+    // called with the appendLock held
+    private void roll() throws IOException {
+        unforcedSegments.add(segment);
+        segmentBase += segment.capacity();
+        segment = map(segmentBase, segmentSize);
+    }
+
+    // existing segments keep their own size, so the segment size may change between runs
+    private MappedByteBuffer map(long base, long size) throws IOException {
+        try (var channel = FileChannel.open(dir.resolve(fileName(base)),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // the mapping stays valid after the channel is closed
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size > 0 ? size : segmentSize);
+        }
+    }
+
+    /**
+     * @return offset after the last valid record.
+     */
+    private static int replaySegment(ByteBuffer buffer, int startOffset, Consumer<ContractEventRecord> replay) throws IOException {
+        int offset = startOffset;
+        while (!isEndOfData(buffer, offset)) {
+            int size = buffer.getInt(offset);
+            int payloadStart = offset + HEADER_SIZE;
+            if (size < 0 || payloadStart + size > buffer.capacity()) {
+                return offset;
+            }
+            var payload = buffer.duplicate().position(payloadStart).limit(payloadStart + size);
+            var crc = new CRC32C();
+            crc.update(payload.duplicate());
+            if ((int) crc.getValue() != buffer.getInt(offset + 4)) {
+                return offset;
+            }
+            replay.accept(ContractEventRecord.parseFrom(CodedInputStream.newInstance(payload)));
+            offset = payloadStart + size;
+        }
+        return offset;
+    }
+
+    private static boolean isEndOfData(ByteBuffer buffer, int offset) {
+        return offset + HEADER_SIZE > buffer.capacity() || buffer.getInt(offset) == 0;
+    }
+
+    private List<Long> segmentBases() throws IOException {
+        try (var files = Files.list(dir)) {
+            return files.map(p -> p.getFileName().toString())
+                    .filter(name -> name.endsWith(SUFFIX))
+                    .map(name -> Long.parseLong(name.substring(0, name.length() - SUFFIX.length())))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static String fileName(long base) {
+        return String.format("%020d%s", base, SUFFIX);
+    }
+}
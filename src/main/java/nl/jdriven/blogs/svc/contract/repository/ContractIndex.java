@@ -0,0 +1,132 @@
+package nl.jdriven.blogs.svc.contract.repository;
+
+import nl.jdriven.blogs.svc.contract.model.main.Contract;
+import nl.jdriven.blogs.svc.contract.model.main.ContractId;
+
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Secondary index on status and customer name: one sorted map with keys made of the status,
+ * the lower-cased customer name and the contract id. All contracts with a status and a name prefix
+ * form one key range, so "all ATWORK contracts of customers starting with X" is a range scan that
+ * only touches the matching entries, and a status on its own is the range with an empty prefix.
+ * Keys are kept up to date by the repository under the contract's lock; a reader can briefly see
+ * a contract under its old and its new status, so callers check the status of what they find.
+ */
+class ContractIndex implements ContractIndexMXBean {
+    private static final char NAME_END = '\u0000';
+    private static final char RANGE_END = '\uffff';
+    // skip list node, its share of the index levels and the String and byte[] headers of the key
+    private static final long ENTRY_OVERHEAD_BYTES = 32 + 16 + 24 + 16;
+
+    private final ConcurrentSkipListMap<String, ContractId> entries = new ConcurrentSkipListMap<>();
+    private final LongAdder memoryBytes = new LongAdder();
+
+    void add(Contract c) {
+        var key = key(c.getStatus(), c.getFullNameOfCustomer(), c.getId());
+        if (entries.put(key, c.getId()) == null) {
+            memoryBytes.add(bytes(key));
+        }
+    }
+
+    /**
+     * Move the contract to its current status; the new entry is added before the old one goes,
+     * so a concurrent scan never misses the contract.
+     */
+    void statusChanged(Contract c, Contract.Status previous) {
+        add(c);
+        remove(c, previous);
+    }
+
+    /**
+     * Remove the entry of the contract under the status.
+     */
+    void remove(Contract c, Contract.Status status) {
+        var key = key(status, c.getFullNameOfCustomer(), c.getId());
+        if (entries.remove(key) != null) {
+            memoryBytes.add(-bytes(key));
+        }
+    }
+
+    /**
+     * @param afterKey continue after this key, from the start of the ranges when null
+     * @return entries (key, contract id) of the contracts with one of the statuses and a name starting
+     * with the prefix ignoring case, lazily and in key order.
+     */
+    Stream<Map.Entry<String, ContractId>> scan(Set<Contract.Status> statuses, String namePrefix, String afterKey) {
+        return statuses.stream()
+                .sorted(Comparator.comparingInt(Enum::ordinal))
+                .flatMap(status -> {
+                    var from = rangeStart(status, namePrefix);
+                    var to = rangeEnd(from);
+                    if (afterKey == null || afterKey.compareTo(from) < 0) {
+                        return entries.subMap(from, true, to, false).entrySet().stream();
+                    }
+                    if (afterKey.compareTo(to) >= 0) {
+                        return Stream.empty();
+                    }
+                    return entries.subMap(afterKey, false, to, false).entrySet().stream();
+                });
+    }
+
+    /**
+     * @return the status part of an index key.
+     */
+    static Contract.Status statusOf(String key) {
+        return Contract.Status.values()[key.charAt(0) - 'A'];
+    }
+
+    @Override
+    public long getEntryCount() {
+        return entries.size();
+    }
+
+    @Override
+    public long getEstimatedMemoryBytes() {
+        return memoryBytes.sum();
+    }
+
+    /**
+     * @return the first key of the contracts with the status and a name starting with the prefix, ignoring case.
+     */
+    static String rangeStart(Contract.Status status, String namePrefix) {
+        return statusKey(status) + normalize(namePrefix);
+    }
+
+    /**
+     * @return the key right after the range that starts at rangeStart.
+     */
+    static String rangeEnd(String rangeStart) {
+        return rangeStart + RANGE_END;
+    }
+
+    // the id in string form, so the key is also the cursor and contracts of one customer are in creation order
+    static String key(Contract.Status status, String name, ContractId id) {
+        var normalized = normalize(name);
+        return new StringBuilder(2 + normalized.length() + 36)
+                .append(statusKey(status))
+                .append(normalized)
+                .append(NAME_END)
+                .append(id)
+                .toString();
+    }
+
+    private static char statusKey(Contract.Status status) {
+        return (char) ('A' + status.ordinal());
+    }
+
+    private static String normalize(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    // compact strings: one byte per char for Latin-1 keys, two otherwise; assume the cheap case
+    private static long bytes(String key) {
+        return ENTRY_OVERHEAD_BYTES + key.length();
+    }
+}
@@ -0,0 +1,13 @@
+package nl.jdriven.blogs.svc.contract.repository;
+
+/**
+ * JMX view of the secondary index of a contract repository.
+ */
+public interface ContractIndexMXBean {
+    long getEntryCount();
+
+    /**
+     * @return approximate heap used by the index entries, excluding the contracts themselves.
+     */
+    long getEstimatedMemoryBytes();
+}
@@ -0,0 +1,132 @@
+package nl.jdriven.blogs.svc.contract.repository;
+
+import nl.jdriven.blogs.svc.contract.model.event.ContractEvent;
+import nl.jdriven.blogs.svc.contract.model.exception.NotFoundException;
+import nl.jdriven.blogs.svc.contract.model.main.Contract;
+import nl.jdriven.blogs.svc.contract.model.main.ContractId;
+
+import java.io.Closeable;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * Storage of all contracts; implementations must be safe for use by many gRPC executor threads at once.
+ * All changes of a stored contract are expressed as {@link ContractEvent}s and go through
+ * {@link #update(ContractId, Function)}, so an implementation can make check-then-act sequences atomic
+ * per contract and persist the events if it wants to.
+ * @see ContractRepositoryFactory
+ */
+public interface ContractRepository extends Closeable {
+
+    /**
+     * Store a new contract.
+     */
+    default void add(Contract contract) {
+        add(contract, c -> null);
+    }
+
+    /**
+     * Store a new contract, with callbacks like {@link #update(ContractId, Function, Function)}.
+     */
+    void add(Contract contract, Function<Contract, Runnable> added);
+
+    /**
+     * @return the contract with given id or null when unknown.
+     */
+    Contract find(ContractId id);
+
+    /**
+     * Ask the decision what should happen with the contract with given id and apply the resulting event,
+     * while no other update of the same contract can run.
+     * Exceptions thrown by the decision are passed on unchanged and leave the contract untouched.
+     * @return the updated contract.
+     * @throws NotFoundException
+     */
+    default Contract update(ContractId id, Function<Contract, ContractEvent> decision) {
+        return update(id, decision, c -> null);
+    }
+
+    /**
+     * {@link #update(ContractId, Function)}, with callbacks to pass the change on in the order it was made.
+     * @param applied called with the contract once the event is applied, while no other update of it can run yet,
+     *                so for the changes of one contract in the order of the journal; it returns what to run once
+     *                the change is durable, or null. That also runs when waiting for the journal failed,
+     *                as the change is applied in memory all the same; in a {@link #batch(Runnable)} at its end.
+     */
+    Contract update(ContractId id, Function<Contract, ContractEvent> decision, Function<Contract, Runnable> applied);
+
+    /**
+     * Remove the contract with given id for good, when the condition holds while no update of it can run.
+     * A finalized contract is archived and is never removed.
+     * @return true when removed, false when unknown or the condition did not hold.
+     */
+    boolean remove(ContractId id, Predicate<Contract> condition);
+
+    /**
+     * Make the changes done by the current thread as one batch: a persisting repository waits only once,
+     * at the end, until all of them are durable, instead of after every change.
+     */
+    default void batch(Runnable changes) {
+        changes.run();
+    }
+
+    /**
+     * @return number of contracts stored.
+     */
+    int size();
+
+    /**
+     * @return number of work items of all contracts together, without going over the contracts.
+     */
+    long workItemCount();
+
+    /**
+     * @return a weakly consistent view of all contracts, never throws on concurrent modification.
+     */
+    Stream<Contract> stream();
+
+    /**
+     * @param afterId continue after the contract with this id, from the start when null
+     * @return a lazy, weakly consistent view of the contracts in id order, which is the order of creation;
+     * the cursor is the string form of the id.
+     */
+    Stream<ScannedContract> scan(ContractId afterId);
+
+    /**
+     * Uses the secondary index on status and customer name, so the cost is in the number of contracts found.
+     * @param afterCursor continue after the contract with this cursor, from the start when null
+     * @return a lazy, weakly consistent view of the contracts with one of the statuses and a customer name
+     * starting with the prefix, ignoring case, ordered by status and customer name.
+     */
+    Stream<ScannedContract> scanIndexed(Set<Contract.Status> statuses, String customerNamePrefix, String afterCursor);
+
+    /**
+     * Add up all contracts in one parallel pass, with totals per thread that are merged at the end;
+     * weakly consistent, like {@link #stream()}, and it never holds up updates.
+     * @param byCustomer also the realized profit of every customer
+     */
+    default ContractTotals totals(boolean byCustomer) {
+        return stream().parallel().collect(() -> new ContractTotals(byCustomer), ContractTotals::add, ContractTotals::merge);
+    }
+
+    /**
+     * @return the totals as kept up to date with every change, without those by customer; instantly, without a pass.
+     */
+    ContractTotals runningTotals();
+
+    /**
+     * @return size information of the secondary index, to be published as a metric.
+     */
+    ContractIndexMXBean indexStatistics();
+
+    /**
+     * @return size information of the storage of finalized contracts, to be published as a metric.
+     */
+    ContractArchiveMXBean archiveStatistics();
+
+    @Override
+    default void close() {
+    }
+}
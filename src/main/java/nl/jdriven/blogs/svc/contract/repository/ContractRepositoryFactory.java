@@ -0,0 +1,43 @@
+package nl.jdriven.blogs.svc.contract.repository;
+
+import nl.jdriven.blogs.svc.contract.logging.LifecycleLog;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Creates the repository engine chosen by configuration.
+ */
+public class ContractRepositoryFactory {
+    public static final String MEMORY = "memory";
+    public static final String EVENT_LOG = "eventlog";
+
+    private ContractRepositoryFactory() {
+    }
+
+    /**
+     * @param engine  {@value #MEMORY} or {@value #EVENT_LOG}
+     * @param dataDir directory for the engines that persist, ignored otherwise
+     * @param fsync   for persisting engines: wait for the data to be on disk before a change returns
+     * @param snapshotInterval for persisting engines: time between snapshots of the whole store, zero for none
+     */
+    public static ContractRepository create(String engine, Path dataDir, boolean fsync, Duration snapshotInterval) {
+        return create(engine, dataDir, fsync, snapshotInterval, LifecycleLog.OFF);
+    }
+
+    /**
+     * @param log for failures of the store itself, such as a snapshot that could not be written
+     */
+    public static ContractRepository create(String engine, Path dataDir, boolean fsync, Duration snapshotInterval,
+                                            LifecycleLog log) {
+        switch (engine) {
+            case MEMORY:
+                return new InMemoryContractRepository();
+            case EVENT_LOG:
+                return new EventLogContractRepository(dataDir, fsync, snapshotInterval, log);
+            default:
+                throw new IllegalArgumentException("Unknown contract repository engine '" + engine
+                        + "', use " + MEMORY + " or " + EVENT_LOG);
+        }
+    }
+}
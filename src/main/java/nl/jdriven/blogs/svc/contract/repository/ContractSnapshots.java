@@ -0,0 +1,139 @@
+package nl.jdriven.blogs.svc.contract.repository;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import nl.jdriven.blogs.svc.contract.store.proto.SnapshotHeader;
+import nl.jdriven.blogs.svc.contract.store.proto.StoredContract;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Snapshot files of the whole contract store: a length-delimited {@link SnapshotHeader} followed by
+ * length-delimited {@link StoredContract}s. A snapshot is written to a temporary file and renamed
+ * when complete, so a crash while writing leaves the previous snapshot in place.
+ * The header has the number of contracts, which is checked when the snapshot is read back.
+ */
+final class ContractSnapshots {
+    private static final String PREFIX = "snapshot-";
+    private static final String SUFFIX = ".snap";
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final Path dir;
+
+    ContractSnapshots(Path dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * Write a snapshot, remove the older ones.
+     * @param logPosition where the log replay has to continue when this snapshot is loaded
+     */
+    void write(long logPosition, Iterator<StoredContract> contracts) {
+        var target = dir.resolve(fileName(logPosition));
+        var tmp = dir.resolve(fileName(logPosition) + ".tmp");
+        try {
+            try (var channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                var out = CodedOutputStream.newInstance(Channels.newOutputStream(channel), BUFFER_SIZE);
+                var header = SnapshotHeader.newBuilder().setLogPosition(logPosition);
+                // the count is only known at the end, any other than 0 has the same size as this placeholder
+                writeDelimited(out, header.setContractCount(-1L).build().toByteArray());
+                long count = 0;
+                while (contracts.hasNext()) {
+                    var contract = contracts.next();
+                    out.writeUInt32NoTag(contract.getSerializedSize());
+                    contract.writeTo(out);
+                    count++;
+                }
+                out.flush();
+                if (count == 0) {
+                    channel.truncate(0);
+                }
+                channel.write(ByteBuffer.wrap(delimited(header.setContractCount(count).build())), 0);
+                channel.force(true);
+            }
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            for (var older : snapshotFiles()) {
+                if (!older.equals(target)) {
+                    Files.delete(older);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Hand the serialized contracts of the latest snapshot to the consumer, which may parse them on another thread.
+     * @return the log position to continue replay from, 0 when there is no snapshot.
+     */
+    long readLatest(Consumer<byte[]> contracts) {
+        try {
+            var files = snapshotFiles();
+            if (files.isEmpty()) {
+                return 0L;
+            }
+            try (var channel = FileChannel.open(files.get(files.size() - 1), StandardOpenOption.READ)) {
+                var in = CodedInputStream.newInstance(Channels.newInputStream(channel), BUFFER_SIZE);
+                var header = SnapshotHeader.parseFrom(in.readRawBytes(in.readRawVarint32()));
+                long count = 0;
+                while (!in.isAtEnd()) {
+                    contracts.accept(in.readRawBytes(in.readRawVarint32()));
+                    count++;
+                    // the byte counter is an int, keep it from overflowing on multi-gigabyte snapshots
+                    in.resetSizeCounter();
+                }
+                if (header.getContractCount() != 0 && header.getContractCount() != count) {
+                    throw new IOException("Snapshot " + files.get(files.size() - 1) + " has " + count
+                            + " contracts instead of " + header.getContractCount());
+                }
+                return header.getLogPosition();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeDelimited(CodedOutputStream out, byte[] message) throws IOException {
+        out.writeUInt32NoTag(message.length);
+        out.writeRawBytes(message);
+    }
+
+    private static byte[] delimited(SnapshotHeader header) throws IOException {
+        var bytes = new ByteArrayOutputStream();
+        header.writeDelimitedTo(bytes);
+        return bytes.toByteArray();
+    }
+
+    private List<Path> snapshotFiles() throws IOException {
+        try (var files = Files.list(dir)) {
+            return files.filter(p -> p.getFileName().toString().startsWith(PREFIX)
+                    && p.getFileName().toString().endsWith(SUFFIX))
+                    .sorted(Comparator.comparingLong(ContractSnapshots::position))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static long position(Path file) {
+        var name = file.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+
+    private static String fileName(long logPosition) {
+        return String.format("%s%020d%s", PREFIX, logPosition, SUFFIX);
+    }
+}
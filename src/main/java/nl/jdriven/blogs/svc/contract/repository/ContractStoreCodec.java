@@ -0,0 +1,139 @@
+package nl.jdriven.blogs.svc.contract.repository;
+
+import com.google.type.Money;
+import nl.jdriven.blogs.svc.contract.model.event.ContractEvent;
+import nl.jdriven.blogs.svc.contract.model.main.Amount;
+import nl.jdriven.blogs.svc.contract.model.main.Contract;
+import nl.jdriven.blogs.svc.contract.model.main.ContractId;
+import nl.jdriven.blogs.svc.contract.model.main.WorkDone;
+import nl.jdriven.blogs.svc.contract.store.proto.ContractEventRecord;
+import nl.jdriven.blogs.svc.contract.store.proto.StoredContract;
+import nl.jdriven.blogs.svc.contract.store.proto.StoredWorkDone;
+
+import java.util.ArrayList;
+import java.util.Currency;
+
+/**
+ * Translates events and contracts from/to their on-disk protobuf form.
+ */
+final class ContractStoreCodec {
+    private ContractStoreCodec() {
+    }
+
+    static ContractEventRecord encode(ContractEvent event, long version) {
+        var record = ContractEventRecord.newBuilder()
+                .setContractIdHigh(event.getContractId().getHigh())
+                .setContractIdLow(event.getContractId().getLow())
+                .setVersion(version);
+        switch (event.getType()) {
+            case QUOTE_CREATED:
+                record.setType(ContractEventRecord.Type.QUOTE_CREATED)
+                        .setFullNameOfCustomer(event.getFullNameOfCustomer())
+                        .setQuotedPrice(encode(event.getQuotedPrice()))
+                        .setDescriptionOfWorkRequested(event.getDescriptionOfWorkRequested());
+                break;
+            case PROMOTED:
+                record.setType(ContractEventRecord.Type.PROMOTED);
+                break;
+            case WORK_ADDED:
+                record.setType(ContractEventRecord.Type.WORK_ADDED)
+                        .setCostOfWork(encode(event.getWorkDone().getCostOfWork()))
+                        .setDescriptionOfWorkDone(event.getWorkDone().getDescriptionOfWorkDone());
+                break;
+            case FINALIZED:
+                record.setType(ContractEventRecord.Type.FINALIZED);
+                break;
+            case ABANDONED:
+                record.setType(ContractEventRecord.Type.ABANDONED);
+                break;
+            case EVICTED:
+                record.setType(ContractEventRecord.Type.EVICTED);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown event type " + event.getType());
+        }
+        return record.build();
+    }
+
+    static ContractEvent decode(ContractEventRecord record) {
+        var id = contractId(record);
+        switch (record.getType()) {
+            case QUOTE_CREATED:
+                return ContractEvent.quoteCreated(id, record.getFullNameOfCustomer(),
+                        decode(record.getQuotedPrice()), record.getDescriptionOfWorkRequested());
+            case PROMOTED:
+                return ContractEvent.promoted(id);
+            case WORK_ADDED:
+                var work = new WorkDone(decode(record.getCostOfWork()), record.getDescriptionOfWorkDone());
+                return ContractEvent.workAdded(id, work);
+            case FINALIZED:
+                return ContractEvent.finalized(id);
+            case ABANDONED:
+                return ContractEvent.abandoned(id);
+            case EVICTED:
+                return ContractEvent.evicted(id);
+            default:
+                throw new IllegalArgumentException("Unknown event type in journal: " + record.getType());
+        }
+    }
+
+    static StoredContract encode(Contract c) {
+        var stored = StoredContract.newBuilder()
+                .setContractIdHigh(c.getId().getHigh())
+                .setContractIdLow(c.getId().getLow())
+                .setStatus(StoredContract.Status.valueOf(c.getStatus().name()))
+                .setFullNameOfCustomer(c.getFullNameOfCustomer())
+                .setQuotedPrice(encode(c.getQuotedPrice()))
+                .setDescriptionOfWorkRequested(c.getDescriptionOfWorkRequested())
+                .setVersion(c.getVersion());
+        for (var work : c.getWorkDone()) {
+            stored.addWork(StoredWorkDone.newBuilder()
+                    .setCostOfWork(encode(work.getCostOfWork()))
+                    .setDescriptionOfWorkDone(work.getDescriptionOfWorkDone()));
+        }
+        return stored.build();
+    }
+
+    static Contract decode(StoredContract stored) {
+        var c = new Contract(contractId(stored.getContractIdHigh(), stored.getContractIdLow(), stored.getContractId()), decode(stored.getQuotedPrice()),
+                stored.getDescriptionOfWorkRequested(), stored.getFullNameOfCustomer());
+        c.setStatus(Contract.Status.valueOf(stored.getStatus().name()));
+        var work = new ArrayList<WorkDone>(stored.getWorkCount());
+        for (var w : stored.getWorkList()) {
+            work.add(new WorkDone(decode(w.getCostOfWork()), w.getDescriptionOfWorkDone()));
+        }
+        c.addAllWorkDone(work);
+        c.setVersion(stored.getVersion());
+        return c;
+    }
+
+    static ContractId contractId(ContractEventRecord record) {
+        return contractId(record.getContractIdHigh(), record.getContractIdLow(), record.getContractId());
+    }
+
+    // older data has the id as a UUID string
+    private static ContractId contractId(long high, long low, String legacy) {
+        if (legacy.isEmpty()) {
+            return ContractId.of(high, low);
+        }
+        var id = ContractId.parse(legacy);
+        if (id == null) {
+            throw new IllegalArgumentException("Stored contract id is not a UUID: " + legacy);
+        }
+        return id;
+    }
+
+    // units hold the integral part, nanos the fraction with the same sign
+    private static Money encode(Amount amount) {
+        return Money.newBuilder()
+                .setCurrencyCode(amount.getCurrency().getCurrencyCode())
+                .setUnits(amount.getUnits())
+                .setNanos(amount.getNanos())
+                .build();
+    }
+
+    private static Amount decode(Money amount) {
+        var currency = amount.getCurrencyCode().isEmpty() ? Amount.EUR : Currency.getInstance(amount.getCurrencyCode());
+        return Amount.ofUnitsAndNanos(amount.getUnits(), amount.getNanos(), currency);
+    }
+}
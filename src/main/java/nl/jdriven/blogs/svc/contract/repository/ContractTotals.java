@@ -0,0 +1,293 @@
+package nl.jdriven.blogs.svc.contract.repository;
+
+import nl.jdriven.blogs.svc.contract.model.main.Amount;
+import nl.jdriven.blogs.svc.contract.model.main.Contract;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Currency;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+
+/**
+ * Totals over contracts, for one thread at a time. A parallel pass gives every thread its own totals and
+ * merges them at the end, so the threads share nothing while they add contracts and take no locks.
+ * Amounts are summed per currency of the quoted price, in minor units and without overflow; a total that does not fit
+ * in an {@link Amount} is not answered, and the other totals are.
+ */
+public final class ContractTotals {
+    private static final Contract.Status[] STATUSES = Contract.Status.values();
+
+    /**
+     * Totals of the contracts with quoted prices in one currency that were promoted: ATWORK and FINALIZED.
+     */
+    public static final class CurrencyTotals {
+        private final Currency currency;
+        private long promoted;
+        private final WideSum quoted = new WideSum();
+        private final WideSum costOfWork = new WideSum();
+        private final WideSum profit = new WideSum();
+
+        private CurrencyTotals(Currency currency) {
+            this.currency = currency;
+        }
+
+        public Currency getCurrency() {
+            return currency;
+        }
+
+        public long getPromotedCount() {
+            return promoted;
+        }
+
+        /**
+         * @return whether an amount does not fit, and is empty.
+         */
+        public boolean isOverflowed() {
+            return !quoted.fitsInLong() || !costOfWork.fitsInLong() || !profit.fitsInLong();
+        }
+
+        /**
+         * @return empty when it does not fit.
+         */
+        public Optional<Amount> getQuotedRevenue() {
+            return amount(quoted, currency);
+        }
+
+        /**
+         * @return empty when it does not fit.
+         */
+        public Optional<Amount> getTotalCostOfWork() {
+            return amount(costOfWork, currency);
+        }
+
+        /**
+         * @return per promoted contract, rounded towards zero to the minor unit; empty when the total is not known.
+         */
+        public Optional<Amount> getAverageCostOfWork() {
+            if (promoted == 0) {
+                return Optional.of(Amount.ofMinorUnits(0, currency));
+            }
+            if (costOfWork.fitsInLong()) {
+                return Optional.of(Amount.ofMinorUnits(costOfWork.longValue() / promoted, currency));
+            }
+            try {
+                return Optional.of(Amount.ofMinorUnits(
+                        costOfWork.bigIntegerValue().divide(BigInteger.valueOf(promoted)).longValueExact(), currency));
+            } catch (ArithmeticException e) {
+                return Optional.empty();
+            }
+        }
+
+        /**
+         * @return profit of the FINALIZED contracts; empty when it does not fit.
+         */
+        public Optional<Amount> getRealizedProfit() {
+            return amount(profit, currency);
+        }
+
+        private void add(long promoted, WideSum quoted, WideSum costOfWork, WideSum profit) {
+            this.promoted += promoted;
+            this.quoted.add(quoted);
+            this.costOfWork.add(costOfWork);
+            this.profit.add(profit);
+        }
+    }
+
+    /**
+     * Realized profit of one customer in one currency.
+     */
+    public static final class CustomerProfit {
+        private final String fullNameOfCustomer;
+        private final Currency currency;
+        private final Amount realizedProfit;
+
+        CustomerProfit(String fullNameOfCustomer, Currency currency, Amount realizedProfit) {
+            this.fullNameOfCustomer = fullNameOfCustomer;
+            this.currency = currency;
+            this.realizedProfit = realizedProfit;
+        }
+
+        public String getFullNameOfCustomer() {
+            return fullNameOfCustomer;
+        }
+
+        public Currency getCurrency() {
+            return currency;
+        }
+
+        /**
+         * @return empty when it does not fit.
+         */
+        public Optional<Amount> getRealizedProfit() {
+            return Optional.ofNullable(realizedProfit);
+        }
+    }
+
+    private final long[] countByStatus = new long[STATUSES.length];
+    private long workItems;
+    private final Map<Currency, CurrencyTotals> currencies = new HashMap<>(4);
+    // realized profit in minor units by currency and customer, null when not kept
+    private final Map<Currency, Map<String, WideSum>> profitByCustomer;
+
+    /**
+     * @param byCustomer also keep the realized profit of every customer
+     */
+    public ContractTotals(boolean byCustomer) {
+        profitByCustomer = byCustomer ? new HashMap<>(4) : null;
+    }
+
+    public boolean isByCustomer() {
+        return profitByCustomer != null;
+    }
+
+    /**
+     * Add a contract as it is now; not under its lock, so work added meanwhile may or may not be counted.
+     */
+    public void add(Contract c) {
+        var status = c.getStatus();
+        var quoted = c.getQuotedPrice();
+        // one read of the running total, so the profit adds up
+        long costOfWork = c.getTotalCostOfWork().getMinorUnits();
+        add(status, quoted.getCurrency(), quoted.getMinorUnits(), costOfWork, c.getWorkDone().size());
+        if (status == Contract.Status.FINALIZED && profitByCustomer != null) {
+            customerProfit(c.getFullNameOfCustomer(), quoted.getCurrency()).add(quoted.getMinorUnits()).subtract(costOfWork);
+        }
+    }
+
+    /**
+     * Add a contract by its parts, without the profit of its customer.
+     */
+    public void add(Contract.Status status, Currency currency, long quotedMinorUnits, long costOfWorkMinorUnits, int workItems) {
+        countByStatus[status.ordinal()]++;
+        this.workItems += workItems;
+        if (status == Contract.Status.ATWORK || status == Contract.Status.FINALIZED) {
+            var t = currencyTotals(currency);
+            t.promoted++;
+            t.quoted.add(quotedMinorUnits);
+            t.costOfWork.add(costOfWorkMinorUnits);
+            if (status == Contract.Status.FINALIZED) {
+                t.profit.add(quotedMinorUnits).subtract(costOfWorkMinorUnits);
+            }
+        }
+    }
+
+    /**
+     * Add totals that were counted elsewhere, e.g. by another node.
+     */
+    public void addCount(Contract.Status status, long count) {
+        countByStatus[status.ordinal()] += count;
+    }
+
+    public void addWorkItems(long count) {
+        workItems += count;
+    }
+
+    /**
+     * @param quotedRevenue null when it did not fit where it was counted, as do the other amounts
+     */
+    public void addCurrency(Currency currency, long promoted, Amount quotedRevenue, Amount totalCostOfWork, Amount realizedProfit) {
+        addCurrency(currency, promoted, sum(quotedRevenue), sum(totalCostOfWork), sum(realizedProfit));
+    }
+
+    void addCurrency(Currency currency, long promoted, WideSum quoted, WideSum costOfWork, WideSum profit) {
+        currencyTotals(currency).add(promoted, quoted, costOfWork, profit);
+    }
+
+    /**
+     * Does nothing when not by customer.
+     * @param realizedProfit null when it did not fit where it was counted
+     */
+    public void addCustomerProfit(String fullNameOfCustomer, Currency currency, Amount realizedProfit) {
+        addCustomerProfit(fullNameOfCustomer, currency, sum(realizedProfit));
+    }
+
+    void addCustomerProfit(String fullNameOfCustomer, Currency currency, WideSum profit) {
+        if (profitByCustomer != null) {
+            customerProfit(fullNameOfCustomer, currency).add(profit);
+        }
+    }
+
+    /**
+     * Add the other totals to these.
+     * @return these totals.
+     */
+    public ContractTotals merge(ContractTotals other) {
+        for (int i = 0; i < countByStatus.length; i++) {
+            countByStatus[i] += other.countByStatus[i];
+        }
+        workItems += other.workItems;
+        for (var t : other.currencies.values()) {
+            currencyTotals(t.currency).add(t.promoted, t.quoted, t.costOfWork, t.profit);
+        }
+        if (profitByCustomer != null && other.profitByCustomer != null) {
+            other.profitByCustomer.forEach((currency, customers) ->
+                    customers.forEach((name, profit) -> addCustomerProfit(name, currency, profit)));
+        }
+        return this;
+    }
+
+    public long getCount(Contract.Status status) {
+        return countByStatus[status.ordinal()];
+    }
+
+    public long getWorkItems() {
+        return workItems;
+    }
+
+    /**
+     * @return by currency code.
+     */
+    public List<CurrencyTotals> getCurrencies() {
+        var sorted = new ArrayList<>(currencies.values());
+        sorted.sort(Comparator.comparing(t -> t.currency.getCurrencyCode()));
+        return sorted;
+    }
+
+    /**
+     * @return the customers with the most realized profit, at most the limit per currency;
+     * by currency code, then most profit first, and a profit that did not fit where it was counted before all others.
+     */
+    public List<CustomerProfit> getTopCustomers(int limit) {
+        var top = new ArrayList<CustomerProfit>();
+        if (profitByCustomer == null || limit <= 0) {
+            return top;
+        }
+        var byCode = new TreeMap<String, Currency>();
+        profitByCustomer.keySet().forEach(c -> byCode.put(c.getCurrencyCode(), c));
+        for (var currency : byCode.values()) {
+            profitByCustomer.get(currency).entrySet().stream()
+                    .sorted(Map.Entry.<String, WideSum>comparingByValue().reversed().thenComparing(Map.Entry::getKey))
+                    .limit(limit)
+                    .forEach(e -> top.add(new CustomerProfit(e.getKey(), currency, amount(e.getValue(), currency).orElse(null))));
+        }
+        return top;
+    }
+
+    private CurrencyTotals currencyTotals(Currency currency) {
+        return currencies.computeIfAbsent(currency, CurrencyTotals::new);
+    }
+
+    private WideSum customerProfit(String fullNameOfCustomer, Currency currency) {
+        return profitByCustomer.computeIfAbsent(currency, k -> new HashMap<>())
+                .computeIfAbsent(fullNameOfCustomer, k -> new WideSum());
+    }
+
+    private static WideSum sum(Amount amount) {
+        var sum = new WideSum();
+        if (amount == null) {
+            sum.setUnknown();
+        } else {
+            sum.add(amount.getMinorUnits());
+        }
+        return sum;
+    }
+
+    private static Optional<Amount> amount(WideSum sum, Currency currency) {
+        return sum.fitsInLong() ? Optional.of(Amount.ofMinorUnits(sum.longValue(), currency)) : Optional.empty();
+    }
+}
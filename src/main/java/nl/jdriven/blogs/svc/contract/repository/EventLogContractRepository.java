@@ -0,0 +1,180 @@
+package nl.jdriven.blogs.svc.contract.repository;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import nl.jdriven.blogs.svc.contract.logging.LifecycleLog;
+import nl.jdriven.blogs.svc.contract.model.event.ContractEvent;
+import nl.jdriven.blogs.svc.contract.store.proto.ContractEventRecord;
+import nl.jdriven.blogs.svc.contract.store.proto.StoredContract;
+
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Persistent engine: contracts are served from memory like {@link InMemoryContractRepository},
+ * and every event is written ahead to a {@link ContractEventLog}.
+ * Periodically the whole store is written to a snapshot, after which the log before it is dropped.
+ * On startup the latest snapshot is loaded and only the log after it is replayed, both spread over
+ * all cores with contracts partitioned by id.
+ * Failures of the store itself, such as a snapshot that could not be written, go to the {@link LifecycleLog}.
+ */
+public class EventLogContractRepository extends InMemoryContractRepository {
+    private final ContractEventLog log;
+    private final ContractSnapshots snapshots;
+    private final LifecycleLog lifecycleLog;
+    private final ScheduledExecutorService snapshotScheduler;
+    // the batch running on this thread, null outside a batch
+    private final ThreadLocal<Batch> currentBatch = new ThreadLocal<>();
+
+    private static final class Batch {
+        // highest position journaled
+        long position;
+        // callbacks of the changes, run once the batch is durable
+        final List<Runnable> whenDurable = new ArrayList<>();
+    }
+
+    /**
+     * @param syncOnAppend     wait for the group commit fsync before a change returns,
+     *                         otherwise the log is forced to disk in the background.
+     * @param snapshotInterval time between snapshots, zero for none except through {@link #snapshot()}.
+     */
+    public EventLogContractRepository(Path dir, boolean syncOnAppend, Duration snapshotInterval) {
+        this(dir, syncOnAppend, snapshotInterval, LifecycleLog.OFF);
+    }
+
+    public EventLogContractRepository(Path dir, boolean syncOnAppend, Duration snapshotInterval, LifecycleLog lifecycleLog) {
+        this(dir, ContractEventLog.DEFAULT_SEGMENT_SIZE, syncOnAppend, snapshotInterval, lifecycleLog);
+    }
+
+    public EventLogContractRepository(Path dir, int segmentSize, boolean syncOnAppend, Duration snapshotInterval) {
+        this(dir, segmentSize, syncOnAppend, snapshotInterval, LifecycleLog.OFF);
+    }
+
+    public EventLogContractRepository(Path dir, int segmentSize, boolean syncOnAppend, Duration snapshotInterval,
+                                      LifecycleLog lifecycleLog) {
+        this.lifecycleLog = lifecycleLog;
+        log = new ContractEventLog(dir, segmentSize, syncOnAppend);
+        snapshots = new ContractSnapshots(dir);
+        recover();
+        if (snapshotInterval.isZero()) {
+            snapshotScheduler = null;
+        } else {
+            snapshotScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                var t = new Thread(r, "contract-snapshot");
+                t.setDaemon(true);
+                return t;
+            });
+            snapshotScheduler.scheduleWithFixedDelay(this::scheduledSnapshot,
+                    snapshotInterval.toMillis(), snapshotInterval.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Write all contracts to a new snapshot and drop the log segments it makes obsolete.
+     * Updates continue while the snapshot is written; every contract is copied in a consistent state,
+     * changes that are not in the copy are replayed from the log on startup.
+     */
+    public synchronized void snapshot() {
+        long position = log.writtenPosition();
+        // everything journaled before the position is applied, and a new contract is in the map, after this
+        awaitUpdatesInProgress();
+        var contracts = stream()
+                .map(c -> read(c, ContractStoreCodec::encode))
+                .iterator();
+        snapshots.write(position, contracts);
+        log.truncateBefore(position);
+    }
+
+    @Override
+    public void batch(Runnable changes) {
+        if (currentBatch.get() != null) {
+            changes.run();
+            return;
+        }
+        var batch = new Batch();
+        currentBatch.set(batch);
+        try {
+            changes.run();
+        } finally {
+            currentBatch.remove();
+            try {
+                log.awaitDurable(batch.position);
+            } finally {
+                batch.whenDurable.forEach(Runnable::run);
+            }
+        }
+    }
+
+    @Override
+    protected long journal(ContractEvent event, long version) {
+        return log.append(ContractStoreCodec.encode(event, version));
+    }
+
+    @Override
+    protected void awaitJournaled(long position) {
+        var batch = currentBatch.get();
+        if (batch != null) {
+            batch.position = Math.max(batch.position, position);
+        } else {
+            log.awaitDurable(position);
+        }
+    }
+
+    @Override
+    protected void awaitJournaled(long position, Runnable whenDurable) {
+        var batch = currentBatch.get();
+        if (batch == null) {
+            super.awaitJournaled(position, whenDurable);
+            return;
+        }
+        batch.position = Math.max(batch.position, position);
+        if (whenDurable != null) {
+            batch.whenDurable.add(whenDurable);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (snapshotScheduler != null) {
+            snapshotScheduler.shutdownNow();
+        }
+        log.close();
+    }
+
+    private void recover() {
+        int partitions = Runtime.getRuntime().availableProcessors();
+        // a snapshot has each contract only once, so any spread over the workers will do
+        var fromSnapshot = new PartitionedReplay<byte[]>(partitions, bytes -> restore(ContractStoreCodec.decode(parse(bytes))));
+        int[] count = {0};
+        long position = snapshots.readLatest(bytes -> fromSnapshot.submit(count[0]++, bytes));
+        fromSnapshot.finish();
+
+        // events of one contract must stay in order, so they always go to the same worker
+        var fromLog = new PartitionedReplay<ContractEventRecord>(partitions,
+                record -> restore(ContractStoreCodec.decode(record), record.getVersion()));
+        log.open(position, record -> fromLog.submit(ContractStoreCodec.contractId(record).hashCode(), record));
+        fromLog.finish();
+    }
+
+    private void scheduledSnapshot() {
+        try {
+            snapshot();
+        } catch (RuntimeException e) {
+            // try again next time, the log still has everything
+            lifecycleLog.log(LifecycleLog.Level.WARN, "snapshot.failed", null, "error", e);
+        }
+    }
+
+    private static StoredContract parse(byte[] bytes) {
+        try {
+            return StoredContract.parseFrom(bytes);
+        } catch (InvalidProtocolBufferException e) {
+            throw new UncheckedIOException("Corrupt contract in snapshot", e);
+        }
+    }
+}
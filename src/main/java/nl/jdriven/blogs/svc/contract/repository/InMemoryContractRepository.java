@@ -0,0 +1,357 @@
+package nl.jdriven.blogs.svc.contract.repository;
+
+import nl.jdriven.blogs.svc.contract.model.event.ContractEvent;
+import nl.jdriven.blogs.svc.contract.model.exception.NotFoundException;
+import nl.jdriven.blogs.svc.contract.model.main.Contract;
+import nl.jdriven.blogs.svc.contract.model.main.ContractId;
+
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * Keeps all contracts on the heap in a ConcurrentHashMap, plus a ConcurrentSkipListSet of the ids for scans in id order
+ * (ids are time-ordered, so new contracts are added at the end of it)
+ * and a {@link ContractIndex} on status and customer name.
+ * Updates are serialized per contract by a fixed set of lock stripes, so updates of different
+ * contracts hardly ever contend and no global lock is needed; reads never lock.
+ * Once FINALIZED a contract cannot change anymore, and it is moved off the heap to a {@link ContractArchive};
+ * only its id stays, so a scan in id order never misses a contract that moves while it runs.
+ * Finds and scans look in both, so callers do not notice the difference.
+ * Other contracts can be removed, which takes away their id as well.
+ * {@link RunningTotals} are kept up to date with every change.
+ * Subclasses can persist every event through {@link #journal(ContractEvent, long)}.
+ */
+public class InMemoryContractRepository implements ContractRepository {
+    private final ConcurrentHashMap<ContractId, Contract> contracts = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListSet<ContractId> ids = new ConcurrentSkipListSet<>();
+    private final ContractIndex index = new ContractIndex();
+    private final ContractArchive archive = new ContractArchive();
+    private final LongAdder workItems = new LongAdder();
+    private final RunningTotals running = new RunningTotals();
+    private final ReentrantLock[] stripes;
+
+    public InMemoryContractRepository() {
+        this(Runtime.getRuntime().availableProcessors() * 16);
+    }
+
+    public InMemoryContractRepository(int minimumStripes) {
+        // power of two so the stripe can be selected with a mask
+        int count = Integer.highestOneBit(Math.max(1, minimumStripes - 1)) << 1;
+        stripes = new ReentrantLock[count];
+        for (int i = 0; i < count; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    @Override
+    public void add(Contract contract, Function<Contract, Runnable> added) {
+        long position;
+        Runnable whenDurable;
+        var lock = stripeFor(contract.getId());
+        lock.lock();
+        try {
+            if (contracts.containsKey(contract.getId()) || archive.find(contract.getId()) != null) {
+                throw new IllegalStateException("Duplicate contract id " + contract.getId());
+            }
+            position = journal(ContractEvent.quoteCreated(contract), contract.getVersion());
+            put(contract);
+            whenDurable = added.apply(contract);
+        } finally {
+            lock.unlock();
+        }
+        awaitJournaled(position, whenDurable);
+    }
+
+    @Override
+    public Contract find(ContractId id) {
+        // a contract that is being archived is added to the archive before it leaves the heap
+        var c = contracts.get(id);
+        return c != null ? c : archive.find(id);
+    }
+
+    @Override
+    public Contract update(ContractId id, Function<Contract, ContractEvent> decision, Function<Contract, Runnable> applied) {
+        var c = find(id);
+        if (c == null) {
+            throw NotFoundException.INSTANCE;
+        }
+        long position;
+        Runnable whenDurable;
+        var lock = stripeFor(id);
+        lock.lock();
+        try {
+            var event = decision.apply(c);
+            if (c.getStatus() == Contract.Status.FINALIZED) {
+                throw new IllegalStateException("Contract " + id + " is finalized, it cannot be changed by " + event.getType());
+            }
+            long version = c.getVersion() + 1;
+            position = journal(event, version);
+            apply(event, c, version);
+            whenDurable = applied.apply(c);
+        } finally {
+            lock.unlock();
+        }
+        awaitJournaled(position, whenDurable);
+        return c;
+    }
+
+    @Override
+    public boolean remove(ContractId id, Predicate<Contract> condition) {
+        long position;
+        var lock = stripeFor(id);
+        lock.lock();
+        try {
+            var c = contracts.get(id);
+            if (c == null || !condition.test(c)) {
+                return false;
+            }
+            position = journal(ContractEvent.evicted(id), c.getVersion() + 1);
+            removeFromHeap(c);
+            ids.remove(id);
+        } finally {
+            lock.unlock();
+        }
+        awaitJournaled(position);
+        return true;
+    }
+
+    @Override
+    public int size() {
+        return contracts.size() + archive.size();
+    }
+
+    @Override
+    public long workItemCount() {
+        return workItems.sum();
+    }
+
+    @Override
+    public Stream<Contract> stream() {
+        // contracts archived while the heap is streamed can be in both, see restore(Contract);
+        // the archive is only sized once the heap is done, so none is missing from both
+        return Stream.concat(contracts.values().stream(), archive.stream());
+    }
+
+    @Override
+    public Stream<ScannedContract> scan(ContractId afterId) {
+        var from = afterId == null ? ids : ids.tailSet(afterId, false);
+        return from.stream()
+                .map(id -> {
+                    var c = find(id);
+                    return c == null ? null : new ScannedContract(id.toString(), c);
+                })
+                .filter(Objects::nonNull);
+    }
+
+    @Override
+    public Stream<ScannedContract> scanIndexed(Set<Contract.Status> statuses, String customerNamePrefix, String afterCursor) {
+        return statuses.stream()
+                .sorted(Comparator.comparingInt(Enum::ordinal))
+                .flatMap(status -> status == Contract.Status.FINALIZED
+                        // all finalized contracts are archived, the index has no entries for them
+                        ? archive.scanIndexed(customerNamePrefix, afterCursor)
+                        : index.scan(EnumSet.of(status), customerNamePrefix, afterCursor)
+                        .map(entry -> {
+                            var c = contracts.get(entry.getValue());
+                            // skip the entry of the status a contract is just leaving
+                            return c == null || c.getStatus() != ContractIndex.statusOf(entry.getKey())
+                                    ? null : new ScannedContract(entry.getKey(), c);
+                        })
+                        .filter(Objects::nonNull));
+    }
+
+    /**
+     * The contracts on the heap and the archived ones are added up separately, the archive straight from its columns.
+     */
+    @Override
+    public ContractTotals totals(boolean byCustomer) {
+        // finalized contracts on the heap are being archived, they are counted there
+        var onHeap = contracts.values().parallelStream()
+                .filter(c -> c.getStatus() != Contract.Status.FINALIZED)
+                .collect(() -> new ContractTotals(byCustomer), ContractTotals::add, ContractTotals::merge);
+        return onHeap.merge(archive.totals(byCustomer));
+    }
+
+    @Override
+    public ContractTotals runningTotals() {
+        return running.get(workItems.sum());
+    }
+
+    @Override
+    public ContractIndexMXBean indexStatistics() {
+        return index;
+    }
+
+    @Override
+    public ContractArchiveMXBean archiveStatistics() {
+        return archive;
+    }
+
+    /**
+     * Called with the contract's lock held, before the event is applied, so events of one contract
+     * are journaled in the order they are applied.
+     * @param version the version of the contract once the event is applied
+     * @return position of the event in the journal, passed to {@link #awaitJournaled(long)}.
+     */
+    protected long journal(ContractEvent event, long version) {
+        return 0L;
+    }
+
+    /**
+     * Called after the contract's lock is released; may block until the journal position is durable.
+     */
+    protected void awaitJournaled(long position) {
+    }
+
+    /**
+     * {@link #awaitJournaled(long)}, then run the callback of the change, also when waiting failed.
+     * @param whenDurable null when there is nothing to run
+     */
+    protected void awaitJournaled(long position, Runnable whenDurable) {
+        try {
+            awaitJournaled(position);
+        } finally {
+            if (whenDurable != null) {
+                whenDurable.run();
+            }
+        }
+    }
+
+    /**
+     * Run the reader on the contract while it cannot be updated, to get a consistent view of it.
+     */
+    protected <T> T read(Contract contract, Function<Contract, T> reader) {
+        var lock = stripeFor(contract.getId());
+        lock.lock();
+        try {
+            return reader.apply(contract);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wait until the updates that are running right now have completed, by passing through every stripe once.
+     */
+    protected void awaitUpdatesInProgress() {
+        for (var lock : stripes) {
+            lock.lock();
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Put a contract read back from a snapshot. A contract that was archived while the snapshot was written
+     * can be in it twice, the copy with the highest version is kept. Different contracts may be restored
+     * concurrently. Only to be used while restoring, before the repository is shared.
+     */
+    protected void restore(Contract contract) {
+        var lock = stripeFor(contract.getId());
+        lock.lock();
+        try {
+            var existing = find(contract.getId());
+            if (existing != null) {
+                if (existing.getVersion() >= contract.getVersion()) {
+                    return;
+                }
+                // only the copy on the heap can be older
+                removeFromHeap(existing);
+            }
+            put(contract);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Apply an event read back from a journal, without journaling it again. Events that are already
+     * part of the contract's version are skipped, so replay can overlap with a snapshot.
+     * Events of one contract must be restored in order, different contracts may be restored concurrently.
+     * Only to be used while restoring, before the repository is shared.
+     * @param version the version of the contract after the event, 0 when not known
+     */
+    protected void restore(ContractEvent event, long version) {
+        var c = find(event.getContractId());
+        if (event.getType() == ContractEvent.Type.QUOTE_CREATED) {
+            if (c == null) {
+                put(event.toContract());
+            }
+            return;
+        }
+        if (event.getType() == ContractEvent.Type.EVICTED) {
+            // not in a snapshot that was written after it was removed
+            if (c != null && contracts.containsKey(c.getId())) {
+                removeFromHeap(c);
+                ids.remove(c.getId());
+            }
+            return;
+        }
+        if (c == null) {
+            throw new IllegalStateException("Journal has " + event.getType() + " for unknown contract " + event.getContractId());
+        }
+        if (version == 0L) {
+            version = c.getVersion() + 1;
+        } else if (version <= c.getVersion()) {
+            return;
+        } else if (c.getStatus() == Contract.Status.FINALIZED) {
+            throw new IllegalStateException("Journal has " + event.getType() + " for finalized contract " + event.getContractId());
+        } else if (version != c.getVersion() + 1) {
+            throw new IllegalStateException("Journal is missing changes of contract " + event.getContractId()
+                    + ", at version " + c.getVersion() + " but next change is version " + version);
+        }
+        apply(event, c, version);
+    }
+
+    private void put(Contract contract) {
+        if (contract.getStatus() == Contract.Status.FINALIZED) {
+            archive.add(contract);
+        } else {
+            contracts.put(contract.getId(), contract);
+            index.add(contract);
+        }
+        ids.add(contract.getId());
+        workItems.add(contract.getWorkDone().size());
+        running.added(contract);
+    }
+
+    private void removeFromHeap(Contract contract) {
+        index.remove(contract, contract.getStatus());
+        contracts.remove(contract.getId());
+        workItems.add(-contract.getWorkDone().size());
+        running.removed(contract);
+    }
+
+    private void apply(ContractEvent event, Contract c, long version) {
+        var previous = c.getStatus();
+        long previousCostOfWork = c.getTotalCostOfWork().getMinorUnits();
+        event.applyTo(c);
+        c.setVersion(version);
+        if (event.getType() == ContractEvent.Type.WORK_ADDED) {
+            workItems.increment();
+        }
+        running.changed(c, previous, previousCostOfWork);
+        if (c.getStatus() == Contract.Status.FINALIZED) {
+            // into the archive before leaving the heap, so finds do not miss it in between
+            archive.add(c);
+            index.remove(c, previous);
+            contracts.remove(c.getId());
+        } else if (c.getStatus() != previous) {
+            index.statusChanged(c, previous);
+        }
+    }
+
+    private ReentrantLock stripeFor(ContractId id) {
+        int h = id.hashCode();
+        // spread the high bits down, the same way HashMap does
+        return stripes[(h ^ (h >>> 16)) & (stripes.length - 1)];
+    }
+}
@@ -0,0 +1,116 @@
+package nl.jdriven.blogs.svc.contract.repository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Applies items on a fixed number of worker threads, one per partition. Items submitted for the same
+ * partition are applied in submission order, so partitioning by contract id keeps the order of the
+ * events of each contract while different contracts are restored in parallel.
+ * Items are handed over in batches through bounded queues, so a fast reader waits for the workers
+ * instead of buffering the whole input.
+ */
+final class PartitionedReplay<T> {
+    private static final int BATCH_SIZE = 1024;
+    private static final int QUEUED_BATCHES = 16;
+    private static final List<Object> END = List.of();
+
+    private final Consumer<T> apply;
+    private final List<BlockingQueue<List<T>>> queues = new ArrayList<>();
+    private final List<List<T>> batches = new ArrayList<>();
+    private final List<Thread> workers = new ArrayList<>();
+    private final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+
+    PartitionedReplay(int partitions, Consumer<T> apply) {
+        this.apply = apply;
+        for (int i = 0; i < partitions; i++) {
+            var queue = new ArrayBlockingQueue<List<T>>(QUEUED_BATCHES);
+            queues.add(queue);
+            batches.add(new ArrayList<>(BATCH_SIZE));
+            var worker = new Thread(() -> work(queue), "contract-replay-" + i);
+            worker.setDaemon(true);
+            workers.add(worker);
+            worker.start();
+        }
+    }
+
+    int partitions() {
+        return queues.size();
+    }
+
+    /**
+     * Queue the item for the partition the key hashes to; only to be called from a single thread.
+     */
+    void submit(int key, T item) {
+        int partition = Math.floorMod(key ^ (key >>> 16), queues.size());
+        var batch = batches.get(partition);
+        batch.add(item);
+        if (batch.size() == BATCH_SIZE) {
+            hand(partition, batch);
+            batches.set(partition, new ArrayList<>(BATCH_SIZE));
+        }
+    }
+
+    /**
+     * Wait until every submitted item has been applied.
+     * @throws RuntimeException the first failure of any worker
+     */
+    @SuppressWarnings("unchecked")
+    void finish() {
+        for (int i = 0; i < queues.size(); i++) {
+            hand(i, batches.get(i));
+            hand(i, (List<T>) END);
+        }
+        for (var worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while restoring contracts", e);
+            }
+        }
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+    }
+
+    private void hand(int partition, List<T> batch) {
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+        try {
+            queues.get(partition).put(batch);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while restoring contracts", e);
+        }
+    }
+
+    private void work(BlockingQueue<List<T>> queue) {
+        boolean failed = false;
+        while (true) {
+            List<T> batch;
+            try {
+                batch = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (batch == END) {
+                return;
+            }
+            // keep draining after a failure so the submitter never blocks on a full queue
+            if (!failed) {
+                try {
+                    batch.forEach(apply);
+                } catch (RuntimeException e) {
+                    failure.compareAndSet(null, e);
+                    failed = true;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package nl.jdriven.blogs.svc.contract.repository;
+
+import nl.jdriven.blogs.svc.contract.model.main.Amount;
+import nl.jdriven.blogs.svc.contract.model.main.Contract;
+
+import java.math.BigInteger;
+import java.util.Currency;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The {@link ContractTotals} of all stored contracts, except those by customer, kept up to date by the repository
+ * with every change so they can be read at any time without going over the contracts. A change takes off what
+ * the contract added before and adds it as it is now. The counters are LongAdders, so writers of different
+ * contracts do not contend; a reader can see part of a change that is being made. An amount is added as its high and
+ * low 32 bits, to two counters that cannot wrap around, so the totals do not overflow.
+ */
+final class RunningTotals {
+    private static final int PROMOTED = 0;
+    // high and low counter of each amount
+    private static final int QUOTED = 1;
+    private static final int COST_OF_WORK = 3;
+    private static final int PROFIT = 5;
+    private static final int COUNTERS = 7;
+
+    private final LongAdder[] countByStatus = new LongAdder[Contract.Status.values().length];
+    private final ConcurrentHashMap<Currency, LongAdder[]> currencies = new ConcurrentHashMap<>();
+
+    RunningTotals() {
+        for (int i = 0; i < countByStatus.length; i++) {
+            countByStatus[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * A contract is stored as it is.
+     */
+    void added(Contract c) {
+        add(c.getStatus(), c.getQuotedPrice(), c.getTotalCostOfWork().getMinorUnits(), 1);
+    }
+
+    /**
+     * A contract is no longer stored.
+     */
+    void removed(Contract c) {
+        add(c.getStatus(), c.getQuotedPrice(), c.getTotalCostOfWork().getMinorUnits(), -1);
+    }
+
+    /**
+     * A stored contract changed from the previous status and cost of work to what it is now.
+     */
+    void changed(Contract c, Contract.Status previousStatus, long previousCostOfWork) {
+        var status = c.getStatus();
+        long costOfWork = c.getTotalCostOfWork().getMinorUnits();
+        if (status == previousStatus) {
+            if (isPromoted(status) && costOfWork != previousCostOfWork) {
+                // work added, the only change that keeps the status
+                var counters = counters(c.getQuotedPrice().getCurrency());
+                add(counters, COST_OF_WORK, costOfWork, 1);
+                add(counters, COST_OF_WORK, previousCostOfWork, -1);
+            }
+            return;
+        }
+        add(previousStatus, c.getQuotedPrice(), previousCostOfWork, -1);
+        add(status, c.getQuotedPrice(), costOfWork, 1);
+    }
+
+    /**
+     * @param workItems of all stored contracts
+     */
+    ContractTotals get(long workItems) {
+        var totals = new ContractTotals(false);
+        for (var status : Contract.Status.values()) {
+            totals.addCount(status, countByStatus[status.ordinal()].sum());
+        }
+        totals.addWorkItems(workItems);
+        currencies.forEach((currency, counters) -> totals.addCurrency(currency, counters[PROMOTED].sum(),
+                sum(counters, QUOTED), sum(counters, COST_OF_WORK), sum(counters, PROFIT)));
+        return totals;
+    }
+
+    private void add(Contract.Status status, Amount quoted, long costOfWork, int sign) {
+        countByStatus[status.ordinal()].add(sign);
+        if (!isPromoted(status)) {
+            return;
+        }
+        var counters = counters(quoted.getCurrency());
+        counters[PROMOTED].add(sign);
+        add(counters, QUOTED, quoted.getMinorUnits(), sign);
+        add(counters, COST_OF_WORK, costOfWork, sign);
+        if (status == Contract.Status.FINALIZED) {
+            add(counters, PROFIT, quoted.getMinorUnits(), sign);
+            add(counters, PROFIT, costOfWork, -sign);
+        }
+    }
+
+    private LongAdder[] counters(Currency currency) {
+        return currencies.computeIfAbsent(currency, c -> {
+            var counters = new LongAdder[COUNTERS];
+            for (int i = 0; i < counters.length; i++) {
+                counters[i] = new LongAdder();
+            }
+            return counters;
+        });
+    }
+
+    // the high counter sums less than 2^31 per contract and the low one less than 2^32, neither wraps
+    private static void add(LongAdder[] counters, int amount, long minorUnits, int sign) {
+        counters[amount].add(sign * (minorUnits >> 32));
+        counters[amount + 1].add(sign * (minorUnits & 0xFFFFFFFFL));
+    }
+
+    private static WideSum sum(LongAdder[] counters, int amount) {
+        return WideSum.of(BigInteger.valueOf(counters[amount].sum()).shiftLeft(32)
+                .add(BigInteger.valueOf(counters[amount + 1].sum())));
+    }
+
+    private static boolean isPromoted(Contract.Status status) {
+        return status == Contract.Status.ATWORK || status == Contract.Status.FINALIZED;
+    }
+}
@@ -0,0 +1,24 @@
+package nl.jdriven.blogs.svc.contract.repository;
+
+import nl.jdriven.blogs.svc.contract.model.main.Contract;
+
+/**
+ * A contract found by a scan, with the cursor to continue the same scan right after it.
+ */
+public final class ScannedContract {
+    private final String cursor;
+    private final Contract contract;
+
+    public ScannedContract(String cursor, Contract contract) {
+        this.cursor = cursor;
+        this.contract = contract;
+    }
+
+    public String getCursor() {
+        return cursor;
+    }
+
+    public Contract getContract() {
+        return contract;
+    }
+}
@@ -0,0 +1,66 @@
+package nl.jdriven.blogs.svc.contract.repository;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Lazy merge of two streams that are sorted in the same order.
+ */
+final class SortedMerge<T> implements Iterator<T> {
+    private final Iterator<T> first;
+    private final Iterator<T> second;
+    private final Comparator<? super T> order;
+    private T nextOfFirst;
+    private T nextOfSecond;
+
+    private SortedMerge(Iterator<T> first, Iterator<T> second, Comparator<? super T> order) {
+        this.first = first;
+        this.second = second;
+        this.order = order;
+        nextOfFirst = first.hasNext() ? first.next() : null;
+        nextOfSecond = second.hasNext() ? second.next() : null;
+    }
+
+    /**
+     * Elements that are equal in the order are taken only once, from the first stream;
+     * that way an element that is being moved from one to the other is not seen twice.
+     * Nothing is read before the merged stream is consumed.
+     */
+    static <T> Stream<T> merge(Stream<T> first, Stream<T> second, Comparator<? super T> order) {
+        return StreamSupport.stream(
+                () -> Spliterators.spliteratorUnknownSize(new SortedMerge<>(first.iterator(), second.iterator(), order),
+                        Spliterator.ORDERED | Spliterator.NONNULL),
+                Spliterator.ORDERED | Spliterator.NONNULL, false)
+                .onClose(first::close)
+                .onClose(second::close);
+    }
+
+    @Override
+    public boolean hasNext() {
+        return nextOfFirst != null || nextOfSecond != null;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        T result;
+        if (nextOfSecond == null || (nextOfFirst != null && order.compare(nextOfFirst, nextOfSecond) <= 0)) {
+            result = nextOfFirst;
+            if (nextOfSecond != null && order.compare(nextOfFirst, nextOfSecond) == 0) {
+                nextOfSecond = second.hasNext() ? second.next() : null;
+            }
+            nextOfFirst = first.hasNext() ? first.next() : null;
+        } else {
+            result = nextOfSecond;
+            nextOfSecond = second.hasNext() ? second.next() : null;
+        }
+        return result;
+    }
+}
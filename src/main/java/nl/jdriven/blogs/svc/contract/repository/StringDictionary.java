@@ -0,0 +1,119 @@
+package nl.jdriven.blogs.svc.contract.repository;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Off-heap dictionary of strings: every distinct string is stored once, as UTF-8 bytes in direct buffers,
+ * and is referred to by its code. The only thing on the heap is an open addressing table of codes
+ * to find the code of a string, about 8 bytes per distinct string.
+ * Like {@link ColumnChunks}: one writer at a time, lock-free readers of the codes published to them.
+ */
+final class StringDictionary {
+    private static final int DATA_CHUNK_BYTES = 1 << 20;
+    private static final int ENTRY_CHUNK_ROWS = 8192;
+    // entry columns
+    private static final int LOCATION = 0;
+    private static final int LENGTH = 1;
+    private static final int HASH = 2;
+
+    private final ColumnChunks entries = new ColumnChunks(ENTRY_CHUNK_ROWS, 8, 4, 4);
+    private volatile ByteBuffer[] data = new ByteBuffer[0];
+    private int dataPosition = DATA_CHUNK_BYTES;
+    private long dataBytes;
+    // code + 1 of every string, 0 is a free slot; at most half full
+    private int[] table = new int[1024];
+    private int size;
+
+    /**
+     * @return the code of the string, which is added when it is new.
+     */
+    int encode(String s) {
+        int hash = s.hashCode();
+        var bytes = s.getBytes(StandardCharsets.UTF_8);
+        int mask = table.length - 1;
+        for (int slot = spread(hash) & mask; ; slot = (slot + 1) & mask) {
+            int code = table[slot] - 1;
+            if (code < 0) {
+                code = add(bytes, hash);
+                table[slot] = code + 1;
+                if (size * 2 > table.length) {
+                    rehash();
+                }
+                return code;
+            }
+            if (entries.getInt(code, HASH) == hash && equals(code, bytes)) {
+                return code;
+            }
+        }
+    }
+
+    String decode(int code) {
+        var bytes = new byte[entries.getInt(code, LENGTH)];
+        long location = entries.getLong(code, LOCATION);
+        data[(int) (location >>> 32)].duplicate().position((int) location).get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    int size() {
+        return size;
+    }
+
+    long offHeapBytes() {
+        return entries.offHeapBytes() + dataBytes;
+    }
+
+    private int add(byte[] bytes, int hash) {
+        if (dataPosition + bytes.length > DATA_CHUNK_BYTES) {
+            // a string longer than a chunk gets a buffer of its own
+            var chunk = ByteBuffer.allocateDirect(Math.max(DATA_CHUNK_BYTES, bytes.length));
+            dataBytes += chunk.capacity();
+            var current = data;
+            var grown = Arrays.copyOf(current, current.length + 1);
+            grown[current.length] = chunk;
+            data = grown;
+            dataPosition = 0;
+        }
+        int chunkIndex = data.length - 1;
+        data[chunkIndex].duplicate().position(dataPosition).put(bytes);
+        int code = size++;
+        entries.putLong(code, LOCATION, (long) chunkIndex << 32 | dataPosition);
+        entries.putInt(code, LENGTH, bytes.length);
+        entries.putInt(code, HASH, hash);
+        dataPosition += bytes.length;
+        return code;
+    }
+
+    private boolean equals(int code, byte[] bytes) {
+        if (entries.getInt(code, LENGTH) != bytes.length) {
+            return false;
+        }
+        long location = entries.getLong(code, LOCATION);
+        var chunk = data[(int) (location >>> 32)];
+        int start = (int) location;
+        for (int i = 0; i < bytes.length; i++) {
+            if (chunk.get(start + i) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void rehash() {
+        var grown = new int[table.length * 2];
+        int mask = grown.length - 1;
+        for (int code = 0; code < size; code++) {
+            int slot = spread(entries.getInt(code, HASH)) & mask;
+            while (grown[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            grown[slot] = code + 1;
+        }
+        table = grown;
+    }
+
+    private static int spread(int h) {
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,107 @@
+package nl.jdriven.blogs.svc.contract.repository;
+
+import java.math.BigInteger;
+
+/**
+ * A sum of longs that does not overflow, for one thread at a time: the low 64 bits and how often they wrapped around,
+ * so the sum is wraps * 2^64 + low. Adding takes no allocation; only a sum that does not fit in a long is taken
+ * as a BigInteger. A sum can also be unknown, when a part of it was lost to an overflow elsewhere.
+ */
+final class WideSum implements Comparable<WideSum> {
+    private long low;
+    // up positive, down negative
+    private long wraps;
+    private boolean unknown;
+
+    /**
+     * @throws ArithmeticException when it does not fit in 128 bits
+     */
+    static WideSum of(BigInteger value) {
+        var sum = new WideSum();
+        sum.low = value.longValue();
+        // what is left is a multiple of 2^64
+        sum.wraps = value.subtract(BigInteger.valueOf(sum.low)).shiftRight(Long.SIZE).longValueExact();
+        return sum;
+    }
+
+    WideSum add(long value) {
+        long sum = low + value;
+        // the overflow test of Math.addExact
+        if (((low ^ sum) & (value ^ sum)) < 0) {
+            wraps += value < 0 ? -1 : 1;
+        }
+        low = sum;
+        return this;
+    }
+
+    WideSum subtract(long value) {
+        long difference = low - value;
+        // the overflow test of Math.subtractExact
+        if (((low ^ value) & (low ^ difference)) < 0) {
+            wraps += value < 0 ? 1 : -1;
+        }
+        low = difference;
+        return this;
+    }
+
+    WideSum add(WideSum other) {
+        add(other.low);
+        wraps += other.wraps;
+        unknown |= other.unknown;
+        return this;
+    }
+
+    WideSum subtract(WideSum other) {
+        subtract(other.low);
+        wraps -= other.wraps;
+        unknown |= other.unknown;
+        return this;
+    }
+
+    /**
+     * A part of the sum did not fit elsewhere, so the sum is not known from now on.
+     */
+    void setUnknown() {
+        unknown = true;
+    }
+
+    /**
+     * @return whether the sum is known and fits in a long.
+     */
+    boolean fitsInLong() {
+        return !unknown && wraps == 0;
+    }
+
+    /**
+     * @throws ArithmeticException when it does not {@link #fitsInLong() fit}
+     */
+    long longValue() {
+        if (!fitsInLong()) {
+            throw new ArithmeticException("Sum does not fit in a long");
+        }
+        return low;
+    }
+
+    /**
+     * @throws ArithmeticException when unknown
+     */
+    BigInteger bigIntegerValue() {
+        if (unknown) {
+            throw new ArithmeticException("Sum is not known");
+        }
+        return BigInteger.valueOf(wraps).shiftLeft(Long.SIZE).add(BigInteger.valueOf(low));
+    }
+
+    /**
+     * Unknown sums are greater than all others, as they were lost to an overflow.
+     */
+    @Override
+    public int compareTo(WideSum other) {
+        if (unknown || other.unknown) {
+            return Boolean.compare(unknown, other.unknown);
+        }
+        // the ranges of low for different wraps do not overlap
+        int byWraps = Long.compare(wraps, other.wraps);
+        return byWraps != 0 ? byWraps : Long.compare(low, other.low);
+    }
+}
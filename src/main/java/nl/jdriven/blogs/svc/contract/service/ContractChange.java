@@ -0,0 +1,48 @@
+package nl.jdriven.blogs.svc.contract.service;
+
+import nl.jdriven.blogs.svc.contract.model.event.ContractEvent;
+import nl.jdriven.blogs.svc.contract.model.main.Amount;
+import nl.jdriven.blogs.svc.contract.model.main.Contract;
+
+/**
+ * A change to a contract as it is told to the clients that watch, see {@link ContractFeed}.
+ */
+public final class ContractChange {
+    private final long sequence;
+    private final long timestampMillis;
+    private final ContractEvent event;
+    private final Contract.Status status;
+    // only for FINALIZED
+    private final Amount profit;
+
+    ContractChange(long sequence, long timestampMillis, ContractEvent event, Contract.Status status, Amount profit) {
+        this.sequence = sequence;
+        this.timestampMillis = timestampMillis;
+        this.event = event;
+        this.status = status;
+        this.profit = profit;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public long getTimestampMillis() {
+        return timestampMillis;
+    }
+
+    public ContractEvent getEvent() {
+        return event;
+    }
+
+    /**
+     * @return the status of the contract after the change.
+     */
+    public Contract.Status getStatus() {
+        return status;
+    }
+
+    public Amount getProfit() {
+        return profit;
+    }
+}
@@ -0,0 +1,160 @@
+package nl.jdriven.blogs.svc.contract.service;
+
+import nl.jdriven.blogs.svc.contract.model.event.ContractEvent;
+import nl.jdriven.blogs.svc.contract.model.main.Amount;
+import nl.jdriven.blogs.svc.contract.model.main.Contract;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The latest changes to contracts, for the clients that watch them. Changes are kept in a ring of fixed size
+ * and get increasing sequence numbers; a reader has a {@link Cursor} and reads at its own pace.
+ * Publishing a change only claims a sequence and fills its slot, it never waits for readers: a reader that
+ * falls more than the size of the ring behind misses the changes that were overwritten, and is told so.
+ * The sequence is claimed while the contract is locked, so changes of a contract are in the order they were made,
+ * and the slot is filled once the change is durable; readers stop at a claimed slot until it is filled.
+ * <p>
+ * Sequences start at the start time of the feed in microseconds, so they keep increasing when the server
+ * restarts (unless it made more than a million changes per second), and a client that continues after a
+ * change of an earlier run learns that it missed what happened in between.
+ */
+public class ContractFeed {
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+
+    private final AtomicReferenceArray<ContractChange> ring;
+    private final int mask;
+    // the next sequence to claim
+    private final AtomicLong claimed;
+    private final long first;
+
+    public ContractFeed() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity number of changes kept, rounded up to a power of two
+     */
+    public ContractFeed(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        ring = new AtomicReferenceArray<>(size);
+        mask = size - 1;
+        first = System.currentTimeMillis() * 1000;
+        claimed = new AtomicLong(first);
+    }
+
+    /**
+     * @return the change with the next sequence, not visible to readers until it is {@link #publish(ContractChange) published}.
+     */
+    ContractChange claim(ContractEvent event, Contract.Status status, Amount profit) {
+        return new ContractChange(claimed.getAndIncrement(), System.currentTimeMillis(), event, status, profit);
+    }
+
+    /**
+     * Make a claimed change visible to readers; every claimed change must be published, or readers stop at it.
+     */
+    void publish(ContractChange change) {
+        long sequence = change.getSequence();
+        int slot = (int) sequence & mask;
+        // a publisher that was delayed for a whole lap of the ring must not overwrite the newer change
+        var previous = ring.get(slot);
+        while ((previous == null || previous.getSequence() < sequence) && !ring.compareAndSet(slot, previous, change)) {
+            previous = ring.get(slot);
+        }
+    }
+
+    public int getCapacity() {
+        return ring.length();
+    }
+
+    /**
+     * @return the sequence of the last change, or one less than the first when there is none yet.
+     */
+    public long getLastSequence() {
+        return claimed.get() - 1;
+    }
+
+    /**
+     * @param afterSequence the last change the reader had, 0 to read the changes from now on
+     */
+    public Cursor cursor(long afterSequence) {
+        long last = getLastSequence();
+        if (afterSequence <= 0) {
+            return new Cursor(last);
+        }
+        if (afterSequence < first - 1 || afterSequence > last) {
+            // from an earlier run, or one that did not get this far: everything this run kept
+            var cursor = new Cursor(first - 1);
+            cursor.missed(afterSequence, first);
+            return cursor;
+        }
+        return new Cursor(afterSequence);
+    }
+
+    /**
+     * Reads the changes in order, for one thread at a time.
+     */
+    public final class Cursor {
+        private long position;
+        // -1 when nothing was missed
+        private long missedAfter = -1;
+        private long missedNext;
+
+        private Cursor(long position) {
+            this.position = position;
+        }
+
+        /**
+         * Check {@link #hasMissed()} after this, the gap comes before the change returned.
+         * @return the next change, or null when there is none yet.
+         */
+        public ContractChange next() {
+            while (true) {
+                long sequence = position + 1;
+                var change = ring.get((int) sequence & mask);
+                if (change == null || change.getSequence() < sequence) {
+                    // not published yet
+                    return null;
+                }
+                if (change.getSequence() == sequence) {
+                    position = sequence;
+                    return change;
+                }
+                // overwritten, continue at the oldest change that can still be there
+                long oldest = Math.max(sequence + 1, claimed.get() - ring.length());
+                missed(position, oldest);
+                position = oldest - 1;
+            }
+        }
+
+        /**
+         * @return true when changes were missed, after {@link #getMissedAfter()} and before {@link #getMissedNext()}.
+         */
+        public boolean hasMissed() {
+            return missedAfter >= 0;
+        }
+
+        public long getMissedAfter() {
+            return missedAfter;
+        }
+
+        public long getMissedNext() {
+            return missedNext;
+        }
+
+        /**
+         * The gap has been reported.
+         */
+        public void clearMissed() {
+            missedAfter = -1;
+        }
+
+        private void missed(long after, long next) {
+            // consecutive gaps are reported as one
+            if (missedAfter < 0) {
+                missedAfter = after;
+            }
+            missedNext = next;
+        }
+    }
+}
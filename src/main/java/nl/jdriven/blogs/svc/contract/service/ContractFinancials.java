@@ -0,0 +1,41 @@
+package nl.jdriven.blogs.svc.contract.service;
+
+import nl.jdriven.blogs.svc.contract.model.main.Amount;
+import nl.jdriven.blogs.svc.contract.model.main.Contract;
+import nl.jdriven.blogs.svc.contract.model.main.ContractId;
+
+/**
+ * Cost and profit of a contract at one moment, see {@link ContractService#financials(ContractId)}.
+ */
+public class ContractFinancials {
+    private final Contract.Status status;
+    private final Amount quotedPrice;
+    private final Amount totalCostOfWork;
+    private final Amount profit;
+
+    public ContractFinancials(Contract.Status status, Amount quotedPrice, Amount totalCostOfWork, Amount profit) {
+        this.status = status;
+        this.quotedPrice = quotedPrice;
+        this.totalCostOfWork = totalCostOfWork;
+        this.profit = profit;
+    }
+
+    public Contract.Status getStatus() {
+        return status;
+    }
+
+    public Amount getQuotedPrice() {
+        return quotedPrice;
+    }
+
+    public Amount getTotalCostOfWork() {
+        return totalCostOfWork;
+    }
+
+    /**
+     * Quoted price minus the total cost of work; only final when the status is FINALIZED.
+     */
+    public Amount getProfit() {
+        return profit;
+    }
+}
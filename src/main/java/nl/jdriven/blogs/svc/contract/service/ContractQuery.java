@@ -0,0 +1,48 @@
+package nl.jdriven.blogs.svc.contract.service;
+
+import nl.jdriven.blogs.svc.contract.model.main.Amount;
+import nl.jdriven.blogs.svc.contract.model.main.Contract;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Filter for listing contracts; every criterion that is null (or empty) matches all contracts.
+ */
+public class ContractQuery {
+    private final Set<Contract.Status> statuses;
+    private final String customerNamePrefix;
+    private final Amount minQuotedPrice;
+    private final Amount maxQuotedPrice;
+
+    public ContractQuery(Set<Contract.Status> statuses, String customerNamePrefix,
+                         Amount minQuotedPrice, Amount maxQuotedPrice) {
+        this.statuses = statuses == null || statuses.isEmpty() ? EnumSet.allOf(Contract.Status.class) : EnumSet.copyOf(statuses);
+        this.customerNamePrefix = customerNamePrefix == null ? "" : customerNamePrefix;
+        this.minQuotedPrice = minQuotedPrice;
+        this.maxQuotedPrice = maxQuotedPrice;
+    }
+
+    public boolean matches(Contract c) {
+        return statuses.contains(c.getStatus())
+                && c.getFullNameOfCustomer().regionMatches(true, 0, customerNamePrefix, 0, customerNamePrefix.length())
+                && (minQuotedPrice == null || c.getQuotedPrice().compareTo(minQuotedPrice) >= 0)
+                && (maxQuotedPrice == null || c.getQuotedPrice().compareTo(maxQuotedPrice) <= 0);
+    }
+
+    public Set<Contract.Status> getStatuses() {
+        return statuses;
+    }
+
+    public String getCustomerNamePrefix() {
+        return customerNamePrefix;
+    }
+
+    public Amount getMinQuotedPrice() {
+        return minQuotedPrice;
+    }
+
+    public Amount getMaxQuotedPrice() {
+        return maxQuotedPrice;
+    }
+}
@@ -1,50 +1,165 @@
 package nl.jdriven.blogs.svc.contract.service;
 
+import nl.jdriven.blogs.svc.contract.cluster.ShardMap;
+import nl.jdriven.blogs.svc.contract.logging.LifecycleLog;
+import nl.jdriven.blogs.svc.contract.model.event.ContractEvent;
 import nl.jdriven.blogs.svc.contract.model.exception.NotFoundException;
 import nl.jdriven.blogs.svc.contract.model.exception.PreConditionNotMetException;
+import nl.jdriven.blogs.svc.contract.model.main.Amount;
 import nl.jdriven.blogs.svc.contract.model.main.Contract;
+import nl.jdriven.blogs.svc.contract.model.main.ContractId;
 import nl.jdriven.blogs.svc.contract.model.main.WorkDone;
+import nl.jdriven.blogs.svc.contract.repository.ContractRepository;
+import nl.jdriven.blogs.svc.contract.repository.ContractTotals;
+import nl.jdriven.blogs.svc.contract.repository.InMemoryContractRepository;
+import nl.jdriven.blogs.svc.contract.repository.ScannedContract;
 
-import java.math.BigDecimal;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.UUID;
+import java.util.EnumSet;
+import java.util.stream.Stream;
 
 /**
  * this service implements the business logic of the Contract service.
+ * When the contracts are sharded over several nodes it only holds the contracts of the shards of this node,
+ * see {@link ShardMap}; new quotes get an id of one of those shards.
+ * Every change is published to the {@link ContractFeed} once it is stored.
+ * Quotes that are not promoted in time are abandoned, and later removed, by the {@link QuoteExpiry}.
  */
 public class ContractService {
-    private static final Map<String, Contract> contracts = new HashMap<>();
+    private static final PreConditionNotMetException NOT_AT_WORK = new PreConditionNotMetException("Not.at.work");
+    private static final PreConditionNotMetException NOT_A_QUOTE = new PreConditionNotMetException("Not.a.quote");
+    private static final PreConditionNotMetException COST_IN_OTHER_CURRENCY =
+            new PreConditionNotMetException(new String[]{"work.costOfWork"}, new String[]{"Input.Work.Cost.otherCurrency"});
+    private static final PreConditionNotMetException TOTAL_COST_TOO_LARGE =
+            new PreConditionNotMetException(new String[]{"work.costOfWork"}, new String[]{"Input.Work.Cost.totalTooLarge"});
+    private static final PreConditionNotMetException PAGE_TOKEN_INVALID =
+            new PreConditionNotMetException(new String[]{"pageToken"}, new String[]{"Input.PageToken.invalid"});
+
+    private final ContractRepository contracts;
+    private final LifecycleLog log;
+    private final IdempotencyTable idempotency;
+    private final ShardMap shards;
+    private final ContractFeed feed;
+    private final QuoteExpiry expiry;
+
+    public ContractService() {
+        this(new InMemoryContractRepository());
+    }
+
+    public ContractService(ContractRepository contracts) {
+        this(contracts, LifecycleLog.OFF);
+    }
+
+    public ContractService(ContractRepository contracts, LifecycleLog log) {
+        this(contracts, log, new IdempotencyTable());
+    }
+
+    public ContractService(ContractRepository contracts, LifecycleLog log, IdempotencyTable idempotency) {
+        this(contracts, log, idempotency, ShardMap.SINGLE);
+    }
+
+    public ContractService(ContractRepository contracts, LifecycleLog log, IdempotencyTable idempotency, ShardMap shards) {
+        this(contracts, log, idempotency, shards, new ContractFeed());
+    }
+
+    public ContractService(ContractRepository contracts, LifecycleLog log, IdempotencyTable idempotency, ShardMap shards,
+                           ContractFeed feed) {
+        this(contracts, log, idempotency, shards, feed, QuoteExpiry.NEVER);
+    }
+
+    /**
+     * @param expiry is started here, after the quotes and abandoned quotes in the repository are scheduled
+     */
+    public ContractService(ContractRepository contracts, LifecycleLog log, IdempotencyTable idempotency, ShardMap shards,
+                           ContractFeed feed, QuoteExpiry expiry) {
+        this.contracts = contracts;
+        this.log = log;
+        this.idempotency = idempotency;
+        this.shards = shards;
+        this.feed = feed;
+        this.expiry = expiry;
+        if (expiry.isEnabled()) {
+            // one pass over the index, the deadlines are not stored
+            contracts.scanIndexed(EnumSet.of(Contract.Status.QUOTE), "", null)
+                    .forEach(s -> expiry.quoteCreated(s.getContract().getId()));
+            contracts.scanIndexed(EnumSet.of(Contract.Status.ABANDONED), "", null)
+                    .forEach(s -> expiry.quoteAbandoned(s.getContract().getId()));
+            expiry.start(this::abandonQuote, this::evictAbandoned, contracts::batch);
+        }
+    }
+
+    public ContractFeed getFeed() {
+        return feed;
+    }
 
     /**
      * Start a new contact as a quote with a quoted fixed price and some info.
      * @return contract id.
      */
-    public String addQuote(String fullNameOfCustomer, BigDecimal quotedPrice, String descriptionOfWorkRequested) {
+    public ContractId addQuote(String fullNameOfCustomer, Amount quotedPrice, String descriptionOfWorkRequested) {
+        var id = ContractId.next();
+        // ids are random within the millisecond, with n nodes about one in n is local
+        while (!shards.isLocal(id)) {
+            id = ContractId.next();
+        }
         var contract = new Contract(
-                UUID.randomUUID().toString(),
+                id,
                 quotedPrice,
                 descriptionOfWorkRequested,
                 fullNameOfCustomer);
-        contracts.put(contract.getId(), contract);
-        System.out.println("Added contract as a quote: " + contract);
+        // before it is stored, so a promotion that follows right away always finds the deadline to cancel
+        expiry.quoteCreated(contract.getId());
+        contracts.add(contract, c -> toFeed(ContractEvent.quoteCreated(c), c));
+        log.log(LifecycleLog.Level.INFO, "quote.created", contract.getId(),
+                "customer", fullNameOfCustomer, "quotedPrice", quotedPrice);
         return contract.getId();
     }
 
+    /**
+     * {@link #addQuote(String, Amount, String)} once per idempotency key: a repeated call gets the id of the first.
+     * @param idempotencyKey chosen by the client, no deduplication when null or empty
+     * @see IdempotencyTable
+     */
+    public ContractId addQuote(String fullNameOfCustomer, Amount quotedPrice, String descriptionOfWorkRequested, String idempotencyKey) {
+        return idempotency.execute(idempotencyKey, IdempotencyTable.Operation.NEW_QUOTE, null,
+                () -> addQuote(fullNameOfCustomer, quotedPrice, descriptionOfWorkRequested));
+    }
+
     /**
      * Add some work that was done to the contract; the contract needs to be in status ATWORK.
      * @throws PreConditionNotMetException
      * @throws  NotFoundException
      */
-    public void addWorkDone(String id, WorkDone workDone) {
-        var c = contracts.get(id);
-        if (c == null) {
-            throw new NotFoundException();
-        }
-        if (c.getStatus() != Contract.Status.ATWORK) {
-            throw new PreConditionNotMetException("Not.at.work");
-        }
-        c.addWorkDone(workDone);
+    public void addWorkDone(ContractId id, WorkDone workDone) {
+        var event = ContractEvent.workAdded(id, workDone);
+        contracts.update(id, c -> {
+            if (c.getStatus() != Contract.Status.ATWORK) {
+                throw NOT_AT_WORK;
+            }
+            // checked before the event is journaled, applying it must not fail
+            var cost = workDone.getCostOfWork();
+            var total = c.getTotalCostOfWork();
+            if (!cost.getCurrency().equals(total.getCurrency())) {
+                throw COST_IN_OTHER_CURRENCY;
+            }
+            long sum = total.getMinorUnits() + cost.getMinorUnits();
+            // the overflow test of Math.addExact, without its exception
+            if (((total.getMinorUnits() ^ sum) & (cost.getMinorUnits() ^ sum)) < 0) {
+                throw TOTAL_COST_TOO_LARGE;
+            }
+            return event;
+        }, c -> toFeed(event, c));
+        log.log(LifecycleLog.Level.DEBUG, "work.added", id, "costOfWork", workDone.getCostOfWork());
+    }
+
+    /**
+     * {@link #addWorkDone(ContractId, WorkDone)} once per idempotency key, so a retry does not add the work twice.
+     * @see #addQuote(String, Amount, String, String)
+     */
+    public void addWorkDone(ContractId id, WorkDone workDone, String idempotencyKey) {
+        idempotency.execute(idempotencyKey, IdempotencyTable.Operation.ADD_WORK_DONE, id, () -> {
+            addWorkDone(id, workDone);
+            return null;
+        });
     }
 
     /**
@@ -53,39 +168,151 @@ public class ContractService {
      * @throws PreConditionNotMetException
      * @throws  NotFoundException
      */
-    public void promoteQuote(String id) {
-        var c = contracts.get(id);
-        if (c == null) {
-            throw new NotFoundException();
-        }
-        if (c.getStatus() != Contract.Status.QUOTE) {
-            throw new PreConditionNotMetException("Not.a.quote");
-        }
-        c.setStatus(Contract.Status.ATWORK);
+    public void promoteQuote(ContractId id) {
+        var event = ContractEvent.promoted(id);
+        contracts.update(id, c -> {
+            if (c.getStatus() != Contract.Status.QUOTE) {
+                throw NOT_A_QUOTE;
+            }
+            return event;
+        }, c -> toFeed(event, c));
+        expiry.quotePromoted(id);
+        log.log(LifecycleLog.Level.INFO, "quote.promoted", id);
+    }
+
+    /**
+     * {@link #promoteQuote(ContractId)} once per idempotency key, so a retry succeeds like the first call did.
+     * @see #addQuote(String, Amount, String, String)
+     */
+    public void promoteQuote(ContractId id, String idempotencyKey) {
+        idempotency.execute(idempotencyKey, IdempotencyTable.Operation.PROMOTE_QUOTE, id, () -> {
+            promoteQuote(id);
+            return null;
+        });
     }
 
     /**
      * Finalize the contract and calculate the profit made, can only be done on a contract that is ATWORK.
      * @return calculated profit
      * @throws PreConditionNotMetException
+     * @throws  NotFoundException
      */
-    public BigDecimal finalizeContract(String id) {
-        var c = contracts.get(id);
-        if (c == null) {
-            throw new NotFoundException();
+    public Amount finalizeContract(ContractId id) {
+        var event = ContractEvent.finalized(id);
+        var c = contracts.update(id, contract -> {
+            if (contract.getStatus() != Contract.Status.ATWORK) {
+                throw NOT_AT_WORK;
+            }
+            return event;
+        }, contract -> toFeed(event, contract));
+
+        // no work can be added once finalized, so the running total is the final one
+        var profit = c.getProfit();
+        log.log(LifecycleLog.Level.INFO, "contract.finalized", id, "profit", profit);
+        return profit;
+    }
+
+    /**
+     * {@link #finalizeContract(ContractId)} once per idempotency key: a repeated call gets the profit of the first.
+     * @see #addQuote(String, Amount, String, String)
+     */
+    public Amount finalizeContract(ContractId id, String idempotencyKey) {
+        return idempotency.execute(idempotencyKey, IdempotencyTable.Operation.FINALIZE_CONTRACT, id,
+                () -> finalizeContract(id));
+    }
+
+    /**
+     * The money side of a contract as it stands now, without going over its work.
+     * @throws  NotFoundException
+     */
+    public ContractFinancials financials(ContractId id) {
+        var c = find(id);
+        // one read of the running total, so cost and profit always add up to the quoted price
+        var cost = c.getTotalCostOfWork();
+        return new ContractFinancials(c.getStatus(), c.getQuotedPrice(), cost, c.getQuotedPrice().minus(cost));
+    }
+
+    /**
+     * List the contracts matching the query. The result is lazy: contracts are looked up
+     * while the stream is consumed, so its size does not matter for memory use.
+     * A query on status or customer name uses the index and is ordered by those, otherwise contracts are in id order.
+     * @param afterCursor continue after the contract with this cursor (from the same query), from the start when null
+     * @throws PreConditionNotMetException when the cursor cannot be from this query
+     */
+    public Stream<ScannedContract> list(ContractQuery query, String afterCursor) {
+        Stream<ScannedContract> found;
+        if (query.getStatuses().size() < Contract.Status.values().length || !query.getCustomerNamePrefix().isEmpty()) {
+            found = contracts.scanIndexed(query.getStatuses(), query.getCustomerNamePrefix(), afterCursor);
+        } else {
+            var afterId = afterCursor == null ? null : ContractId.parse(afterCursor);
+            if (afterCursor != null && afterId == null) {
+                throw PAGE_TOKEN_INVALID;
+            }
+            found = contracts.scan(afterId);
         }
-        if (c.getStatus() != Contract.Status.ATWORK) {
-            throw new PreConditionNotMetException("Not.at.work");
+        return found.filter(s -> query.matches(s.getContract()));
+    }
+
+    /**
+     * Abandon a quote that was not promoted in time.
+     * @return false when it is not a quote anymore, or unknown.
+     */
+    boolean abandonQuote(ContractId id) {
+        var event = ContractEvent.abandoned(id);
+        try {
+            contracts.update(id, c -> {
+                if (c.getStatus() != Contract.Status.QUOTE) {
+                    throw NOT_A_QUOTE;
+                }
+                return event;
+            }, c -> toFeed(event, c));
+        } catch (NotFoundException | PreConditionNotMetException e) {
+            return false;
+        }
+        expiry.quoteAbandoned(id);
+        log.log(LifecycleLog.Level.INFO, "quote.abandoned", id);
+        return true;
+    }
+
+    /**
+     * Claims the feed sequence of the change while the contract is locked, so watchers see the changes of a contract
+     * in the order they were made, and shows it to them once it is durable.
+     * @return what the repository runs once the change is durable
+     */
+    private Runnable toFeed(ContractEvent event, Contract changed) {
+        var profit = changed.getStatus() == Contract.Status.FINALIZED ? changed.getProfit() : null;
+        var change = feed.claim(event, changed.getStatus(), profit);
+        return () -> feed.publish(change);
+    }
+
+    /**
+     * Remove an abandoned quote from storage, after which it is not found anymore.
+     * @return false when it is not abandoned, or unknown.
+     */
+    boolean evictAbandoned(ContractId id) {
+        if (!contracts.remove(id, c -> c.getStatus() == Contract.Status.ABANDONED)) {
+            return false;
         }
+        log.log(LifecycleLog.Level.DEBUG, "quote.evicted", id);
+        return true;
+    }
 
-        c.setStatus(Contract.Status.FINALIZED);
-        // total expenditure is all work costs combined
-        var workCosts = c.getWorkDone().stream()
-                .map(WorkDone::getCostOfWork)
-                .reduce(BigDecimal::add)
-                .orElse(BigDecimal.ZERO); // add() always delivers, so the default is for the compilerchecks
+    /**
+     * Totals over all contracts, such as counts by status, quoted revenue and realized profit.
+     * @param byCustomer also the realized profit of every customer
+     * @param running from the totals that are kept up to date with every change, instantly, instead of a pass over
+     * all contracts; never by customer
+     */
+    public ContractTotals statistics(boolean byCustomer, boolean running) {
+        return running && !byCustomer ? contracts.runningTotals() : contracts.totals(byCustomer);
+    }
 
-        return c.getQuotedPrice().subtract(workCosts);
+    /**
+     * Run a number of calls to this service as one batch, so storage can make them durable in one go.
+     * Failing calls inside the batch do not affect the others.
+     */
+    public void batch(Runnable calls) {
+        contracts.batch(calls);
     }
 
     /**
@@ -93,10 +320,10 @@ public class ContractService {
      * @return contract found, otherwise:
      * @throws NotFoundException
      */
-    public Contract find(String id) {
-        var c = contracts.get(id);
+    public Contract find(ContractId id) {
+        var c = contracts.find(id);
         if (c == null) {
-            throw new NotFoundException();
+            throw NotFoundException.INSTANCE;
         }
         return c;
     }
@@ -0,0 +1,204 @@
+package nl.jdriven.blogs.svc.contract.service;
+
+import nl.jdriven.blogs.svc.contract.model.exception.PreConditionNotMetException;
+import nl.jdriven.blogs.svc.contract.model.main.ContractId;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Remembers the result of a change by the idempotency key of its request, so a request that is retried
+ * (after a deadline expired) or hedged gets the result of the first attempt instead of being executed again.
+ * A request that arrives while the first attempt is still running waits for it. Only successful results
+ * are remembered: when the first attempt fails the next one with the key is executed.
+ * <p>
+ * The table has a fixed number of slots, split in small segments that are each guarded by their own lock,
+ * so requests with different keys hardly ever contend, and a request with a key only allocates its entry.
+ * A key is remembered until its time to live has passed, or until its segment is full and it is the oldest
+ * completed entry in it; a retry after that is executed again. A change that is still running is never forgotten,
+ * so a retry of it always waits for it; when all entries of the segment are running, a change with a new key
+ * is executed without being remembered, which is counted.
+ */
+public class IdempotencyTable {
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+    public static final Duration DEFAULT_TIME_TO_LIVE = Duration.ofMinutes(10);
+
+    private static final int SEGMENT_SIZE = 8;
+    private static final Object PENDING = new Object();
+    private static final Object FAILED = new Object();
+    private static final PreConditionNotMetException KEY_REUSED =
+            new PreConditionNotMetException(new String[]{"idempotencyKey"}, new String[]{"Input.IdempotencyKey.reused"});
+
+    enum Operation {NEW_QUOTE, PROMOTE_QUOTE, ADD_WORK_DONE, FINALIZE_CONTRACT}
+
+    private static final class Entry {
+        final String key;
+        final Operation operation;
+        final ContractId contractId;
+        final long expiresAt;
+        // PENDING until the first attempt completes
+        volatile Object result = PENDING;
+
+        Entry(String key, Operation operation, ContractId contractId, long expiresAt) {
+            this.key = key;
+            this.operation = operation;
+            this.contractId = contractId;
+            this.expiresAt = expiresAt;
+        }
+
+        synchronized void complete(Object result) {
+            this.result = result;
+            notifyAll();
+        }
+
+        synchronized Object await() {
+            boolean interrupted = false;
+            while (result == PENDING) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    // the first attempt still completes, keep waiting for it
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            return result;
+        }
+    }
+
+    // claimed when there is no room for a new key
+    private static final Entry NO_SLOT = new Entry("", null, null, 0);
+
+    private static final class Segment {
+        final Entry[] entries = new Entry[SEGMENT_SIZE];
+    }
+
+    private final Segment[] segments;
+    private final long timeToLiveNanos;
+    private final LongAdder replayed = new LongAdder();
+    private final LongAdder undeduplicated = new LongAdder();
+
+    public IdempotencyTable() {
+        this(DEFAULT_CAPACITY, DEFAULT_TIME_TO_LIVE);
+    }
+
+    /**
+     * @param capacity number of keys that can be remembered, rounded up to a power of two; 0 remembers nothing
+     */
+    public IdempotencyTable(int capacity, Duration timeToLive) {
+        int count = capacity <= 0 ? 0 : Integer.highestOneBit(Math.max(1, (capacity - 1) / SEGMENT_SIZE)) << 1;
+        segments = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment();
+        }
+        timeToLiveNanos = timeToLive.toNanos();
+    }
+
+    /**
+     * Execute the change unless a change with the key was executed before, then return its result.
+     * @param key         the idempotency key of the request, no deduplication when null or empty
+     * @param contractId  the contract changed, null for a new quote
+     * @throws PreConditionNotMetException when the key was used for another change
+     */
+    <T> T execute(String key, Operation operation, ContractId contractId, Supplier<T> change) {
+        if (key == null || key.isEmpty() || segments.length == 0) {
+            return change.get();
+        }
+        int h = key.hashCode();
+        var segment = segments[(h ^ (h >>> 16)) & (segments.length - 1)];
+        while (true) {
+            long now = System.nanoTime();
+            var entry = new Entry(key, operation, contractId, now + timeToLiveNanos);
+            var existing = claim(segment, entry, now);
+            if (existing == null) {
+                return executeFirst(segment, entry, change);
+            }
+            if (existing == NO_SLOT) {
+                undeduplicated.increment();
+                return change.get();
+            }
+            if (existing.operation != operation || !Objects.equals(existing.contractId, contractId)) {
+                throw KEY_REUSED;
+            }
+            var result = existing.await();
+            if (result != FAILED) {
+                replayed.increment();
+                @SuppressWarnings("unchecked")
+                var original = (T) result;
+                return original;
+            }
+            // the first attempt failed and is forgotten, try to be the one that executes it now
+        }
+    }
+
+    /**
+     * @return number of requests answered with the result of an earlier one.
+     */
+    public long getReplayed() {
+        return replayed.sum();
+    }
+
+    /**
+     * @return number of requests with a key executed without remembering it, because all entries of its segment were running.
+     */
+    public long getUndeduplicated() {
+        return undeduplicated.sum();
+    }
+
+    private <T> T executeFirst(Segment segment, Entry entry, Supplier<T> change) {
+        T result;
+        try {
+            result = change.get();
+        } catch (RuntimeException | Error e) {
+            synchronized (segment) {
+                var entries = segment.entries;
+                for (int i = 0; i < entries.length; i++) {
+                    if (entries[i] == entry) {
+                        entries[i] = null;
+                    }
+                }
+            }
+            entry.complete(FAILED);
+            throw e;
+        }
+        entry.complete(result);
+        return result;
+    }
+
+    /**
+     * @return the live entry with the same key, null when the new entry was put in the segment,
+     * or {@link #NO_SLOT} when every entry in the segment is still running.
+     */
+    private static Entry claim(Segment segment, Entry entry, long now) {
+        synchronized (segment) {
+            var entries = segment.entries;
+            int free = -1;
+            int oldest = -1;
+            for (int i = 0; i < entries.length; i++) {
+                var e = entries[i];
+                // a running change stays, however long it takes
+                boolean running = e != null && e.result == PENDING;
+                if (e == null || (now - e.expiresAt >= 0 && !running)) {
+                    if (free < 0) {
+                        free = i;
+                    }
+                } else if (e.key.equals(entry.key)) {
+                    return e;
+                } else if (!running && (oldest < 0 || e.expiresAt - entries[oldest].expiresAt < 0)) {
+                    oldest = i;
+                }
+            }
+            int slot = free >= 0 ? free : oldest;
+            if (slot < 0) {
+                return NO_SLOT;
+            }
+            // a full segment forgets its oldest completed key
+            entries[slot] = entry;
+            return null;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package nl.jdriven.blogs.svc.contract.service;
+
+import nl.jdriven.blogs.svc.contract.logging.LifecycleLog;
+import nl.jdriven.blogs.svc.contract.model.main.ContractId;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Abandons the quotes that are not promoted within their time to live, counted from their creation, and removes
+ * abandoned quotes from storage once they have been kept for the retention time, so quotes nobody accepts do not
+ * pile up. The deadlines are kept in a {@link TimerWheel} per delay, advanced by one thread: it never goes over
+ * all quotes, it only touches the ones that are due, and makes the changes of a tick as one batch.
+ * A quote is abandoned at most a tick after its deadline, a tick is about 1/8000 of the delay and at least 100 ms.
+ * Promoting a quote cancels its deadline, so the wheels hold no more than the quotes and abandoned quotes.
+ * Deadlines are not stored, the service schedules its quotes and abandoned quotes again when it starts.
+ */
+public class QuoteExpiry implements Closeable {
+    public static final Duration DEFAULT_TIME_TO_LIVE = Duration.ofDays(30);
+    public static final Duration DEFAULT_RETENTION = Duration.ofDays(30);
+
+    /**
+     * Quotes never expire, and there is no thread.
+     */
+    public static final QuoteExpiry NEVER = new QuoteExpiry(Duration.ZERO, Duration.ZERO);
+
+    private final long timeToLiveMillis;
+    private final long retentionMillis;
+    // null when quotes never expire
+    private final TimerWheel quotes;
+    // null when abandoned quotes are kept
+    private final TimerWheel abandoned;
+    private final LongAdder abandonedCount = new LongAdder();
+    private final LongAdder evictedCount = new LongAdder();
+    private final LifecycleLog lifecycleLog;
+    private ScheduledExecutorService ticker;
+
+    /**
+     * @param timeToLive zero for quotes that never expire
+     * @param retention zero to keep abandoned quotes
+     */
+    public QuoteExpiry(Duration timeToLive, Duration retention) {
+        this(timeToLive, retention, LifecycleLog.OFF);
+    }
+
+    /**
+     * @param timeToLive zero for quotes that never expire
+     * @param retention zero to keep abandoned quotes
+     * @param lifecycleLog where failures of the expiry thread are logged
+     */
+    public QuoteExpiry(Duration timeToLive, Duration retention, LifecycleLog lifecycleLog) {
+        this.lifecycleLog = lifecycleLog;
+        timeToLiveMillis = timeToLive.toMillis();
+        retentionMillis = retention.toMillis();
+        long now = System.currentTimeMillis();
+        quotes = timeToLiveMillis > 0 ? new TimerWheel(timeToLiveMillis, now) : null;
+        abandoned = quotes != null && retentionMillis > 0 ? new TimerWheel(retentionMillis, now) : null;
+    }
+
+    public boolean isEnabled() {
+        return quotes != null;
+    }
+
+    /**
+     * @return number of quotes and abandoned quotes waiting for their deadline.
+     */
+    public long getWaiting() {
+        return (quotes == null ? 0 : quotes.getWaiting()) + (abandoned == null ? 0 : abandoned.getWaiting());
+    }
+
+    /**
+     * @return number of quotes abandoned since the start.
+     */
+    public long getAbandoned() {
+        return abandonedCount.sum();
+    }
+
+    /**
+     * @return number of abandoned quotes removed from storage since the start.
+     */
+    public long getEvicted() {
+        return evictedCount.sum();
+    }
+
+    /**
+     * Start the thread that abandons and removes the quotes that are due.
+     * @param abandon abandons a quote, false when it is not a quote anymore
+     * @param evict removes an abandoned quote, false when it is gone already
+     * @param batch runs the changes of a tick as one batch
+     */
+    synchronized void start(Predicate<ContractId> abandon, Predicate<ContractId> evict, Consumer<Runnable> batch) {
+        if (!isEnabled()) {
+            return;
+        }
+        if (ticker != null) {
+            throw new IllegalStateException("Quote expiry is started already");
+        }
+        ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            var t = new Thread(r, "quote-expiry");
+            t.setDaemon(true);
+            return t;
+        });
+        long tick = Math.min(quotes.getTickMillis(), abandoned == null ? Long.MAX_VALUE : abandoned.getTickMillis());
+        ticker.scheduleWithFixedDelay(() -> tick(abandon, evict, batch), tick, tick, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Schedule a quote to be abandoned at its creation time plus the time to live.
+     */
+    void quoteCreated(ContractId id) {
+        if (quotes != null) {
+            // an id that was a random UUID has no creation time, its time to live starts now
+            long created = id.hasTimestamp() ? id.getTimestampMillis() : System.currentTimeMillis();
+            quotes.schedule(id, created + timeToLiveMillis);
+        }
+    }
+
+    /**
+     * Cancel the deadline of a quote that was promoted.
+     */
+    void quotePromoted(ContractId id) {
+        if (quotes != null) {
+            quotes.cancel(id);
+        }
+    }
+
+    /**
+     * Schedule an abandoned quote to be removed after the retention time.
+     */
+    void quoteAbandoned(ContractId id) {
+        if (abandoned != null) {
+            abandoned.schedule(id, System.currentTimeMillis() + retentionMillis);
+        }
+    }
+
+    /**
+     * Stops the thread, and waits for a tick in progress so the repository can be closed after this.
+     */
+    @Override
+    public synchronized void close() {
+        if (ticker == null) {
+            return;
+        }
+        ticker.shutdown();
+        try {
+            ticker.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void tick(Predicate<ContractId> abandon, Predicate<ContractId> evict, Consumer<Runnable> batch) {
+        long now = System.currentTimeMillis();
+        var dueQuotes = new ArrayList<ContractId>();
+        quotes.advance(now, dueQuotes::add);
+        var dueAbandoned = new ArrayList<ContractId>();
+        if (abandoned != null) {
+            abandoned.advance(now, dueAbandoned::add);
+        }
+        if (dueQuotes.isEmpty() && dueAbandoned.isEmpty()) {
+            return;
+        }
+        try {
+            batch.accept(() -> {
+                apply(dueQuotes, abandon, abandonedCount, quotes, now);
+                apply(dueAbandoned, evict, evictedCount, abandoned, now);
+            });
+        } catch (RuntimeException e) {
+            lifecycleLog.log(LifecycleLog.Level.WARN, "quote.expiry.failed", null, "error", e);
+        }
+    }
+
+    private void apply(List<ContractId> due, Predicate<ContractId> change, LongAdder count, TimerWheel wheel, long now) {
+        for (var id : due) {
+            try {
+                if (change.test(id)) {
+                    count.increment();
+                }
+            } catch (RuntimeException e) {
+                // try again next tick, the thread has to keep running for the others
+                lifecycleLog.log(LifecycleLog.Level.WARN, "quote.expiry.failed", id, "error", e);
+                wheel.schedule(id, now + wheel.getTickMillis());
+            }
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package nl.jdriven.blogs.svc.contract.service;
+
+import nl.jdriven.blogs.svc.contract.model.main.ContractId;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Hashed timer wheel of contract ids: a ring of buckets, one per tick, where a bucket holds the ids that are due
+ * in its tick or a whole number of turns later. Scheduling puts the id in a queue, without locking; the one thread
+ * that advances the wheel moves the queued ids to their bucket and takes the buckets of the ticks that passed.
+ * The wheel is sized so one turn spans the longest delay, then a bucket that comes round only holds ids that are
+ * due, and a tick costs the number of ids that expire, not the number that wait.
+ * Ids are due in the tick of their deadline, so at most a tick late. A timer can be cancelled by its id: it is taken
+ * out of its bucket by the thread that advances the wheel, so the wheel only holds the ids that can still be due.
+ */
+final class TimerWheel {
+    private static final int MAX_BUCKETS = 1 << 13;
+    private static final long MIN_TICK_MILLIS = 100;
+
+    private static final class Timer {
+        final ContractId id;
+        final long deadlineTick;
+        // set before it is queued to be taken out
+        volatile boolean cancelled;
+        // the bucket is a doubly linked list, so a timer is taken out without a search; only touched by the advancing thread
+        Timer previous;
+        Timer next;
+        boolean inBucket;
+
+        Timer(ContractId id, long deadlineTick) {
+            this.id = id;
+            this.deadlineTick = deadlineTick;
+        }
+    }
+
+    private final long tickMillis;
+    // first timer of every bucket, null when empty
+    private final Timer[] buckets;
+    private final ConcurrentLinkedQueue<Timer> scheduled = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<Timer> cancelled = new ConcurrentLinkedQueue<>();
+    // whoever takes a timer out of this map expires or cancels it, never both
+    private final ConcurrentHashMap<ContractId, Timer> timers = new ConcurrentHashMap<>();
+    private final AtomicLong waiting = new AtomicLong();
+    // only touched by the thread that advances the wheel
+    private long currentTick;
+
+    /**
+     * @param spanMillis the longest delay, which one turn of the wheel covers
+     */
+    TimerWheel(long spanMillis, long nowMillis) {
+        tickMillis = Math.max(MIN_TICK_MILLIS, -Math.floorDiv(-spanMillis, MAX_BUCKETS - 2));
+        // power of two so the bucket can be selected with a mask, with room for the tick in progress
+        int count = Integer.highestOneBit((int) Math.max(1, spanMillis / tickMillis + 1)) << 1;
+        buckets = new Timer[count];
+        currentTick = nowMillis / tickMillis;
+    }
+
+    long getTickMillis() {
+        return tickMillis;
+    }
+
+    /**
+     * @return number of ids scheduled that are not due yet.
+     */
+    long getWaiting() {
+        return waiting.get();
+    }
+
+    /**
+     * Safe for use by many threads at once. Replaces the timer the id has already.
+     */
+    void schedule(ContractId id, long deadlineMillis) {
+        var timer = new Timer(id, Math.floorDiv(deadlineMillis, tickMillis));
+        waiting.incrementAndGet();
+        var replaced = timers.put(id, timer);
+        if (replaced != null) {
+            cancelled(replaced);
+        }
+        scheduled.add(timer);
+    }
+
+    /**
+     * Safe for use by many threads at once.
+     * @return false when the id is not scheduled, or due already.
+     */
+    boolean cancel(ContractId id) {
+        var timer = timers.remove(id);
+        if (timer == null) {
+            return false;
+        }
+        cancelled(timer);
+        return true;
+    }
+
+    /**
+     * Pass the ids that are due at the given time to the consumer; must always be called by the same thread,
+     * or under the same lock.
+     */
+    void advance(long nowMillis, Consumer<ContractId> due) {
+        long nowTick = nowMillis / tickMillis;
+        for (var timer = scheduled.poll(); timer != null; timer = scheduled.poll()) {
+            if (timer.cancelled) {
+                continue;
+            }
+            if (timer.deadlineTick <= currentTick) {
+                expire(timer, due);
+            } else {
+                add(timer);
+            }
+        }
+        for (var timer = cancelled.poll(); timer != null; timer = cancelled.poll()) {
+            if (timer.inBucket) {
+                remove(timer);
+            }
+        }
+        // after a long pause every bucket is visited once
+        long from = Math.max(currentTick + 1, nowTick - buckets.length + 1);
+        for (long tick = from; tick <= nowTick; tick++) {
+            int index = (int) (tick & (buckets.length - 1));
+            var timer = buckets[index];
+            buckets[index] = null;
+            while (timer != null) {
+                var next = timer.next;
+                timer.previous = null;
+                timer.next = null;
+                timer.inBucket = false;
+                if (timer.deadlineTick <= nowTick) {
+                    expire(timer, due);
+                } else {
+                    add(timer);
+                }
+                timer = next;
+            }
+        }
+        currentTick = Math.max(currentTick, nowTick);
+    }
+
+    private void cancelled(Timer timer) {
+        waiting.decrementAndGet();
+        timer.cancelled = true;
+        cancelled.add(timer);
+    }
+
+    private void add(Timer timer) {
+        int index = (int) (timer.deadlineTick & (buckets.length - 1));
+        var first = buckets[index];
+        timer.next = first;
+        if (first != null) {
+            first.previous = timer;
+        }
+        buckets[index] = timer;
+        timer.inBucket = true;
+    }
+
+    private void remove(Timer timer) {
+        if (timer.previous == null) {
+            buckets[(int) (timer.deadlineTick & (buckets.length - 1))] = timer.next;
+        } else {
+            timer.previous.next = timer.next;
+        }
+        if (timer.next != null) {
+            timer.next.previous = timer.previous;
+        }
+        timer.previous = null;
+        timer.next = null;
+        timer.inBucket = false;
+    }
+
+    private void expire(Timer timer, Consumer<ContractId> due) {
+        // cancelled meanwhile when it is not in the map anymore
+        if (timers.remove(timer.id, timer)) {
+            waiting.decrementAndGet();
+            due.accept(timer.id);
+        }
+    }
+}
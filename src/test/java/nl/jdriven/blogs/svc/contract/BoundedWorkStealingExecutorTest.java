@@ -0,0 +1,71 @@
+package nl.jdriven.blogs.svc.contract;
+
+import io.grpc.ServerInterceptors;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import nl.jdriven.blogs.svc.contract.api.ContractServiceApi;
+import nl.jdriven.blogs.svc.contract.proto.ContractServiceGrpc;
+import nl.jdriven.blogs.svc.contract.proto.FindContractRequest;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BoundedWorkStealingExecutorTest {
+    @Test
+    void newCallsAreRefusedInsteadOfRunOnTheSubmittingThread() throws Exception {
+        var executor = new BoundedWorkStealingExecutor(1, 1);
+        var server = InProcessServerBuilder.forName("bounded").executor(executor)
+                .addService(ServerInterceptors.intercept(new ContractServiceApi(), executor.interceptor()))
+                .build().start();
+        var channel = InProcessChannelBuilder.forName("bounded").directExecutor().build();
+        try {
+            var blocked = new CountDownLatch(1);
+            var ranOn = new CompletableFuture<Thread>();
+            executor.execute(() -> {
+                ranOn.complete(Thread.currentThread());
+                try {
+                    blocked.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            // more than the thread and the queue can take
+            var stub = ContractServiceGrpc.newFutureStub(channel);
+            var calls = new ArrayList<Future<?>>();
+            for (int i = 0; i < 4; i++) {
+                calls.add(stub.findContract(FindContractRequest.newBuilder().setContractId("unknown").build()));
+            }
+            assertNotSame(Thread.currentThread(), ranOn.get());
+            blocked.countDown();
+
+            int refused = 0;
+            for (var call : calls) {
+                try {
+                    call.get();
+                } catch (ExecutionException e) {
+                    if (Status.fromThrowable(e.getCause()).getCode() == Status.Code.RESOURCE_EXHAUSTED) {
+                        refused++;
+                    } else {
+                        assertTrue(e.getCause() instanceof StatusRuntimeException, e.toString());
+                    }
+                }
+            }
+            assertTrue(refused > 0 && refused < calls.size(), "refused " + refused);
+            assertEquals(refused, executor.getRejected());
+        } finally {
+            channel.shutdownNow();
+            server.shutdownNow();
+            executor.close();
+        }
+    }
+}
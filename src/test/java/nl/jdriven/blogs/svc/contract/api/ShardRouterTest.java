@@ -0,0 +1,213 @@
+package nl.jdriven.blogs.svc.contract.api;
+
+import com.google.type.Money;
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.ServerInterceptors;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
+import io.grpc.stub.StreamObserver;
+import nl.jdriven.blogs.svc.contract.ContractServer;
+import nl.jdriven.blogs.svc.contract.ServerConfig;
+import nl.jdriven.blogs.svc.contract.cluster.ShardMap;
+import nl.jdriven.blogs.svc.contract.logging.LifecycleLog;
+import nl.jdriven.blogs.svc.contract.model.main.Amount;
+import nl.jdriven.blogs.svc.contract.model.main.ContractId;
+import nl.jdriven.blogs.svc.contract.model.main.WorkDone;
+import nl.jdriven.blogs.svc.contract.proto.AddWorkDoneRequest;
+import nl.jdriven.blogs.svc.contract.proto.BulkAddWorkDoneResponse;
+import nl.jdriven.blogs.svc.contract.proto.BulkItemError;
+import nl.jdriven.blogs.svc.contract.proto.ContractServiceGrpc;
+import nl.jdriven.blogs.svc.contract.proto.WatchContractsRequest;
+import nl.jdriven.blogs.svc.contract.proto.WatchContractsResponse;
+import nl.jdriven.blogs.svc.contract.repository.InMemoryContractRepository;
+import nl.jdriven.blogs.svc.contract.service.ContractFeed;
+import nl.jdriven.blogs.svc.contract.service.ContractService;
+import nl.jdriven.blogs.svc.contract.service.IdempotencyTable;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Calls to a node for contracts of another node, on two nodes that listen on real ports.
+ */
+class ShardRouterTest {
+    private static final int FEED_CAPACITY = 256;
+    private static final int CHANGES = 4000;
+
+    private final List<ContractService> services = new ArrayList<>();
+    private final List<ContractServiceApi> apis = new ArrayList<>();
+    private final List<ShardRouter> routers = new ArrayList<>();
+    private final List<ContractServer> servers = new ArrayList<>();
+    // to the second node
+    private ManagedChannel channel;
+
+    @BeforeEach
+    void startNodes() throws IOException {
+        var nodes = List.of("localhost:" + freePort(), "localhost:" + freePort());
+        for (var node : nodes) {
+            var shards = ShardMap.evenlyDivided(nodes, 16, node);
+            var service = new ContractService(new InMemoryContractRepository(), LifecycleLog.OFF, new IdempotencyTable(),
+                    shards, new ContractFeed(FEED_CAPACITY));
+            var router = new ShardRouter(shards);
+            var config = ServerConfig.fromSystemProperties(true).withPort(Integer.parseInt(node.substring(node.indexOf(':') + 1)));
+            var executor = ContractServer.createExecutor(config);
+            var api = new ContractServiceApi(new ContractServiceApiHandler(service), router, executor);
+            servers.add(new ContractServer(config, executor, ServerInterceptors.intercept(api, router.interceptor())).start());
+            services.add(service);
+            apis.add(api);
+            routers.add(router);
+        }
+        channel = ManagedChannelBuilder.forTarget(nodes.get(1)).usePlaintext().build();
+    }
+
+    @AfterEach
+    void stopNodes() {
+        channel.shutdownNow();
+        servers.forEach(ContractServer::close);
+        routers.forEach(ShardRouter::close);
+    }
+
+    /**
+     * A slow watcher makes the owning node fall behind on its feed and tell what was missed,
+     * instead of the forwarding node buffering the changes.
+     */
+    @Test
+    void slowWatcherBehindAForwardingNodeIsToldWhatItMissed() throws Exception {
+        var owner = services.get(0);
+        var id = owner.addQuote("Customer", Amount.ofUnits(100), "Work");
+        owner.promoteQuote(id);
+
+        // watches through the other node, and reads nothing until all changes are made
+        var call = new CompletableFuture<ClientCallStreamObserver<WatchContractsRequest>>();
+        var missed = new CompletableFuture<WatchContractsResponse>();
+        var changes = new AtomicInteger();
+        var reading = new AtomicBoolean();
+        ContractServiceGrpc.newStub(channel).watchContracts(
+                WatchContractsRequest.newBuilder().addContractId(id.toString()).build(),
+                new ClientResponseObserver<WatchContractsRequest, WatchContractsResponse>() {
+                    @Override
+                    public void beforeStart(ClientCallStreamObserver<WatchContractsRequest> requestStream) {
+                        requestStream.disableAutoInboundFlowControl();
+                        call.complete(requestStream);
+                    }
+
+                    @Override
+                    public void onNext(WatchContractsResponse response) {
+                        if (response.hasMissed()) {
+                            missed.complete(response);
+                        } else if (changes.incrementAndGet() == CHANGES) {
+                            missed.completeExceptionally(new AssertionError("Every change was buffered for the watcher"));
+                        }
+                        if (reading.get()) {
+                            call.join().request(1);
+                        }
+                    }
+
+                    @Override
+                    public void onError(Throwable t) {
+                        missed.completeExceptionally(t);
+                    }
+
+                    @Override
+                    public void onCompleted() {
+                    }
+                });
+        waitFor(() -> apis.get(0).getWatchers().getActive() == 1);
+
+        // large changes, made slowly enough for a watcher that keeps up
+        var description = "w".repeat(2_000);
+        for (int i = 0; i < CHANGES; i++) {
+            owner.addWorkDone(id, new WorkDone(Amount.ofUnits(1), description));
+            Thread.sleep(1);
+        }
+
+        // the owner finds out it is behind when the watcher reads again
+        reading.set(true);
+        call.get(5, TimeUnit.SECONDS).request(1);
+        assertTrue(missed.get(10, TimeUnit.SECONDS).getMissed().getNextSequence() > 0);
+        assertTrue(apis.get(0).getWatchers().getMissed() > 0);
+    }
+
+    /**
+     * The items for the other node are sent there in one stream, and their errors keep the positions of the bulk.
+     */
+    @Test
+    void bulkWorkForBothNodesIsAddedWithErrorsInPlace() throws Exception {
+        var remote = services.get(0);
+        var local = services.get(1);
+        var ids = new ArrayList<ContractId>();
+        for (int i = 0; i < 10; i++) {
+            var service = i % 2 == 0 ? remote : local;
+            var id = service.addQuote("Customer " + i, Amount.ofUnits(100), "Work");
+            // the last one of each node stays a quote, and cannot get work
+            if (i < 8) {
+                service.promoteQuote(id);
+            }
+            ids.add(id);
+        }
+        long forwardedBefore = routers.get(1).getForwarded();
+
+        var answer = new CompletableFuture<BulkAddWorkDoneResponse>();
+        var items = ContractServiceGrpc.newStub(channel).bulkAddWorkDone(new StreamObserver<>() {
+            @Override
+            public void onNext(BulkAddWorkDoneResponse response) {
+                answer.complete(response);
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                answer.completeExceptionally(t);
+            }
+
+            @Override
+            public void onCompleted() {
+            }
+        });
+        for (var id : ids) {
+            items.onNext(AddWorkDoneRequest.newBuilder().setContractId(id.toString())
+                    .setWork(nl.jdriven.blogs.svc.contract.proto.WorkDone.newBuilder()
+                            .setCostOfWork(Money.newBuilder().setCurrencyCode("EUR").setUnits(1))
+                            .setDescriptionOfWorkDone("Work"))
+                    .build());
+        }
+        items.onCompleted();
+        var response = answer.get(10, TimeUnit.SECONDS);
+
+        assertEquals(8, response.getAccepted());
+        assertEquals(List.of(8L, 9L), response.getErrorsList().stream().map(BulkItemError::getIndex).collect(Collectors.toList()));
+        for (int i = 0; i < 8; i++) {
+            var service = i % 2 == 0 ? remote : local;
+            assertEquals(1, service.find(ids.get(i)).getWorkDone().size());
+        }
+        assertTrue(routers.get(1).getForwarded() - forwardedBefore <= 2, "one stream per batch");
+    }
+
+    private static int freePort() throws IOException {
+        try (var socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "timed out");
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package nl.jdriven.blogs.svc.contract.repository;
+
+import nl.jdriven.blogs.svc.contract.model.main.Amount;
+import nl.jdriven.blogs.svc.contract.model.main.Contract;
+import nl.jdriven.blogs.svc.contract.model.main.ContractId;
+import nl.jdriven.blogs.svc.contract.model.main.WorkDone;
+import nl.jdriven.blogs.svc.contract.service.ContractService;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+/**
+ * Many threads create, promote and add work to contracts at once, partly to the same contracts,
+ * and afterwards every contract and every work item must be there.
+ */
+class ConcurrentRepositoryStressTest {
+    private static final int THREADS = 16;
+    private static final int CONTRACTS_PER_THREAD = 500;
+    private static final int WORK_PER_CONTRACT = 4;
+    private static final int SHARED_CONTRACTS = 8;
+    // one for every other contract
+    private static final int SHARED_WORK_PER_THREAD = CONTRACTS_PER_THREAD / 2;
+
+    @Test
+    void noContractOrWorkItemIsLost() throws Exception {
+        var repository = new InMemoryContractRepository();
+        var service = new ContractService(repository);
+        var shared = new ArrayList<ContractId>();
+        for (int i = 0; i < SHARED_CONTRACTS; i++) {
+            var id = service.addQuote("Shared " + i, Amount.ofUnits(1000), "Shared work");
+            service.promoteQuote(id);
+            shared.add(id);
+        }
+        var created = new ConcurrentLinkedQueue<ContractId>();
+        var start = new CountDownLatch(1);
+        ExecutorService threads = Executors.newFixedThreadPool(THREADS);
+        try {
+            var done = new ArrayList<Future<?>>();
+            for (int t = 0; t < THREADS; t++) {
+                int thread = t;
+                done.add(threads.submit(() -> {
+                    start.await();
+                    var random = ThreadLocalRandom.current();
+                    for (int i = 0; i < CONTRACTS_PER_THREAD; i++) {
+                        var id = service.addQuote("Customer " + thread + "-" + i, Amount.ofUnits(100), "Work " + i);
+                        created.add(id);
+                        service.promoteQuote(id);
+                        for (int w = 0; w < WORK_PER_CONTRACT; w++) {
+                            service.addWorkDone(id, new WorkDone(Amount.ofMinorUnits(1), "Item " + w));
+                        }
+                        if (i % 2 == 0) {
+                            service.addWorkDone(shared.get(random.nextInt(SHARED_CONTRACTS)), new WorkDone(Amount.ofMinorUnits(1), "Shared item"));
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (var future : done) {
+                future.get();
+            }
+        } finally {
+            threads.shutdown();
+        }
+
+        assertEquals(THREADS * CONTRACTS_PER_THREAD, created.size());
+        assertEquals(THREADS * CONTRACTS_PER_THREAD + SHARED_CONTRACTS, repository.size());
+        for (var id : created) {
+            var c = repository.find(id);
+            assertNotNull(c, "contract " + id);
+            assertEquals(Contract.Status.ATWORK, c.getStatus());
+            assertEquals(WORK_PER_CONTRACT, c.getWorkDone().size(), "work of " + id);
+            assertEquals(Amount.ofMinorUnits(WORK_PER_CONTRACT), c.getTotalCostOfWork());
+        }
+        long sharedWork = shared.stream().mapToLong(id -> repository.find(id).getWorkDone().size()).sum();
+        long sharedCost = shared.stream().mapToLong(id -> repository.find(id).getTotalCostOfWork().getMinorUnits()).sum();
+        assertEquals(THREADS * (long) SHARED_WORK_PER_THREAD, sharedWork);
+        assertEquals(sharedWork, sharedCost);
+        assertEquals(THREADS * (long) CONTRACTS_PER_THREAD * WORK_PER_CONTRACT + sharedWork, repository.workItemCount());
+        assertEquals(repository.size(), repository.scan(null).count());
+    }
+
+    @Test
+    void noChangeIsLostWhileContractsAreFinalized() throws Exception {
+        var repository = new InMemoryContractRepository();
+        var service = new ContractService(repository);
+        ExecutorService threads = Executors.newFixedThreadPool(THREADS);
+        try {
+            var done = new ArrayList<Future<List<ContractId>>>();
+            for (int t = 0; t < THREADS; t++) {
+                done.add(threads.submit(() -> {
+                    var ids = new ArrayList<ContractId>();
+                    for (int i = 0; i < CONTRACTS_PER_THREAD; i++) {
+                        var id = service.addQuote("Customer " + i, Amount.ofUnits(100), "Work");
+                        service.promoteQuote(id);
+                        service.addWorkDone(id, new WorkDone(Amount.ofUnits(1), "Item"));
+                        service.finalizeContract(id);
+                        ids.add(id);
+                    }
+                    return ids;
+                }));
+            }
+            for (var future : done) {
+                for (var id : future.get()) {
+                    var c = repository.find(id);
+                    assertNotNull(c, "contract " + id);
+                    assertEquals(Contract.Status.FINALIZED, c.getStatus());
+                    assertEquals(1, c.getWorkDone().size());
+                }
+            }
+        } finally {
+            threads.shutdown();
+        }
+        assertEquals(THREADS * CONTRACTS_PER_THREAD, repository.size());
+        assertEquals(THREADS * (long) CONTRACTS_PER_THREAD, repository.workItemCount());
+    }
+}
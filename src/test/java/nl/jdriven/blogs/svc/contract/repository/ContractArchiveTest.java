@@ -0,0 +1,41 @@
+package nl.jdriven.blogs.svc.contract.repository;
+
+import nl.jdriven.blogs.svc.contract.model.main.Amount;
+import nl.jdriven.blogs.svc.contract.model.main.Contract;
+import nl.jdriven.blogs.svc.contract.model.main.ContractId;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Scans in index key order see every archived contract, also while the sorted order is merged in the background.
+ */
+class ContractArchiveTest {
+    @Test
+    void scansInKeyOrderHaveEveryContractWhileOrdersAreMerged() {
+        var archive = new ContractArchive();
+        var random = new Random(42);
+        int withPrefix = 0;
+        for (int i = 1; i <= 30_000; i++) {
+            var name = "Customer " + random.nextInt(1000);
+            if (name.startsWith("Customer 42")) {
+                withPrefix++;
+            }
+            var c = new Contract(ContractId.next(), Amount.ofUnits(100), "Work", name);
+            c.setStatus(Contract.Status.FINALIZED);
+            archive.add(c);
+            if (i % 997 == 0) {
+                var cursors = archive.scanIndexed("", null).map(ScannedContract::getCursor).collect(Collectors.toList());
+                assertEquals(i, cursors.size());
+                for (int k = 1; k < cursors.size(); k++) {
+                    assertTrue(cursors.get(k - 1).compareTo(cursors.get(k)) < 0, "in key order at " + k);
+                }
+            }
+        }
+        assertEquals(withPrefix, archive.scanIndexed("customer 42", null).count());
+    }
+}
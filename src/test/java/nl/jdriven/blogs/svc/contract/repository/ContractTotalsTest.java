@@ -0,0 +1,112 @@
+package nl.jdriven.blogs.svc.contract.repository;
+
+import nl.jdriven.blogs.svc.contract.model.main.Amount;
+import nl.jdriven.blogs.svc.contract.model.main.Contract;
+import nl.jdriven.blogs.svc.contract.model.main.ContractId;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.util.Currency;
+import java.util.Optional;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Totals that do not fit are left out of the statistics, the others are still answered, and nothing stays broken.
+ */
+class ContractTotalsTest {
+    private static final Currency USD = Currency.getInstance("USD");
+    // 5 * 10^18 minor units, two of them do not fit in a long
+    private static final Amount LARGE = Amount.ofUnits(50_000_000_000_000_000L);
+
+    @Test
+    void wideSumsAddUpLikeBigIntegers() {
+        var random = new Random(42);
+        long[] edges = {Long.MAX_VALUE, Long.MIN_VALUE, -1, 1, 0};
+        var sum = new WideSum();
+        var other = new WideSum();
+        var expected = BigInteger.ZERO;
+        for (int i = 0; i < 100_000; i++) {
+            long value = i % 10 < 5 ? edges[i % 5] : random.nextLong();
+            var target = i % 3 == 0 ? other : sum;
+            if (random.nextBoolean()) {
+                target.add(value);
+                expected = expected.add(BigInteger.valueOf(value));
+            } else {
+                target.subtract(value);
+                expected = expected.subtract(BigInteger.valueOf(value));
+            }
+        }
+        var total = new WideSum().add(sum).add(other);
+        assertEquals(expected, total.bigIntegerValue());
+        assertEquals(expected.bitLength() < Long.SIZE, total.fitsInLong());
+        assertEquals(expected, WideSum.of(expected).bigIntegerValue());
+        assertEquals(0, WideSum.of(expected).compareTo(total));
+        assertTrue(WideSum.of(expected.add(BigInteger.ONE)).compareTo(total) > 0);
+    }
+
+    @Test
+    void totalsThatOverflowAreLeftOutAndTheOthersStillAnswered() {
+        var archive = new ContractArchive();
+        archive.add(finalized(LARGE, "Large"));
+        archive.add(finalized(LARGE, "Large"));
+        archive.add(finalized(Amount.ofMinorUnits(250, USD), "Small"));
+        archive.add(finalized(Amount.ofMinorUnits(100, USD), "Small"));
+
+        var totals = archive.totals(true);
+        assertEquals(4, totals.getCount(Contract.Status.FINALIZED));
+        var eur = totals.getCurrencies().get(0);
+        assertTrue(eur.isOverflowed());
+        assertEquals(2, eur.getPromotedCount());
+        assertEquals(Optional.empty(), eur.getQuotedRevenue());
+        assertEquals(Optional.empty(), eur.getRealizedProfit());
+        assertEquals(Optional.of(Amount.ofMinorUnits(0)), eur.getTotalCostOfWork());
+        assertEquals(Optional.of(Amount.ofMinorUnits(0)), eur.getAverageCostOfWork());
+        var usd = totals.getCurrencies().get(1);
+        assertFalse(usd.isOverflowed());
+        assertEquals(Optional.of(Amount.ofMinorUnits(350, USD)), usd.getQuotedRevenue());
+
+        var top = totals.getTopCustomers(1);
+        assertEquals("Large", top.get(0).getFullNameOfCustomer());
+        assertEquals(Amount.EUR, top.get(0).getCurrency());
+        assertEquals(Optional.empty(), top.get(0).getRealizedProfit());
+        assertEquals(Optional.of(Amount.ofMinorUnits(350, USD)), top.get(1).getRealizedProfit());
+
+        // as another node would add them up
+        var everywhere = new ContractTotals(true).merge(totals);
+        everywhere.addCurrency(Amount.EUR, 1, null, Amount.ofMinorUnits(0), Amount.ofMinorUnits(0));
+        assertEquals(3, everywhere.getCurrencies().get(0).getPromotedCount());
+        assertEquals(Optional.empty(), everywhere.getCurrencies().get(0).getQuotedRevenue());
+    }
+
+    @Test
+    void runningTotalsAnswerAgainWhenBackInRange() {
+        var running = new RunningTotals();
+        var first = atWork(LARGE);
+        var second = atWork(LARGE);
+        running.added(first);
+        running.added(second);
+        assertEquals(Optional.empty(), running.get(0).getCurrencies().get(0).getQuotedRevenue());
+
+        running.removed(first);
+        var eur = running.get(0).getCurrencies().get(0);
+        assertFalse(eur.isOverflowed());
+        assertEquals(Optional.of(LARGE), eur.getQuotedRevenue());
+        assertEquals(1, eur.getPromotedCount());
+    }
+
+    private static Contract finalized(Amount quotedPrice, String customer) {
+        var c = new Contract(ContractId.next(), quotedPrice, "Work", customer);
+        c.setStatus(Contract.Status.FINALIZED);
+        return c;
+    }
+
+    private static Contract atWork(Amount quotedPrice) {
+        var c = new Contract(ContractId.next(), quotedPrice, "Work", "Customer");
+        c.setStatus(Contract.Status.ATWORK);
+        return c;
+    }
+}
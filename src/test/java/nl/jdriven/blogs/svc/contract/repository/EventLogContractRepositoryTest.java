@@ -0,0 +1,111 @@
+package nl.jdriven.blogs.svc.contract.repository;
+
+import nl.jdriven.blogs.svc.contract.model.main.Amount;
+import nl.jdriven.blogs.svc.contract.model.main.Contract;
+import nl.jdriven.blogs.svc.contract.model.main.ContractId;
+import nl.jdriven.blogs.svc.contract.model.main.WorkDone;
+import nl.jdriven.blogs.svc.contract.service.ContractService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+/**
+ * Contracts survive a restart, from the snapshot and the log after it.
+ */
+class EventLogContractRepositoryTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void contractsAreRecoveredFromSnapshotAndLog() {
+        var ids = new ArrayList<ContractId>();
+        try (var repository = new EventLogContractRepository(dir, false, Duration.ZERO)) {
+            // an empty snapshot first, it is replaced by the next one
+            repository.snapshot();
+            var service = new ContractService(repository);
+            for (int i = 0; i < 100; i++) {
+                var id = service.addQuote("Customer " + i, Amount.ofUnits(100), "Work");
+                service.promoteQuote(id);
+                ids.add(id);
+            }
+            repository.snapshot();
+            for (var id : ids) {
+                service.addWorkDone(id, new WorkDone(Amount.ofUnits(1), "Item"));
+            }
+        }
+        try (var recovered = new EventLogContractRepository(dir, false, Duration.ZERO)) {
+            assertEquals(ids.size(), recovered.size());
+            for (var id : ids) {
+                var c = recovered.find(id);
+                assertNotNull(c, "contract " + id);
+                assertEquals(1, c.getWorkDone().size());
+            }
+        }
+    }
+
+    @Test
+    void contractsFinalizedWhileASnapshotIsWrittenAreRecovered() throws Exception {
+        int threads = 4;
+        int contractsPerThread = 2000;
+        var ids = new ArrayList<ContractId>();
+        // small segments, so snapshots really drop the start of the log
+        try (var repository = new EventLogContractRepository(dir, 16 * 1024, false, Duration.ZERO)) {
+            var service = new ContractService(repository);
+            for (int i = 0; i < threads * contractsPerThread; i++) {
+                var id = service.addQuote("Customer " + i, Amount.ofUnits(100), "Work");
+                service.promoteQuote(id);
+                service.addWorkDone(id, new WorkDone(Amount.ofUnits(1), "Item"));
+                ids.add(id);
+            }
+            var finalizing = new AtomicBoolean(true);
+            var pool = Executors.newFixedThreadPool(threads + 1);
+            try {
+                var snapshots = pool.submit(() -> {
+                    while (finalizing.get()) {
+                        repository.snapshot();
+                    }
+                });
+                var done = new ArrayList<Future<?>>();
+                for (int t = 0; t < threads; t++) {
+                    var mine = ids.subList(t * contractsPerThread, (t + 1) * contractsPerThread);
+                    done.add(pool.submit(() -> mine.forEach(service::finalizeContract)));
+                }
+                for (var future : done) {
+                    future.get();
+                }
+                finalizing.set(false);
+                snapshots.get();
+            } finally {
+                pool.shutdown();
+            }
+        }
+        try (var recovered = new EventLogContractRepository(dir, 16 * 1024, false, Duration.ZERO)) {
+            assertEquals(ids.size(), recovered.size());
+            for (var id : ids) {
+                var c = recovered.find(id);
+                assertNotNull(c, "contract " + id);
+                assertEquals(Contract.Status.FINALIZED, c.getStatus());
+                assertEquals(1, c.getWorkDone().size());
+            }
+        }
+    }
+
+    @Test
+    void emptySnapshotIsRecovered() {
+        try (var repository = new EventLogContractRepository(dir, false, Duration.ZERO)) {
+            repository.snapshot();
+        }
+        try (var recovered = new EventLogContractRepository(dir, false, Duration.ZERO)) {
+            assertEquals(0, recovered.size());
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package nl.jdriven.blogs.svc.contract.service;
+
+import nl.jdriven.blogs.svc.contract.model.exception.PreConditionNotMetException;
+import nl.jdriven.blogs.svc.contract.model.main.Amount;
+import nl.jdriven.blogs.svc.contract.model.main.Contract;
+import nl.jdriven.blogs.svc.contract.model.main.ContractId;
+import nl.jdriven.blogs.svc.contract.model.main.WorkDone;
+import nl.jdriven.blogs.svc.contract.repository.EventLogContractRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Currency;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ContractServiceTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void watchersSeeTheChangesOfAContractInOrder() throws Exception {
+        int threads = 8;
+        var pool = Executors.newFixedThreadPool(threads);
+        ContractFeed.Cursor cursor;
+        try (var repository = new EventLogContractRepository(dir, false, Duration.ZERO)) {
+            var service = new ContractService(repository);
+            var feed = service.getFeed();
+            cursor = feed.cursor(feed.getLastSequence());
+            var done = new ArrayList<Future<?>>();
+            for (int t = 0; t < threads; t++) {
+                done.add(pool.submit(() -> {
+                    for (int i = 0; i < 500; i++) {
+                        var id = service.addQuote("Customer", Amount.ofUnits(100), "Work");
+                        service.promoteQuote(id);
+                        service.addWorkDone(id, new WorkDone(Amount.ofUnits(1), "Item"));
+                        service.finalizeContract(id);
+                    }
+                    return null;
+                }));
+            }
+            for (var future : done) {
+                future.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+        var expected = List.of(Contract.Status.QUOTE, Contract.Status.ATWORK, Contract.Status.ATWORK, Contract.Status.FINALIZED);
+        var seen = new HashMap<ContractId, List<Contract.Status>>();
+        for (var change = cursor.next(); change != null; change = cursor.next()) {
+            seen.computeIfAbsent(change.getEvent().getContractId(), k -> new ArrayList<>()).add(change.getStatus());
+        }
+        assertEquals(threads * 500, seen.size());
+        seen.forEach((id, statuses) -> assertEquals(expected, statuses, "changes of " + id));
+    }
+
+    @Test
+    void watchersOnlySeeAChangeOnceItIsDurable() {
+        try (var repository = new EventLogContractRepository(dir, false, Duration.ZERO)) {
+            var service = new ContractService(repository);
+            var feed = service.getFeed();
+            var cursor = feed.cursor(feed.getLastSequence());
+            repository.batch(() -> {
+                service.addQuote("Customer", Amount.ofUnits(100), "Work");
+                assertNull(cursor.next());
+            });
+            assertNotNull(cursor.next());
+        }
+    }
+
+    @Test
+    void workThatDoesNotFitTheTotalIsRejectedBeforeItIsJournaled() {
+        // more than half of the largest total
+        var work = new WorkDone(Amount.ofUnits(50_000_000_000_000_000L), "Half of everything");
+        ContractId id;
+        try (var repository = new EventLogContractRepository(dir, false, Duration.ZERO)) {
+            var service = new ContractService(repository);
+            id = service.addQuote("Customer", Amount.ofUnits(100), "Work");
+            service.promoteQuote(id);
+            service.addWorkDone(id, work);
+
+            var e = assertThrows(PreConditionNotMetException.class,
+                    () -> service.addWorkDone(id, work));
+            assertEquals("Input.Work.Cost.totalTooLarge", e.getConditionFailures().findFirst().orElseThrow());
+            assertThrows(PreConditionNotMetException.class,
+                    () -> service.addWorkDone(id, new WorkDone(Amount.ofMinorUnits(1, Currency.getInstance("USD")), "Dollars")));
+            assertEquals(1, repository.find(id).getWorkDone().size());
+        }
+        try (var recovered = new EventLogContractRepository(dir, false, Duration.ZERO)) {
+            assertEquals(work.getCostOfWork(), recovered.find(id).getTotalCostOfWork());
+        }
+    }
+}
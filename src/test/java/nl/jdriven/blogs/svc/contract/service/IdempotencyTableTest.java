@@ -0,0 +1,81 @@
+package nl.jdriven.blogs.svc.contract.service;
+
+import nl.jdriven.blogs.svc.contract.model.main.ContractId;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class IdempotencyTableTest {
+    @Test
+    void runningChangesAreNeverForgotten() throws Exception {
+        // the smallest table, two segments of 8 entries
+        var table = new IdempotencyTable(16, Duration.ofMinutes(1));
+        var keys = keysOfOneSegment(9);
+        var id = ContractId.next();
+        var running = new CountDownLatch(8);
+        var release = new CountDownLatch(1);
+        var executions = new AtomicInteger();
+        var pool = Executors.newFixedThreadPool(16);
+        try {
+            var first = new ArrayList<Future<Integer>>();
+            for (int i = 0; i < 8; i++) {
+                var key = keys.get(i);
+                first.add(pool.submit(() -> table.execute(key, IdempotencyTable.Operation.ADD_WORK_DONE, id, () -> {
+                    running.countDown();
+                    await(release);
+                    return executions.incrementAndGet();
+                })));
+            }
+            running.await();
+
+            // no room: executed, but not remembered
+            assertEquals(-1, (int) table.execute(keys.get(8), IdempotencyTable.Operation.ADD_WORK_DONE, id, () -> -1));
+            assertEquals(1, table.getUndeduplicated());
+
+            // retries of the running changes wait for them instead of executing again
+            var retries = new ArrayList<Future<Integer>>();
+            for (int i = 0; i < 8; i++) {
+                var key = keys.get(i);
+                retries.add(pool.submit(() -> table.execute(key, IdempotencyTable.Operation.ADD_WORK_DONE, id,
+                        executions::incrementAndGet)));
+            }
+            release.countDown();
+            for (int i = 0; i < 8; i++) {
+                assertEquals(first.get(i).get(), retries.get(i).get());
+            }
+            assertEquals(8, executions.get());
+            assertEquals(8, table.getReplayed());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // spread over the segments the way the table does
+    private static List<String> keysOfOneSegment(int count) {
+        var keys = new ArrayList<String>();
+        for (int i = 0; keys.size() < count; i++) {
+            var key = "key-" + i;
+            int h = key.hashCode();
+            if (((h ^ (h >>> 16)) & 1) == 0) {
+                keys.add(key);
+            }
+        }
+        return keys;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
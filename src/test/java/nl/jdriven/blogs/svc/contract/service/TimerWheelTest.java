@@ -0,0 +1,70 @@
+package nl.jdriven.blogs.svc.contract.service;
+
+import nl.jdriven.blogs.svc.contract.model.main.ContractId;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Cancelled timers are not waiting anymore and never come due, whether they were in a bucket already or not.
+ */
+class TimerWheelTest {
+    private static final long SPAN = 60_000;
+
+    @Test
+    void cancelledTimersNeverComeDue() {
+        long now = 1_000_000;
+        var wheel = new TimerWheel(SPAN, now);
+        var ids = new ArrayList<ContractId>();
+        for (int i = 0; i < 1000; i++) {
+            var id = ContractId.next();
+            ids.add(id);
+            wheel.schedule(id, now + 2 * wheel.getTickMillis() + i * SPAN / 1000);
+            if (i == 500) {
+                // half of them are in their bucket, the others still queued
+                wheel.advance(now, id2 -> { });
+            }
+        }
+        assertEquals(1000, wheel.getWaiting());
+        var kept = new HashSet<ContractId>();
+        for (int i = 0; i < ids.size(); i++) {
+            if (i % 10 == 0) {
+                kept.add(ids.get(i));
+            } else {
+                assertTrue(wheel.cancel(ids.get(i)));
+            }
+        }
+        assertFalse(wheel.cancel(ids.get(1)));
+        assertEquals(kept.size(), wheel.getWaiting());
+
+        List<ContractId> due = new ArrayList<>();
+        wheel.advance(now + 2 * SPAN, due::add);
+        assertEquals(kept, new HashSet<>(due));
+        assertEquals(kept.size(), due.size());
+        assertEquals(0, wheel.getWaiting());
+        assertFalse(wheel.cancel(ids.get(0)));
+    }
+
+    @Test
+    void schedulingAgainReplacesTheTimer() {
+        long now = 1_000_000;
+        var wheel = new TimerWheel(SPAN, now);
+        var id = ContractId.next();
+        wheel.schedule(id, now + 1_000);
+        wheel.schedule(id, now + 30_000);
+        assertEquals(1, wheel.getWaiting());
+
+        List<ContractId> due = new ArrayList<>();
+        wheel.advance(now + 10_000, due::add);
+        assertTrue(due.isEmpty());
+        wheel.advance(now + 31_000, due::add);
+        assertEquals(List.of(id), due);
+        assertEquals(0, wheel.getWaiting());
+    }
+}